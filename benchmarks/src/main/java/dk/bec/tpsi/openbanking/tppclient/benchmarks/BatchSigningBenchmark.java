@@ -0,0 +1,83 @@
+package dk.bec.tpsi.openbanking.tppclient.benchmarks;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.security.KeyStoreSigner;
+import dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceImpl;
+import dk.bec.tpsi.openbanking.tppclient.security.SimulatedLatencySigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to sign a burst of concurrent requests with a simulated remote signing service, which answers after a
+ * fixed latency and serves a few calls at a time, signing every request on its own or in batches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchSigningBenchmark {
+    private static final int SIGNER_SESSIONS = 4;
+    private static final long BATCH_WINDOW_MICROS = 1000;
+
+    @Param({"0", "16", "64"})
+    int batchSize;
+
+    @Param({"20000"})
+    long latencyMicros;
+
+    @Param({"128"})
+    int concurrency;
+
+    SecurityProviderServiceImpl securityProviderService;
+    List<TppClientRequest> requests;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyStore sealKeystore = BenchmarkFixtures.loadKeyStore("seal.p12", "pkcs12");
+        PrivateKey sealKey = (PrivateKey) sealKeystore.getKey(sealKeystore.aliases().nextElement(), BenchmarkFixtures.KEYSTORE_PASS.toCharArray());
+        SimulatedLatencySigner signer = new SimulatedLatencySigner(new KeyStoreSigner(sealKey, null), latencyMicros, SIGNER_SESSIONS);
+        TppClientCertParams certParams = BenchmarkFixtures.certParams();
+        certParams.setSigningBatchSize(batchSize);
+        certParams.setSigningBatchWindowMicros(BATCH_WINDOW_MICROS);
+        securityProviderService = new SecurityProviderServiceImpl(certParams, signer);
+        requests = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            TppClientRequest request = BenchmarkFixtures.request("");
+            securityProviderService.filterHeaders(request);
+            securityProviderService.digestBody(request);
+            requests.add(request);
+        }
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        List<CompletableFuture<String>> signatures = new ArrayList<>(concurrency);
+        for (TppClientRequest request : requests) {
+            signatures.add(securityProviderService.createSignatureAsync(request));
+        }
+        int signed = 0;
+        for (CompletableFuture<String> signature : signatures) {
+            signed += signature.get().isEmpty() ? 0 : 1;
+        }
+        return signed;
+    }
+}
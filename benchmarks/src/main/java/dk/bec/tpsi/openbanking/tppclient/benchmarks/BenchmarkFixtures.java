@@ -0,0 +1,92 @@
+package dk.bec.tpsi.openbanking.tppclient.benchmarks;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.UUID;
+
+/**
+ * Test key material and requests shared by the benchmarks. The keystores under keystore/ are self-signed
+ * test certificates protected with the password changeit.
+ */
+public final class BenchmarkFixtures {
+    public static final String KEYSTORE_PATH = "keystore/";
+    public static final String KEYSTORE_PASS = "changeit";
+
+    private BenchmarkFixtures() {
+    }
+
+    public static TppClientCertParams certParams() {
+        return certParams(null, null);
+    }
+
+    public static TppClientCertParams certParams(String signatureProvider, String digestProvider) {
+        return TppClientCertParams.builder()
+                .keystorePath(KEYSTORE_PATH)
+                .sealCertName("seal.p12")
+                .sealCertPass(KEYSTORE_PASS)
+                .wacCertName("wac.p12")
+                .wacCertPass(KEYSTORE_PASS)
+                .signatureProvider(signatureProvider)
+                .digestProvider(digestProvider)
+                .build();
+    }
+
+    /**
+     * Cert params trusting the {@link StubGateway} certificate. The trust store is read from the file system,
+     * so it is copied out of the benchmark jar first.
+     */
+    public static TppClientCertParams gatewayCertParams() throws IOException {
+        Path trustStore = Files.createTempFile("truststore", ".jks");
+        trustStore.toFile().deleteOnExit();
+        try (InputStream instream = resource("truststore.jks")) {
+            Files.copy(instream, trustStore, StandardCopyOption.REPLACE_EXISTING);
+        }
+        TppClientCertParams certParams = certParams();
+        certParams.setTrustStorePath(trustStore.toString());
+        return certParams;
+    }
+
+    public static KeyStore loadKeyStore(String name, String type) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(type);
+        try (InputStream instream = resource(name)) {
+            keyStore.load(instream, KEYSTORE_PASS.toCharArray());
+        }
+        return keyStore;
+    }
+
+    private static InputStream resource(String name) {
+        return BenchmarkFixtures.class.getClassLoader().getResourceAsStream(KEYSTORE_PATH + name);
+    }
+
+    public static TppClientRequest request(String body) {
+        return TppClientRequest.builder()
+                .httpMethod("POST")
+                .path("/v1/payments/sepa-credit-transfers")
+                .requestBody(body)
+                .addHeader("X-Request-ID", UUID.randomUUID().toString())
+                .addHeader("PSU-ID", "PSU-1234")
+                .addHeader("PSU-IP-Address", "192.168.8.78")
+                .addHeader("TPP-Redirect-URI", "https://tpp.example.com/redirect")
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Accept", "application/json")
+                .addHeader("User-Agent", "benchmark")
+                .build();
+    }
+
+    public static String body(int size) {
+        StringBuilder body = new StringBuilder(size);
+        while (body.length() < size) {
+            body.append("{\"instructedAmount\":{\"currency\":\"EUR\",\"amount\":\"123.50\"}}");
+        }
+        body.setLength(size);
+        return body.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package dk.bec.tpsi.openbanking.tppclient.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the selected benchmarks once per thread count and writes one JSON result file per run, named
+ * after the thread count, so they can be compared between releases.
+ * <pre>java -cp target/benchmarks.jar dk.bec.tpsi.openbanking.tppclient.benchmarks.BenchmarkRunner [include regex] [output dir]</pre>
+ */
+public class BenchmarkRunner {
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 ? args[0] : ".*Benchmark.*";
+        File outputDir = new File(args.length > 1 ? args[1] : "jmh-results");
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + outputDir);
+        }
+
+        for (int threads : THREADS) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(outputDir, String.format("jmh-result-t%d.json", threads)).getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dk.bec.tpsi.openbanking.tppclient.benchmarks;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientService;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end callGateway against the in-process mTLS {@link StubGateway}, including header filtering,
+ * digest, signature and the exchange over pooled connections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// BouncyCastle 1.61 is installed as the first provider and fails to create RSASSA-PSS signatures for the
+// TLS 1.2 CertificateVerify message, so the handshake is limited to PKCS#1 signature schemes
+@Fork(value = 1, jvmArgsAppend = {
+        "-Djdk.tls.client.SignatureSchemes=rsa_pkcs1_sha256,rsa_pkcs1_sha384,rsa_pkcs1_sha512",
+        "-Djdk.tls.server.SignatureSchemes=rsa_pkcs1_sha256,rsa_pkcs1_sha384,rsa_pkcs1_sha512"})
+public class GatewayCallBenchmark {
+
+    @Param({"0", "1024", "65536", "1048576", "5242880"})
+    int bodySize;
+
+    StubGateway gateway;
+    TppClientService tppClientService;
+    String body;
+
+    @Setup
+    public void setUp() throws Exception {
+        gateway = new StubGateway();
+        tppClientService = new TppClientServiceImpl(gateway.getUrl(), BenchmarkFixtures.gatewayCertParams());
+        body = BenchmarkFixtures.body(bodySize);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        tppClientService.close();
+        gateway.close();
+    }
+
+    @Benchmark
+    public TppClientResponse callGateway() throws Exception {
+        return tppClientService.callGateway(BenchmarkFixtures.request(body));
+    }
+}
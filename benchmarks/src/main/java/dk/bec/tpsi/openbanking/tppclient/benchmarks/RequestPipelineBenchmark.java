@@ -0,0 +1,101 @@
+package dk.bec.tpsi.openbanking.tppclient.benchmarks;
+
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppRequestBuilder;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceImpl;
+import dk.bec.tpsi.openbanking.tppclient.util.HeaderUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The steps TppClientServiceImpl runs to turn a TppClientRequest into a signed HTTP request, measured one
+ * by one for growing body sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestPipelineBenchmark {
+    private static final String URI = "https://localhost:8443/v1/payments/sepa-credit-transfers";
+
+    @Param({"0", "1024", "65536", "1048576", "5242880"})
+    int bodySize;
+
+    SecurityProviderServiceImpl securityProviderService;
+    TppHeaders headers;
+    TppClientRequest request;
+    TppClientRequest signedRequest;
+    HttpResponse response;
+
+    @Setup
+    public void setUp() throws Exception {
+        securityProviderService = new SecurityProviderServiceImpl(BenchmarkFixtures.certParams());
+        request = BenchmarkFixtures.request(BenchmarkFixtures.body(bodySize));
+        headers = new TppHeaders(request.getHeaders());
+
+        signedRequest = BenchmarkFixtures.request(BenchmarkFixtures.body(bodySize));
+        securityProviderService.filterHeaders(signedRequest);
+        securityProviderService.digestBody(signedRequest);
+
+        response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 201, "Created");
+        response.addHeader("Date", "Mon, 19 Oct 2026 10:00:00 GMT");
+        response.addHeader("Content-Type", "application/json");
+        response.addHeader("Content-Length", "256");
+        response.addHeader("Connection", "keep-alive");
+        response.addHeader("X-Request-ID", "99391c7e-ad88-49ec-a2ad-99ddcb1f7721");
+        response.addHeader("Location", "/v1/payments/sepa-credit-transfers/1234-wertiq-983");
+        response.addHeader("ASPSP-SCA-Approach", "REDIRECT");
+        response.addHeader("Cache-Control", "no-store");
+        response.addHeader("Set-Cookie", "session=1");
+        response.addHeader("Set-Cookie", "route=2");
+    }
+
+    @Benchmark
+    public TppClientRequest filterHeaders() {
+        // filterHeaders replaces the headers of the request, start from the unfiltered ones every time
+        request.setHeaders(new TppHeaders(headers));
+        securityProviderService.filterHeaders(request);
+        return request;
+    }
+
+    @Benchmark
+    public String digestBody() throws Exception {
+        return securityProviderService.digestBody(signedRequest);
+    }
+
+    @Benchmark
+    public String createSignature() throws Exception {
+        return securityProviderService.createSignature(signedRequest);
+    }
+
+    @Benchmark
+    public HttpUriRequest buildRequest() {
+        return TppRequestBuilder
+                .create(signedRequest)
+                .setUri(URI)
+                .build();
+    }
+
+    @Benchmark
+    public TppHeaders collectHeaders() {
+        return HeaderUtils.collectHeaders(response);
+    }
+}
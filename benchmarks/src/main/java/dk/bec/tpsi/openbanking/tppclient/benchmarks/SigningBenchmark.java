@@ -0,0 +1,100 @@
+package dk.bec.tpsi.openbanking.tppclient.benchmarks;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceImpl;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signatures per second of the cached per-thread engines in {@link SecurityProviderServiceImpl} compared to
+ * looking up and initialising a new engine for every request. Run with -t to compare thread counts, e.g.
+ * <pre>java -jar target/benchmarks.jar SigningBenchmark -t 8</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningBenchmark {
+    private static final byte[] SIGNING_STRING = ("x-request-id: 99391c7e-ad88-49ec-a2ad-99ddcb1f7721\n"
+            + "digest: SHA-256=47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=\n"
+            + "psu-id: PSU-1234").getBytes(StandardCharsets.UTF_8);
+
+    //default uses the JCA provider order, where BouncyCastle is installed first
+    @Param({"default", "jdk", "bc"})
+    String providers;
+
+    String signatureProvider;
+    String digestProvider;
+
+    SecurityProviderServiceImpl securityProviderService;
+    PrivateKey sealKey;
+    TppClientRequest request;
+
+    @Setup
+    public void setUp() throws Exception {
+        if ("jdk".equals(providers)) {
+            signatureProvider = "SunRsaSign";
+            digestProvider = "SUN";
+        } else if ("bc".equals(providers)) {
+            signatureProvider = "BC";
+            digestProvider = "BC";
+        }
+        securityProviderService = new SecurityProviderServiceImpl(BenchmarkFixtures.certParams(signatureProvider, digestProvider));
+        request = BenchmarkFixtures.request("");
+        securityProviderService.filterHeaders(request);
+        securityProviderService.digestBody(request);
+
+        KeyStore sealKeystore = BenchmarkFixtures.loadKeyStore("seal.p12", "pkcs12");
+        sealKey = (PrivateKey) sealKeystore.getKey(sealKeystore.aliases().nextElement(), BenchmarkFixtures.KEYSTORE_PASS.toCharArray());
+    }
+
+    @Benchmark
+    public String createSignature() throws Exception {
+        return securityProviderService.createSignature(request);
+    }
+
+    @Benchmark
+    public String digestBody() throws Exception {
+        return securityProviderService.digestBody(request);
+    }
+
+    /**
+     * Engine lookup and initialisation on every request, as done before the engines were cached.
+     */
+    @Benchmark
+    public byte[] newSignatureEngine() throws Exception {
+        Signature sign = StringUtils.isEmpty(signatureProvider)
+                ? Signature.getInstance("SHA256withRSA")
+                : Signature.getInstance("SHA256withRSA", signatureProvider);
+        sign.initSign(sealKey);
+        sign.update(SIGNING_STRING);
+        return sign.sign();
+    }
+
+    @Benchmark
+    public byte[] newDigestEngine() throws Exception {
+        MessageDigest sha256 = StringUtils.isEmpty(digestProvider)
+                ? MessageDigest.getInstance("SHA-256")
+                : MessageDigest.getInstance("SHA-256", digestProvider);
+        return sha256.digest(SIGNING_STRING);
+    }
+}
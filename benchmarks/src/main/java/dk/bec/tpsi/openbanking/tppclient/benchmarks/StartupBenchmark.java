@@ -0,0 +1,102 @@
+package dk.bec.tpsi.openbanking.tppclient.benchmarks;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientService;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of a client service, measured once per fresh JVM: creating the service, with and without the
+ * eager warm-up, and the first call to the {@link StubGateway} right after the service has been created. The stub
+ * gateway is started before the measurement, so the JDK TLS classes it loads are already warm.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+// BouncyCastle 1.61 is installed as the first provider and fails to create RSASSA-PSS signatures for the
+// TLS 1.2 CertificateVerify message, so the handshake is limited to PKCS#1 signature schemes
+@Fork(value = 10, jvmArgsAppend = {
+        "-Djdk.tls.client.SignatureSchemes=rsa_pkcs1_sha256,rsa_pkcs1_sha384,rsa_pkcs1_sha512",
+        "-Djdk.tls.server.SignatureSchemes=rsa_pkcs1_sha256,rsa_pkcs1_sha384,rsa_pkcs1_sha512"})
+public class StartupBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Gateway {
+        @Param({"false", "true"})
+        boolean warmUp;
+
+        StubGateway stub;
+        TppClientCertParams certParams;
+        TppClientConnectionParams connectionParams;
+        //created by the measured call, closed after it
+        TppClientService service;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            stub = new StubGateway();
+            certParams = BenchmarkFixtures.gatewayCertParams();
+            connectionParams = TppClientConnectionParams.builder().warmUp(warmUp).build();
+        }
+
+        TppClientService createService() throws Exception {
+            return new TppClientServiceImpl(stub.getUrl(), certParams, connectionParams);
+        }
+
+        @TearDown(Level.Iteration)
+        public void closeService() throws Exception {
+            if (Objects.nonNull(service)) {
+                service.close();
+                service = null;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            stub.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CreatedService {
+        TppClientService service;
+
+        @Setup(Level.Iteration)
+        public void setUp(Gateway gateway) throws Exception {
+            service = gateway.createService();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws Exception {
+            service.close();
+        }
+    }
+
+    @Benchmark
+    public TppClientService createService(Gateway gateway) throws Exception {
+        gateway.service = gateway.createService();
+        return gateway.service;
+    }
+
+    @Benchmark
+    public TppClientResponse firstCall(CreatedService created) throws Exception {
+        return created.service.callGateway(BenchmarkFixtures.request(""));
+    }
+}
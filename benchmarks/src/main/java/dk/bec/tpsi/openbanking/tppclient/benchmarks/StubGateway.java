@@ -0,0 +1,105 @@
+package dk.bec.tpsi.openbanking.tppclient.benchmarks;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process HTTPS gateway requiring client authentication with the benchmark WAC certificate. It reads
+ * the whole request body and answers with a small JSON document, optionally after a fixed latency.
+ */
+public class StubGateway implements AutoCloseable {
+    private static final byte[] RESPONSE = "{\"transactionStatus\":\"RCVD\",\"paymentId\":\"1234-wertiq-983\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final HttpsServer server;
+    private final ExecutorService executor;
+
+    public StubGateway() throws Exception {
+        this(0);
+    }
+
+    /**
+     * @param latencyMillis time every answer is held back, like the processing time of a real gateway
+     */
+    public StubGateway(long latencyMillis) throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory().getKeyManagers(), trustManagerFactory().getTrustManagers(), null);
+
+        server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
+            @Override
+            public void configure(HttpsParameters params) {
+                SSLParameters sslParameters = sslContext.getDefaultSSLParameters();
+                sslParameters.setNeedClientAuth(true);
+                // the JDK server does not cope well with TLS 1.3 close handling
+                sslParameters.setProtocols(new String[]{"TLSv1.2"});
+                params.setSSLParameters(sslParameters);
+            }
+        });
+        server.createContext("/", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                drain(body);
+            }
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(201, RESPONSE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(RESPONSE);
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "https://localhost:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void drain(InputStream body) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (body.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    private static KeyManagerFactory keyManagerFactory() throws Exception {
+        KeyStore keyStore = BenchmarkFixtures.loadKeyStore("gateway.p12", "pkcs12");
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, BenchmarkFixtures.KEYSTORE_PASS.toCharArray());
+        return keyManagerFactory;
+    }
+
+    private static TrustManagerFactory trustManagerFactory() throws Exception {
+        KeyStore trustStore = BenchmarkFixtures.loadKeyStore("gateway-truststore.jks", "jks");
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        return trustManagerFactory;
+    }
+}
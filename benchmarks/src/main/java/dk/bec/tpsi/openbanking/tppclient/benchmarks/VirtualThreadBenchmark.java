@@ -0,0 +1,94 @@
+package dk.bec.tpsi.openbanking.tppclient.benchmarks;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientService;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to complete a burst of concurrent calls against a {@link StubGateway} answering after a fixed latency:
+ * blocking calls on a pool of platform threads, asynchronous calls on the I/O reactor, and asynchronous calls
+ * run as blocking calls on virtual threads. The virtual mode needs the benchmarks to run on Java 21.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+// BouncyCastle 1.61 is installed as the first provider and fails to create RSASSA-PSS signatures for the
+// TLS 1.2 CertificateVerify message, so the handshake is limited to PKCS#1 signature schemes; the JDK server
+// closes idle connections beyond its limit, which would hit the pooled connections of the client
+@Fork(value = 1, jvmArgsAppend = {
+        "-Djdk.tls.client.SignatureSchemes=rsa_pkcs1_sha256,rsa_pkcs1_sha384,rsa_pkcs1_sha512",
+        "-Djdk.tls.server.SignatureSchemes=rsa_pkcs1_sha256,rsa_pkcs1_sha384,rsa_pkcs1_sha512",
+        "-Dsun.net.httpserver.maxIdleConnections=1000"})
+public class VirtualThreadBenchmark {
+    private static final long GATEWAY_LATENCY_MILLIS = 20;
+    private static final int MAX_CONNECTIONS = 500;
+    private static final int PLATFORM_THREADS = 200;
+
+    @Param({"1000", "10000"})
+    int concurrency;
+
+    @Param({"platform", "async", "virtual"})
+    String mode;
+
+    StubGateway gateway;
+    TppClientService tppClientService;
+    ExecutorService platformThreads;
+
+    @Setup
+    public void setUp() throws Exception {
+        gateway = new StubGateway(GATEWAY_LATENCY_MILLIS);
+        TppClientConnectionParams connectionParams = TppClientConnectionParams.builder()
+                .maxConnTotal(MAX_CONNECTIONS)
+                .maxConnPerRoute(MAX_CONNECTIONS)
+                .virtualThreads("virtual".equals(mode))
+                .build();
+        tppClientService = new TppClientServiceImpl(gateway.getUrl(), BenchmarkFixtures.gatewayCertParams(), connectionParams);
+        platformThreads = Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        platformThreads.shutdownNow();
+        tppClientService.close();
+        gateway.close();
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        List<Future<TppClientResponse>> calls = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            calls.add("platform".equals(mode)
+                    ? platformThreads.submit(() -> tppClientService.callGateway(BenchmarkFixtures.request("{}")))
+                    : tppClientService.callGatewayAsync(BenchmarkFixtures.request("{}")));
+        }
+        int created = 0;
+        for (Future<TppClientResponse> call : calls) {
+            if (call.get().getStatus() == 201) {
+                created++;
+            }
+        }
+        return created;
+    }
+}
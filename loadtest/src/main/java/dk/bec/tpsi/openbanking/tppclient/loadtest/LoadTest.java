@@ -0,0 +1,170 @@
+package dk.bec.tpsi.openbanking.tppclient.loadtest;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHttpTransportType;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientService;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientServiceImpl;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Replays a trace against a gateway and fails when the p99 latency is over the limit or any call failed to
+ * verify. Without --target an embedded {@link StubAspspGateway} is started, which checks every digest and
+ * signature.
+ * <pre>
+ * java -jar loadtest/target/loadtest.jar [options]
+ *   --target URL             gateway to call, needs --cert-params
+ *   --cert-params FILE       properties with the TppClientCertParams of the target, e.g. keystorePath=file:/keys/
+ *   --journal DIR            replay the calls of an audit journal
+ *   --trace FILE             replay the calls of a trace file
+ *   --body-bytes N           size of the request bodies, 1024
+ *   --rate N                 send N calls per second, no matter how fast they are answered
+ *   --senders N              threads digesting and signing the calls sent at a rate, 8
+ *   --concurrency N          keep N calls in flight, 16, if no --rate
+ *   --warmup S               seconds of calls left out of the report, 10
+ *   --duration S             seconds of measured calls, 60
+ *   --transport T            APACHE or JDK
+ *   --max-connections N      max pooled connections to the gateway, 20
+ *   --latency MS             latency of the stub gateway, 0
+ *   --jitter MS              random latency added on top, 0
+ *   --error-rate R           share of calls the stub gateway answers with 503, 0.0
+ *   --response-bytes N       size of the stub gateway responses, 64
+ *   --max-p99-millis MS      fail when the p99 latency is higher
+ *   --histogram FILE         write the latency distribution
+ * </pre>
+ */
+public final class LoadTest {
+    private static final String PKCS1_SIGNATURE_SCHEMES = "rsa_pkcs1_sha256,rsa_pkcs1_sha384,rsa_pkcs1_sha512";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        // BouncyCastle 1.61 is installed as the first provider and fails to create RSASSA-PSS signatures for the
+        // TLS 1.2 CertificateVerify message, so the handshake is limited to PKCS#1 signature schemes
+        defaultProperty("jdk.tls.client.SignatureSchemes", PKCS1_SIGNATURE_SCHEMES);
+        defaultProperty("jdk.tls.server.SignatureSchemes", PKCS1_SIGNATURE_SCHEMES);
+        defaultProperty("sun.net.httpserver.maxIdleConnections", "1000");
+
+        Map<String, String> options = parse(args);
+        int bodyBytes = intOption(options, "body-bytes", 1024);
+        List<TraceEntry> trace = options.containsKey("journal")
+                ? Traces.fromAuditJournal(Paths.get(options.get("journal")), bodyBytes)
+                : options.containsKey("trace")
+                ? Traces.fromFile(Paths.get(options.get("trace")))
+                : Traces.defaultMix(bodyBytes);
+        TppClientConnectionParams connectionParams = TppClientConnectionParams.builder()
+                .transport(TppHttpTransportType.valueOf(options.getOrDefault("transport", "APACHE").toUpperCase(Locale.ROOT)))
+                .maxConnPerRoute(intOption(options, "max-connections", 20))
+                .maxConnTotal(Math.max(50, intOption(options, "max-connections", 20)))
+                .warmUp(true)
+                .build();
+        long warmUpMillis = intOption(options, "warmup", 10) * 1000L;
+        long durationMillis = intOption(options, "duration", 60) * 1000L;
+
+        StubAspspGateway stub = null;
+        LoadTestReport report;
+        try {
+            String target = options.get("target");
+            TppClientCertParams certParams;
+            if (Objects.isNull(target)) {
+                stub = new StubAspspGateway(new StubGatewayConfig()
+                        .latencyMillis(intOption(options, "latency", 0))
+                        .latencyJitterMillis(intOption(options, "jitter", 0))
+                        .errorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")))
+                        .responseBytes(intOption(options, "response-bytes", 64)));
+                target = stub.getUrl();
+                certParams = LoadTestFixtures.stubCertParams();
+            } else {
+                certParams = certParams(options.get("cert-params"));
+            }
+            System.err.printf("Replaying %d calls against %s%n", trace.size(), target);
+            try (TppClientService service = new TppClientServiceImpl(target, certParams, connectionParams)) {
+                ReplayDriver driver = new ReplayDriver(service, trace, System.err);
+                report = options.containsKey("rate")
+                        ? driver.runAtRate(Double.parseDouble(options.get("rate")), intOption(options, "senders", 8), warmUpMillis, durationMillis)
+                        : driver.runAtConcurrency(intOption(options, "concurrency", 16), warmUpMillis, durationMillis);
+            }
+        } finally {
+            if (Objects.nonNull(stub)) {
+                stub.close();
+            }
+        }
+
+        report.print(System.out);
+        if (Objects.nonNull(stub)) {
+            System.out.printf("Stub gateway        %d requests, %d injected errors, %d signature failures%n",
+                    stub.getRequests(), stub.getInjectedErrors(), stub.getSignatureFailures());
+        }
+        if (options.containsKey("histogram")) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(options.get("histogram"))), false, "UTF-8")) {
+                report.printHistogram(out);
+            }
+        }
+
+        boolean failed = false;
+        if (report.getSignatureFailures() > 0) {
+            System.out.printf("FAILED: %d calls did not verify%n", report.getSignatureFailures());
+            failed = true;
+        }
+        if (options.containsKey("max-p99-millis")) {
+            double maxP99 = Double.parseDouble(options.get("max-p99-millis"));
+            if (report.getPercentileMillis(99) > maxP99) {
+                System.out.printf("FAILED: p99 %.2f ms is over %.2f ms%n", report.getPercentileMillis(99), maxP99);
+                failed = true;
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static TppClientCertParams certParams(String file) throws Exception {
+        if (Objects.isNull(file)) {
+            throw new IllegalArgumentException("--target needs --cert-params");
+        }
+        Properties properties = new Properties();
+        try (InputStream instream = Files.newInputStream(Paths.get(file))) {
+            properties.load(instream);
+        }
+        return TppClientCertParams.builder()
+                .keystorePath(properties.getProperty("keystorePath"))
+                .trustStorePath(properties.getProperty("trustStorePath"))
+                .wacCertName(properties.getProperty("wacCertName"))
+                .wacCertPass(properties.getProperty("wacCertPass"))
+                .wacKeyAlias(properties.getProperty("wacKeyAlias"))
+                .sealCertName(properties.getProperty("sealCertName"))
+                .sealCertPass(properties.getProperty("sealCertPass"))
+                .sealKeyAlias(properties.getProperty("sealKeyAlias"))
+                .build();
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private static void defaultProperty(String name, String value) {
+        if (Objects.isNull(System.getProperty(name))) {
+            System.setProperty(name, value);
+        }
+    }
+}
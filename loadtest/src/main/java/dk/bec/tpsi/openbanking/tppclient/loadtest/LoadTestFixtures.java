@@ -0,0 +1,56 @@
+package dk.bec.tpsi.openbanking.tppclient.loadtest;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * Test key material of the load tests. The keystores under keystore/ are self-signed test certificates protected
+ * with the password changeit; the {@link StubAspspGateway} trusts the WAC certificate and the client trusts the
+ * gateway certificate.
+ */
+public final class LoadTestFixtures {
+    public static final String KEYSTORE_PATH = "keystore/";
+    public static final String KEYSTORE_PASS = "changeit";
+
+    private LoadTestFixtures() {
+    }
+
+    /**
+     * Cert params for calls to a {@link StubAspspGateway}. The trust store is read from the file system, so it is
+     * copied out of the jar first.
+     */
+    public static TppClientCertParams stubCertParams() throws IOException {
+        Path trustStore = Files.createTempFile("truststore", ".jks");
+        trustStore.toFile().deleteOnExit();
+        try (InputStream instream = resource("truststore.jks")) {
+            Files.copy(instream, trustStore, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return TppClientCertParams.builder()
+                .keystorePath(KEYSTORE_PATH)
+                .sealCertName("seal.p12")
+                .sealCertPass(KEYSTORE_PASS)
+                .wacCertName("wac.p12")
+                .wacCertPass(KEYSTORE_PASS)
+                .trustStorePath(trustStore.toString())
+                .build();
+    }
+
+    static KeyStore loadKeyStore(String name, String type) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(type);
+        try (InputStream instream = resource(name)) {
+            keyStore.load(instream, KEYSTORE_PASS.toCharArray());
+        }
+        return keyStore;
+    }
+
+    private static InputStream resource(String name) {
+        return LoadTestFixtures.class.getClassLoader().getResourceAsStream(KEYSTORE_PATH + name);
+    }
+}
@@ -0,0 +1,82 @@
+package dk.bec.tpsi.openbanking.tppclient.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of the measured part of a load test. Latencies are in microseconds; at a target rate they are taken
+ * from the time a call was due, so a client falling behind shows in the percentiles.
+ */
+public class LoadTestReport {
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final Histogram latency;
+    private final long durationNanos;
+    private final Map<Integer, Long> statuses;
+    //calls that got no answer
+    private final long failures;
+    //calls answered 401 because their digest, signature or signature certificate did not verify
+    private final long signatureFailures;
+
+    LoadTestReport(Histogram latency, long durationNanos, Map<Integer, Long> statuses, long failures, long signatureFailures) {
+        this.latency = latency;
+        this.durationNanos = durationNanos;
+        this.statuses = new TreeMap<>(statuses);
+        this.failures = failures;
+        this.signatureFailures = signatureFailures;
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public long getResponses() {
+        return statuses.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public Map<Integer, Long> getStatuses() {
+        return statuses;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getSignatureFailures() {
+        return signatureFailures;
+    }
+
+    /**
+     * @return answered calls per second
+     */
+    public double getThroughput() {
+        return getResponses() * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos;
+    }
+
+    public double getPercentileMillis(double percentile) {
+        return latency.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+    }
+
+    public void print(PrintStream out) {
+        out.printf("Duration            %.1f s%n", durationNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        out.printf("Responses           %d, %.1f/s%n", getResponses(), getThroughput());
+        out.printf("Statuses            %s%n", statuses);
+        out.printf("Failures            %d%n", failures);
+        out.printf("Signature failures  %d%n", signatureFailures);
+        out.printf("Latency ms          p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                getPercentileMillis(50), getPercentileMillis(90), getPercentileMillis(99), getPercentileMillis(99.9),
+                latency.getMaxValue() / MICROS_PER_MILLI);
+    }
+
+    /**
+     * Writes the latency distribution in milliseconds, in the HdrHistogram percentile format that can be plotted
+     * and compared between releases.
+     */
+    public void printHistogram(PrintStream out) {
+        latency.outputPercentileDistribution(out, MICROS_PER_MILLI);
+    }
+}
@@ -0,0 +1,207 @@
+package dk.bec.tpsi.openbanking.tppclient.loadtest;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientException;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a trace against a client service, going round the trace as often as needed. Calls are either sent at
+ * a fixed rate, whether earlier calls have been answered or not, or by a fixed number of callers each waiting for
+ * its answer before sending the next call. The first part of a run warms up the client and the gateway and is
+ * left out of the report. A line with the throughput and p99 of every second goes to the progress stream.
+ */
+public class ReplayDriver {
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final long DRAIN_TIMEOUT_MILLIS = 60_000;
+
+    private final TppClientService service;
+    private final List<TraceEntry> trace;
+    private final PrintStream progress;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplayDriver(TppClientService service, List<TraceEntry> trace, PrintStream progress) {
+        if (trace.isEmpty()) {
+            throw new IllegalArgumentException("Empty trace");
+        }
+        this.service = service;
+        this.trace = trace;
+        this.progress = progress;
+    }
+
+    /**
+     * Sends calls at the rate from the given sender threads, which digest and sign them. Latency counts from the
+     * time a call was due, not from when it could be sent.
+     */
+    public LoadTestReport runAtRate(double callsPerSecond, int senderThreads, long warmUpMillis, long durationMillis) throws InterruptedException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / callsPerSecond);
+        Results results = new Results(warmUpMillis, durationMillis);
+        AtomicLong inFlight = new AtomicLong();
+        ExecutorService senders = Executors.newFixedThreadPool(senderThreads);
+        try {
+            for (long i = 0; ; i++) {
+                long due = results.start + i * interval;
+                if (due >= results.end) {
+                    break;
+                }
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                TppClientRequest request = nextRequest();
+                inFlight.incrementAndGet();
+                senders.execute(() -> service.callGatewayAsync(request).whenComplete((response, e) -> {
+                    results.record(due, response, e);
+                    inFlight.decrementAndGet();
+                }));
+            }
+            long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+            while (inFlight.get() > 0 && System.currentTimeMillis() < drainDeadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            senders.shutdownNow();
+        }
+        return results.report();
+    }
+
+    /**
+     * Sends calls from the given number of callers, each sending its next call once the previous one is answered.
+     */
+    public LoadTestReport runAtConcurrency(int concurrency, long warmUpMillis, long durationMillis) throws InterruptedException {
+        Results results = new Results(warmUpMillis, durationMillis);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        ExecutorService callers = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (int i = 0; i < concurrency; i++) {
+                callers.execute(() -> {
+                    try {
+                        long start;
+                        while ((start = System.nanoTime()) < results.end) {
+                            TppClientResponse response = null;
+                            Throwable failure = null;
+                            try {
+                                response = service.callGateway(nextRequest());
+                            } catch (TppClientException | RuntimeException e) {
+                                failure = e;
+                            }
+                            results.record(start, response, failure);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            callers.shutdownNow();
+        }
+        return results.report();
+    }
+
+    private TppClientRequest nextRequest() {
+        return trace.get((next.getAndIncrement() & Integer.MAX_VALUE) % trace.size()).toRequest();
+    }
+
+    private static boolean isSignatureFailure(TppClientResponse response) {
+        return response.getStatus() == 401 && response.getBody() != null
+                && (response.getBody().contains("SIGNATURE_") || response.getBody().contains("CERTIFICATE_"));
+    }
+
+    /**
+     * Outcomes of the calls due within the measured part of a run.
+     */
+    private class Results {
+        private final long start;
+        private final long measureStart;
+        private final long end;
+        private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+        private final Histogram latency = new Histogram(SIGNIFICANT_DIGITS);
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder signatureFailures = new LongAdder();
+        private final Thread reporter;
+        private Histogram interval;
+
+        private Results(long warmUpMillis, long durationMillis) {
+            start = System.nanoTime();
+            measureStart = start + TimeUnit.MILLISECONDS.toNanos(warmUpMillis);
+            end = measureStart + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+            reporter = new Thread(this::reportProgress, "load-test-progress");
+            reporter.setDaemon(true);
+            reporter.start();
+        }
+
+        /**
+         * @param due when the call was due, calls due before the measured part are left out
+         */
+        private void record(long due, TppClientResponse response, Throwable failure) {
+            long now = System.nanoTime();
+            if (due < measureStart) {
+                return;
+            }
+            if (response == null) {
+                failures.increment();
+                return;
+            }
+            recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(now - due));
+            statuses.computeIfAbsent(response.getStatus(), status -> new LongAdder()).increment();
+            if (isSignatureFailure(response)) {
+                signatureFailures.increment();
+            }
+        }
+
+        private void reportProgress() {
+            long second = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                second++;
+                collect();
+                if (System.nanoTime() < measureStart) {
+                    progress.printf("%4ds warming up%n", second);
+                } else {
+                    progress.printf("%4ds %8d/s  p99 %8.2f ms%n", second, interval.getTotalCount(),
+                            interval.getValueAtPercentile(99) / 1000.0);
+                }
+            }
+        }
+
+        private synchronized void collect() {
+            interval = recorder.getIntervalHistogram(interval);
+            latency.add(interval);
+        }
+
+        private LoadTestReport report() {
+            reporter.interrupt();
+            try {
+                reporter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            collect();
+            Map<Integer, Long> counts = new HashMap<>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            return new LoadTestReport(latency, end - measureStart, counts, failures.sum(), signatureFailures.sum());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package dk.bec.tpsi.openbanking.tppclient.loadtest;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the Digest and Signature headers of a request the way an ASPSP does: the signature is verified with
+ * the certificate sent in TPP-Signature-Certificate, whose serial number and issuer must be the keyId.
+ */
+final class SignatureVerifier {
+    private static final Pattern PARAMETER = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+    private static final String DIGEST_PREFIX = "SHA-256=";
+    //headers that must be signed whenever the request has them
+    private static final List<String> REQUIRED = Arrays.asList("digest", "x-request-id", "psu-id", "psu-corporate-id", "tpp-redirect-uri");
+    private static final int MAX_CACHED_CERTIFICATES = 1000;
+
+    //parsed certificates by header value, a load test sends the same few over and over
+    private final Map<String, X509Certificate> certificates = new ConcurrentHashMap<>();
+
+    /**
+     * @param bodyDigest SHA-256 digest of the request body as received
+     * @throws Rejected if the request does not verify
+     */
+    void verify(Headers headers, byte[] bodyDigest) throws Rejected {
+        String digest = headers.getFirst("Digest");
+        if (digest == null || !digest.startsWith(DIGEST_PREFIX)) {
+            throw new Rejected("SIGNATURE_INVALID", "No SHA-256 digest");
+        }
+        if (!MessageDigest.isEqual(Base64.getDecoder().decode(digest.substring(DIGEST_PREFIX.length())), bodyDigest)) {
+            throw new Rejected("SIGNATURE_INVALID", "Digest does not match the body");
+        }
+
+        String signature = headers.getFirst("Signature");
+        if (signature == null) {
+            throw new Rejected("SIGNATURE_MISSING", "No signature");
+        }
+        Map<String, String> parameters = new HashMap<>();
+        Matcher matcher = PARAMETER.matcher(signature);
+        while (matcher.find()) {
+            parameters.put(matcher.group(1), matcher.group(2));
+        }
+        if (!"rsa-sha256".equals(parameters.get("algorithm")) || parameters.get("headers") == null || parameters.get("signature") == null) {
+            throw new Rejected("SIGNATURE_INVALID", "Incomplete signature " + signature);
+        }
+        List<String> signed = Arrays.asList(parameters.get("headers").split(" "));
+        for (String name : REQUIRED) {
+            if (headers.containsKey(name) && !signed.contains(name)) {
+                throw new Rejected("SIGNATURE_INVALID", name + " is not signed");
+            }
+        }
+
+        X509Certificate certificate = certificate(headers.getFirst("TPP-Signature-Certificate"));
+        String keyId = String.format("SN=%s,CA=%s", certificate.getSerialNumber().toString(16), certificate.getIssuerX500Principal().getName());
+        if (!keyId.equals(parameters.get("keyId"))) {
+            throw new Rejected("SIGNATURE_INVALID", "keyId does not match the certificate");
+        }
+        try {
+            Signature verifier = Signature.getInstance("SHA256withRSA");
+            verifier.initVerify(certificate.getPublicKey());
+            verifier.update(signingString(headers, signed).getBytes(StandardCharsets.UTF_8));
+            if (!verifier.verify(Base64.getDecoder().decode(parameters.get("signature")))) {
+                throw new Rejected("SIGNATURE_INVALID", "Signature does not verify");
+            }
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new Rejected("SIGNATURE_INVALID", e.toString());
+        }
+    }
+
+    private static String signingString(Headers headers, List<String> signed) {
+        StringBuilder signingString = new StringBuilder(256);
+        for (String name : signed) {
+            if (signingString.length() > 0) {
+                signingString.append('\n');
+            }
+            List<String> values = headers.get(name);
+            signingString.append(name).append(": ").append(values == null ? "" : String.join(",", values));
+        }
+        return signingString.toString();
+    }
+
+    private X509Certificate certificate(String header) throws Rejected {
+        if (header == null) {
+            throw new Rejected("CERTIFICATE_MISSING", "No TPP-Signature-Certificate");
+        }
+        X509Certificate certificate = certificates.get(header);
+        if (certificate != null) {
+            return certificate;
+        }
+        try {
+            certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(new ByteArrayInputStream(Base64.getDecoder().decode(header)));
+            certificate.checkValidity();
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new Rejected("CERTIFICATE_INVALID", e.toString());
+        }
+        if (certificates.size() >= MAX_CACHED_CERTIFICATES) {
+            certificates.clear();
+        }
+        certificates.put(header, certificate);
+        return certificate;
+    }
+
+    /**
+     * A request failing verification, with the Berlin Group message code it is answered with.
+     */
+    static final class Rejected extends Exception {
+        private final String code;
+
+        Rejected(String code, String text) {
+            super(text, null, false, false);
+            this.code = code;
+        }
+
+        String getCode() {
+            return code;
+        }
+    }
+}
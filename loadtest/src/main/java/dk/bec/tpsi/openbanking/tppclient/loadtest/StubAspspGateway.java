@@ -0,0 +1,193 @@
+package dk.bec.tpsi.openbanking.tppclient.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded ASPSP gateway for tests and load tests. It requires client authentication with the test WAC
+ * certificate, verifies the Digest and Signature headers of every request and answers 401 with a Berlin Group
+ * error when they do not verify. Latency, injected errors and the response size come from the
+ * {@link StubGatewayConfig}.
+ */
+public class StubAspspGateway implements AutoCloseable {
+    private static final int BACKLOG = 1024;
+    private static final int SCHEDULER_THREADS = 4;
+
+    private final StubGatewayConfig config;
+    private final SignatureVerifier verifier = new SignatureVerifier();
+    private final byte[] response;
+    private final HttpsServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong signatureFailures = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    public StubAspspGateway() throws Exception {
+        this(new StubGatewayConfig());
+    }
+
+    public StubAspspGateway(StubGatewayConfig config) throws Exception {
+        this.config = config;
+        response = response(config.getResponseBytes());
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory().getKeyManagers(), trustManagerFactory().getTrustManagers(), null);
+
+        server = HttpsServer.create(new InetSocketAddress("localhost", config.getPort()), BACKLOG);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
+            @Override
+            public void configure(HttpsParameters params) {
+                SSLParameters sslParameters = sslContext.getDefaultSSLParameters();
+                sslParameters.setNeedClientAuth(true);
+                // the JDK server does not cope well with TLS 1.3 close handling
+                sslParameters.setProtocols(new String[]{"TLSv1.2"});
+                params.setSSLParameters(sslParameters);
+            }
+        });
+        server.createContext("/", this::handle);
+        executor = Executors.newCachedThreadPool();
+        // answers are held back on a scheduler rather than on a sleeping thread per call
+        scheduler = Executors.newScheduledThreadPool(SCHEDULER_THREADS);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "https://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return requests answered 401 because their digest, signature or signature certificate did not verify
+     */
+    public long getSignatureFailures() {
+        return signatureFailures.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        byte[] bodyDigest;
+        try (DigestInputStream body = new DigestInputStream(exchange.getRequestBody(), MessageDigest.getInstance("SHA-256"))) {
+            drain(body);
+            bodyDigest = body.getMessageDigest().digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        if (config.isVerifySignatures()) {
+            try {
+                verifier.verify(exchange.getRequestHeaders(), bodyDigest);
+            } catch (SignatureVerifier.Rejected e) {
+                signatureFailures.incrementAndGet();
+                respond(exchange, 401, error(e.getCode(), e.getMessage()));
+                return;
+            }
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int status;
+        byte[] body;
+        if (config.getErrorRate() > 0 && random.nextDouble() < config.getErrorRate()) {
+            injectedErrors.incrementAndGet();
+            status = config.getErrorStatus();
+            body = error("SERVICE_UNAVAILABLE", "Injected error");
+        } else {
+            status = "POST".equals(exchange.getRequestMethod()) ? 201 : 200;
+            body = response;
+        }
+        long latency = config.getLatencyMillis()
+                + (config.getLatencyJitterMillis() > 0 ? random.nextLong(config.getLatencyJitterMillis() + 1) : 0);
+        if (latency > 0) {
+            scheduler.schedule(() -> respond(exchange, status, body), latency, TimeUnit.MILLISECONDS);
+        } else {
+            respond(exchange, status, body);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) {
+        try {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            String requestId = exchange.getRequestHeaders().getFirst("X-Request-ID");
+            if (requestId != null) {
+                exchange.getResponseHeaders().add("X-Request-ID", requestId);
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            // the client went away, nothing left to answer
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static byte[] response(int size) {
+        StringBuilder response = new StringBuilder("{\"transactionStatus\":\"RCVD\",\"paymentId\":\"1234-wertiq-983\",\"padding\":\"");
+        while (response.length() < size - 2) {
+            response.append('x');
+        }
+        return response.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] error(String code, String text) {
+        return String.format("{\"tppMessages\":[{\"category\":\"ERROR\",\"code\":\"%s\",\"text\":\"%s\"}]}",
+                code, text.replace("\\", "\\\\").replace("\"", "\\\"")).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void drain(InputStream body) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (body.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    private static KeyManagerFactory keyManagerFactory() throws Exception {
+        KeyStore keyStore = LoadTestFixtures.loadKeyStore("gateway.p12", "pkcs12");
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, LoadTestFixtures.KEYSTORE_PASS.toCharArray());
+        return keyManagerFactory;
+    }
+
+    private static TrustManagerFactory trustManagerFactory() throws Exception {
+        KeyStore trustStore = LoadTestFixtures.loadKeyStore("gateway-truststore.jks", "jks");
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        return trustManagerFactory;
+    }
+}
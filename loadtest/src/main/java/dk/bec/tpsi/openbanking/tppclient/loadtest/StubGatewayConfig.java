@@ -0,0 +1,84 @@
+package dk.bec.tpsi.openbanking.tppclient.loadtest;
+
+/**
+ * Behaviour of a {@link StubAspspGateway}. The setters return the config, so it can be set up in one statement:
+ * <pre>new StubGatewayConfig().latencyMillis(50).latencyJitterMillis(20).errorRate(0.01)</pre>
+ */
+public class StubGatewayConfig {
+    //0 picks a free port
+    private int port;
+    //time every answer is held back, like the processing time of a real gateway
+    private long latencyMillis;
+    //random extra time up to this added to the latency of every answer
+    private long latencyJitterMillis;
+    //share of the calls answered with errorStatus, between 0 and 1
+    private double errorRate;
+    private int errorStatus = 503;
+    //size of the JSON body of a successful answer
+    private int responseBytes = 64;
+    //check the Digest and Signature headers, answering 401 if they do not verify
+    private boolean verifySignatures = true;
+
+    public int getPort() {
+        return port;
+    }
+
+    public StubGatewayConfig port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public StubGatewayConfig latencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    public long getLatencyJitterMillis() {
+        return latencyJitterMillis;
+    }
+
+    public StubGatewayConfig latencyJitterMillis(long latencyJitterMillis) {
+        this.latencyJitterMillis = latencyJitterMillis;
+        return this;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public StubGatewayConfig errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public int getErrorStatus() {
+        return errorStatus;
+    }
+
+    public StubGatewayConfig errorStatus(int errorStatus) {
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    public int getResponseBytes() {
+        return responseBytes;
+    }
+
+    public StubGatewayConfig responseBytes(int responseBytes) {
+        this.responseBytes = responseBytes;
+        return this;
+    }
+
+    public boolean isVerifySignatures() {
+        return verifySignatures;
+    }
+
+    public StubGatewayConfig verifySignatures(boolean verifySignatures) {
+        this.verifySignatures = verifySignatures;
+        return this;
+    }
+}
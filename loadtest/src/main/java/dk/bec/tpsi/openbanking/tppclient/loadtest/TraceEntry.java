@@ -0,0 +1,55 @@
+package dk.bec.tpsi.openbanking.tppclient.loadtest;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * One recorded call of a trace. Every replay is sent as a new request with an x-request-id of its own, so the
+ * client digests and signs it again.
+ */
+public class TraceEntry {
+    private final String method;
+    //path and query, relative to the gateway url
+    private final String path;
+    //size of the body sent, bodies are not recorded
+    private final int bodyBytes;
+    //unsigned request headers
+    private final Map<String, String> headers;
+
+    public TraceEntry(String method, String path, int bodyBytes, Map<String, String> headers) {
+        this.method = method;
+        this.path = path;
+        this.bodyBytes = bodyBytes;
+        this.headers = Collections.unmodifiableMap(headers);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getBodyBytes() {
+        return bodyBytes;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    TppClientRequest toRequest() {
+        TppClientRequest.TppClientRequestBuilder request = TppClientRequest.builder()
+                .httpMethod(method)
+                .path(path)
+                .requestBody(bodyBytes > 0 ? Traces.body(bodyBytes) : null);
+        headers.forEach(request::addHeader);
+        return request
+                .addHeader("X-Request-ID", UUID.randomUUID().toString())
+                .build();
+    }
+}
@@ -0,0 +1,120 @@
+package dk.bec.tpsi.openbanking.tppclient.loadtest;
+
+import dk.bec.tpsi.openbanking.tppclient.audit.TppAuditJournalReader;
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditRecord;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calls replayed by a load test: recorded by the audit journal of the client, listed in a trace file, or a
+ * built-in mix of payment and account calls.
+ * <p>
+ * A trace file has one call per line, with tab separated method, path, body size and any number of headers:
+ * <pre>POST	/v1/payments/sepa-credit-transfers	1024	PSU-ID: PSU-1234	TPP-Redirect-URI: https://tpp.example.com/cb</pre>
+ * Blank lines and lines starting with # are skipped.
+ */
+public final class Traces {
+    //headers the client sets on every call itself
+    private static final Set<String> NOT_REPLAYED = new HashSet<>(Arrays.asList("signature", "digest", "tpp-signature-certificate",
+            "x-request-id", "content-length", "host", "connection", "accept-encoding", "user-agent"));
+    private static final Set<String> METHODS_WITH_BODY = new HashSet<>(Arrays.asList("POST", "PUT", "PATCH"));
+    private static final Map<Integer, String> BODIES = new ConcurrentHashMap<>();
+
+    private Traces() {
+    }
+
+    /**
+     * Calls of an audit journal. The journal keeps no bodies, calls that have one are replayed with a body of
+     * the given size.
+     */
+    public static List<TraceEntry> fromAuditJournal(Path directory, int bodyBytes) throws IOException {
+        List<TraceEntry> trace = new ArrayList<>();
+        try (TppAuditJournalReader reader = new TppAuditJournalReader(directory)) {
+            while (reader.hasNext()) {
+                TppAuditRecord record = reader.next();
+                URI uri = URI.create(record.getUri());
+                String path = uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+                Map<String, String> headers = new LinkedHashMap<>();
+                if (record.getRequestHeaders() != null) {
+                    record.getRequestHeaders().forEach((name, values) -> {
+                        if (!NOT_REPLAYED.contains(name)) {
+                            headers.put(name, String.join(",", values));
+                        }
+                    });
+                }
+                trace.add(new TraceEntry(record.getMethod(), path,
+                        METHODS_WITH_BODY.contains(record.getMethod()) ? bodyBytes : 0, headers));
+            }
+        }
+        return trace;
+    }
+
+    public static List<TraceEntry> fromFile(Path file) throws IOException {
+        List<TraceEntry> trace = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length < 2) {
+                throw new IllegalArgumentException(String.format("%s:%d: expected method and path", file, i + 1));
+            }
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (int j = 3; j < fields.length; j++) {
+                int colon = fields[j].indexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException(String.format("%s:%d: expected a header, got %s", file, i + 1, fields[j]));
+                }
+                headers.put(fields[j].substring(0, colon).trim(), fields[j].substring(colon + 1).trim());
+            }
+            trace.add(new TraceEntry(fields[0].toUpperCase(Locale.ROOT), fields[1],
+                    fields.length > 2 ? Integer.parseInt(fields[2].trim()) : 0, headers));
+        }
+        return trace;
+    }
+
+    /**
+     * One payment initiation, a payment status, an account list and a transactions call.
+     */
+    public static List<TraceEntry> defaultMix(int bodyBytes) {
+        Map<String, String> psu = new LinkedHashMap<>();
+        psu.put("PSU-ID", "PSU-1234");
+        psu.put("PSU-IP-Address", "192.168.8.78");
+        Map<String, String> payment = new LinkedHashMap<>(psu);
+        payment.put("TPP-Redirect-URI", "https://tpp.example.com/redirect");
+        payment.put("Content-Type", "application/json");
+        Map<String, String> consent = new LinkedHashMap<>(psu);
+        consent.put("Consent-ID", "a5f5b7b4-4f0b-4c3e-8a76-0e1b6d6b5a1e");
+        return Arrays.asList(
+                new TraceEntry("POST", "/v1/payments/sepa-credit-transfers", bodyBytes, payment),
+                new TraceEntry("GET", "/v1/payments/sepa-credit-transfers/1234-wertiq-983/status", 0, psu),
+                new TraceEntry("GET", "/v1/accounts?withBalance=true", 0, consent),
+                new TraceEntry("GET", "/v1/accounts/3dc3d5b3-7023-4848-9853-f5400a64e80f/transactions?bookingStatus=booked", 0, consent));
+    }
+
+    static String body(int size) {
+        return BODIES.computeIfAbsent(size, s -> {
+            StringBuilder body = new StringBuilder(s);
+            while (body.length() < s) {
+                body.append("{\"instructedAmount\":{\"currency\":\"EUR\",\"amount\":\"123.50\"}}");
+            }
+            body.setLength(s);
+            return body.toString();
+        });
+    }
+}
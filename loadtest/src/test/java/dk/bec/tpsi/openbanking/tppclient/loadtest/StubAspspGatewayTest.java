@@ -0,0 +1,294 @@
+package dk.bec.tpsi.openbanking.tppclient.loadtest;
+
+import dk.bec.tpsi.openbanking.tppclient.audit.TppAuditJournalReader;
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientListener;
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditRecord;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.model.TppGatewayProfile;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHttpTransportType;
+import dk.bec.tpsi.openbanking.tppclient.model.TppRequestBody;
+import dk.bec.tpsi.openbanking.tppclient.security.KeyStoreSigner;
+import dk.bec.tpsi.openbanking.tppclient.security.Signer;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientService;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientServiceImpl;
+import dk.bec.tpsi.openbanking.tppclient.service.TppGatewayRouter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Calls a {@link StubAspspGateway} through the client, which checks the digest and signature of every call.
+ */
+class StubAspspGatewayTest {
+    private static final String PKCS1_SIGNATURE_SCHEMES = "rsa_pkcs1_sha256,rsa_pkcs1_sha384,rsa_pkcs1_sha512";
+
+    private StubAspspGateway stub;
+    private TppClientService service;
+
+    @BeforeAll
+    static void limitSignatureSchemes() {
+        // see LoadTest, BouncyCastle 1.61 fails the TLS 1.2 handshake with RSASSA-PSS signatures
+        System.setProperty("jdk.tls.client.SignatureSchemes", PKCS1_SIGNATURE_SCHEMES);
+        System.setProperty("jdk.tls.server.SignatureSchemes", PKCS1_SIGNATURE_SCHEMES);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        if (service != null) {
+            service.close();
+        }
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Test
+    void signedCallsVerify() throws Exception {
+        start(new StubGatewayConfig(), TppClientConnectionParams.builder().build());
+
+        assertEquals(200, service.callGateway(get("/v1/accounts")).getStatus());
+        assertEquals(201, service.callGateway(post("/v1/payments/sepa-credit-transfers", "{\"amount\":\"12.50\"}")).getStatus());
+        assertEquals(201, service.callGatewayAsync(post("/v1/payments/sepa-credit-transfers", "{}")).get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(0, stub.getSignatureFailures());
+        assertEquals(3, stub.getRequests());
+    }
+
+    @Test
+    void signedCallsVerifyOverTheJdkTransport() throws Exception {
+        assumeTrue(!System.getProperty("java.specification.version").startsWith("1."), "needs Java 11");
+        start(new StubGatewayConfig(), TppClientConnectionParams.builder().transport(TppHttpTransportType.JDK).build());
+
+        assertEquals(200, service.callGateway(get("/v1/accounts")).getStatus());
+        assertEquals(201, service.callGatewayAsync(post("/v1/payments/sepa-credit-transfers", "{}")).get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(0, stub.getSignatureFailures());
+    }
+
+    @Test
+    void jdkTransportCallsGoOnAfterAReload() throws Exception {
+        assumeTrue(!System.getProperty("java.specification.version").startsWith("1."), "needs Java 11");
+        start(new StubGatewayConfig(), TppClientConnectionParams.builder().transport(TppHttpTransportType.JDK).build());
+        assertEquals(200, service.callGateway(get("/v1/accounts")).getStatus());
+
+        service.reloadKeyMaterial();
+
+        assertEquals(200, service.callGateway(get("/v1/accounts")).getStatus());
+        assertEquals(201, service.callGatewayAsync(post("/v1/payments/sepa-credit-transfers", "{}")).get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(0, stub.getSignatureFailures());
+    }
+
+    @Test
+    void routerProfilesWithDifferentSignersDoNotShareKeyMaterial() throws Exception {
+        stub = new StubAspspGateway(new StubGatewayConfig());
+        KeyStore sealKeystore = LoadTestFixtures.loadKeyStore("seal.p12", "pkcs12");
+        PrivateKey sealKey = (PrivateKey) sealKeystore.getKey(sealKeystore.aliases().nextElement(), LoadTestFixtures.KEYSTORE_PASS.toCharArray());
+        Signer keyStoreSigner = new KeyStoreSigner(sealKey, null);
+        AtomicInteger remoteSignatures = new AtomicInteger();
+        Signer remoteSigner = (data, offset, length) -> {
+            remoteSignatures.incrementAndGet();
+            return keyStoreSigner.sign(data, offset, length);
+        };
+        TppClientCertParams certParams = LoadTestFixtures.stubCertParams();
+
+        try (TppGatewayRouter router = new TppGatewayRouter()) {
+            router.addProfile(TppGatewayProfile.builder().id("local").gatewayUrl(stub.getUrl()).certParams(certParams).build());
+            router.addProfile(TppGatewayProfile.builder().id("remote").gatewayUrl(stub.getUrl()).certParams(certParams).build(), remoteSigner);
+
+            assertEquals(200, router.callGateway("local", get("/v1/accounts")).getStatus());
+            assertEquals(0, remoteSignatures.get());
+            assertEquals(200, router.callGateway("remote", get("/v1/accounts")).getStatus());
+            assertEquals(1, remoteSignatures.get());
+        }
+        assertEquals(0, stub.getSignatureFailures());
+    }
+
+    @Test
+    void asynchronousCallsGoOnAfterAReload() throws Exception {
+        start(new StubGatewayConfig(), TppClientConnectionParams.builder().build());
+        assertEquals(200, service.callGatewayAsync(get("/v1/accounts")).get(10, TimeUnit.SECONDS).getStatus());
+
+        service.reloadKeyMaterial();
+
+        assertEquals(200, service.callGatewayAsync(get("/v1/accounts")).get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(201, service.callGatewayAsync(post("/v1/payments/sepa-credit-transfers", "{}")).get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(0, stub.getSignatureFailures());
+    }
+
+    @Test
+    void streamedBodiesVerify() throws Exception {
+        start(new StubGatewayConfig(), TppClientConnectionParams.builder().build());
+        byte[] body = new byte[256 * 1024];
+
+        TppClientRequest request = TppClientRequest.builder()
+                .httpMethod("POST")
+                .path("/v1/payments/sepa-credit-transfers")
+                .requestBodySource(TppRequestBody.ofBytes(body))
+                .addHeader("X-Request-ID", "streamed")
+                .build();
+
+        assertEquals(201, service.callGateway(request).getStatus());
+        assertEquals(0, stub.getSignatureFailures());
+    }
+
+    @Test
+    void bodyChangedAfterDigestingIsRejected() throws Exception {
+        start(new StubGatewayConfig(), TppClientConnectionParams.builder().build());
+        AtomicInteger opened = new AtomicInteger();
+        // the body read for the digest is not the one sent
+        TppRequestBody tampered = () -> new ByteArrayInputStream(("{\"amount\":\"" + opened.incrementAndGet() + "\"}").getBytes(StandardCharsets.UTF_8));
+        TppClientRequest request = TppClientRequest.builder()
+                .httpMethod("POST")
+                .path("/v1/payments/sepa-credit-transfers")
+                .requestBodySource(tampered)
+                .addHeader("X-Request-ID", "tampered")
+                .build();
+
+        TppClientResponse response = service.callGateway(request);
+
+        assertEquals(401, response.getStatus());
+        assertTrue(response.getBody().contains("SIGNATURE_INVALID"), response.getBody());
+        assertEquals(1, stub.getSignatureFailures());
+
+        // the next call gets a digest of its own body
+        assertEquals(201, service.callGateway(post("/v1/payments/sepa-credit-transfers", "{}")).getStatus());
+    }
+
+    @Test
+    void cancellingDuringTheBackoffEndsTheCall() throws Exception {
+        start(new StubGatewayConfig().errorRate(1.0), TppClientConnectionParams.builder()
+                .maxAttempts(3)
+                .retryBackoffMillis(5_000)
+                .maxRetryBackoffMillis(5_000)
+                .build());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger ended = new AtomicInteger();
+        CountDownLatch retried = new CountDownLatch(1);
+        service.setListener(new TppClientListener() {
+            @Override
+            public void onCallStarted() {
+                inFlight.incrementAndGet();
+            }
+
+            @Override
+            public void onCallCompleted(int status, long durationNanos) {
+                inFlight.decrementAndGet();
+                ended.incrementAndGet();
+            }
+
+            @Override
+            public void onCallFailed(Throwable cause, long durationNanos) {
+                inFlight.decrementAndGet();
+                ended.incrementAndGet();
+            }
+
+            @Override
+            public void onRetry(int attempt) {
+                retried.countDown();
+            }
+        });
+
+        CompletableFuture<TppClientResponse> call = service.callGatewayAsync(get("/v1/accounts"));
+        assertTrue(retried.await(10, TimeUnit.SECONDS));
+        assertEquals(1, inFlight.get());
+        call.cancel(true);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (inFlight.get() != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, inFlight.get());
+        // a retry already on its way must not end the call a second time
+        Thread.sleep(200);
+        assertEquals(1, ended.get());
+    }
+
+    @Test
+    void pagedCallEndsAfterAnErrorAnswer() throws Exception {
+        start(new StubGatewayConfig().errorRate(1.0).errorStatus(500), TppClientConnectionParams.builder().build());
+
+        List<TppClientResponse> pages;
+        try (Stream<TppClientResponse> stream = service.callGatewayPaged(get("/v1/accounts/1/transactions"))) {
+            pages = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(1, pages.size());
+        assertEquals(500, pages.get(0).getStatus());
+        assertEquals(1, stub.getRequests());
+    }
+
+    @Test
+    void cachedResponsesAreServedWithoutCallingTheGateway() throws Exception {
+        start(new StubGatewayConfig(), TppClientConnectionParams.builder().responseCacheMaxEntries(10).build());
+
+        TppClientResponse first = service.callGateway(get("/v1/accounts"));
+        TppClientResponse second = service.callGateway(get("/v1/accounts"));
+
+        assertEquals(first.getBody(), second.getBody());
+        assertEquals(1, stub.getRequests());
+        service.callGateway(get("/v1/accounts/1/balances"));
+        assertEquals(2, stub.getRequests());
+    }
+
+    @Test
+    void auditJournalKeepsTheSignedRequests(@TempDir Path journal) throws Exception {
+        start(new StubGatewayConfig(), TppClientConnectionParams.builder().auditJournalPath(journal.toString()).build());
+
+        service.callGateway(get("/v1/accounts"));
+        service.callGateway(post("/v1/payments/sepa-credit-transfers", "{}"));
+        service.close();
+        service = null;
+
+        List<TppAuditRecord> records = new ArrayList<>();
+        try (TppAuditJournalReader reader = new TppAuditJournalReader(journal)) {
+            reader.forEachRemaining(records::add);
+        }
+        assertEquals(2, records.size());
+        assertEquals("GET", records.get(0).getMethod());
+        assertEquals(200, records.get(0).getStatus());
+        assertEquals(201, records.get(1).getStatus());
+        assertEquals(1, records.get(1).getSequence());
+        // the journal holds the headers as they were signed and answered
+        assertTrue(records.get(1).getRequestHeaders().getFirst("signature").contains("keyId="));
+        assertEquals("request-/v1/payments/sepa-credit-transfers", records.get(1).getResponseHeaders().getFirst("x-request-id"));
+    }
+
+    private void start(StubGatewayConfig config, TppClientConnectionParams connectionParams) throws Exception {
+        stub = new StubAspspGateway(config);
+        service = new TppClientServiceImpl(stub.getUrl(), LoadTestFixtures.stubCertParams(), connectionParams);
+    }
+
+    private static TppClientRequest get(String path) {
+        return TppClientRequest.builder().httpMethod("GET").path(path).addHeader("X-Request-ID", "request-" + path).build();
+    }
+
+    private static TppClientRequest post(String path, String body) {
+        return TppClientRequest.builder()
+                .httpMethod("POST")
+                .path(path)
+                .requestBody(body)
+                .addHeader("X-Request-ID", "request-" + path)
+                .addHeader("Content-Type", "application/json")
+                .build();
+    }
+}
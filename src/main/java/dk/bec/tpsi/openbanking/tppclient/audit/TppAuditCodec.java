@@ -0,0 +1,140 @@
+package dk.bec.tpsi.openbanking.tppclient.audit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditRecord;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary layout of the audit journal. A segment starts with a header of magic, format version and the sequence
+ * of its first record, followed by frames of payload length, CRC32 of the payload and the payload. The unused
+ * rest of a segment is zeros, so a zero length ends it. Strings are written as UTF-8 with a length, -1 for null.
+ * Segment files are named after their index, which orders them.
+ */
+final class TppAuditCodec {
+    static final String SEGMENT_PREFIX = "tpp-audit-";
+    static final String SEGMENT_SUFFIX = ".journal";
+    static final int MAGIC = 0x54505041;
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 16;
+    static final int FRAME_HEADER_SIZE = 8;
+    private static final int NULL_LENGTH = -1;
+
+    private TppAuditCodec() {
+    }
+
+    static String segmentName(long index) {
+        return String.format("%s%016d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    static long segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Writes the payload of the record into the buffer, growing it as needed.
+     *
+     * @return the buffer holding the payload from position 0 to its position
+     */
+    static ByteBuffer encode(TppAuditRecord record, long sequence, ByteBuffer buffer) {
+        buffer.clear();
+        buffer = ensureRemaining(buffer, 20);
+        buffer.putLong(sequence);
+        buffer.putLong(record.getTimestampMillis());
+        buffer.putInt(record.getStatus());
+        buffer = putString(buffer, record.getMethod());
+        buffer = putString(buffer, record.getUri());
+        buffer = putString(buffer, record.getError());
+        buffer = putHeaders(buffer, record.getRequestHeaders());
+        return putHeaders(buffer, record.getResponseHeaders());
+    }
+
+    static TppAuditRecord decode(ByteBuffer payload) {
+        return TppAuditRecord
+                .builder()
+                .sequence(payload.getLong())
+                .timestampMillis(payload.getLong())
+                .status(payload.getInt())
+                .method(getString(payload))
+                .uri(getString(payload))
+                .error(getString(payload))
+                .requestHeaders(getHeaders(payload))
+                .responseHeaders(getHeaders(payload))
+                .build();
+    }
+
+    private static ByteBuffer putHeaders(ByteBuffer buffer, TppHeaders headers) {
+        buffer = ensureRemaining(buffer, 4);
+        if (headers == null) {
+            buffer.putInt(NULL_LENGTH);
+            return buffer;
+        }
+        buffer.putInt(headers.size());
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            buffer = putString(buffer, header.getKey());
+            buffer = ensureRemaining(buffer, 4);
+            buffer.putInt(header.getValue().size());
+            for (String value : header.getValue()) {
+                buffer = putString(buffer, value);
+            }
+        }
+        return buffer;
+    }
+
+    private static TppHeaders getHeaders(ByteBuffer payload) {
+        int size = payload.getInt();
+        if (size == NULL_LENGTH) {
+            return null;
+        }
+        TppHeaders headers = new TppHeaders(size);
+        for (int i = 0; i < size; i++) {
+            String name = getString(payload);
+            int count = payload.getInt();
+            List<String> values = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                values.add(getString(payload));
+            }
+            headers.put(name, values);
+        }
+        return headers;
+    }
+
+    private static ByteBuffer putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer = ensureRemaining(buffer, 4);
+            buffer.putInt(NULL_LENGTH);
+            return buffer;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer = ensureRemaining(buffer, 4 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        return buffer;
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    private static ByteBuffer ensureRemaining(ByteBuffer buffer, int remaining) {
+        if (buffer.remaining() >= remaining) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + remaining));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
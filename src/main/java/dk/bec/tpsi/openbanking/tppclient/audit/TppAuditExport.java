@@ -0,0 +1,118 @@
+package dk.bec.tpsi.openbanking.tppclient.audit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditRecord;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exports an audit journal as JSON lines, one record per line, optionally limited to a time range:
+ * <pre>java -cp openbanking-tpp-client.jar:... dk.bec.tpsi.openbanking.tppclient.audit.TppAuditExport journal-dir [from [to]]</pre>
+ * with from and to as ISO-8601 instants, e.g. 2024-01-31T00:00:00Z.
+ */
+public final class TppAuditExport {
+    private TppAuditExport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: TppAuditExport journal-dir [from [to]]");
+            System.exit(2);
+        }
+        long from = args.length > 1 ? Instant.parse(args[1]).toEpochMilli() : Long.MIN_VALUE;
+        long to = args.length > 2 ? Instant.parse(args[2]).toEpochMilli() : Long.MAX_VALUE;
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try (TppAuditJournalReader reader = new TppAuditJournalReader(Paths.get(args[0]))) {
+            long exported = export(reader, from, to, out);
+            out.flush();
+            System.err.printf("Exported %d records, skipped %d corrupt frames%n", exported, reader.getCorruptFrames());
+        }
+    }
+
+    /**
+     * Writes the records with a timestamp from from, inclusive, to to, exclusive.
+     *
+     * @return records written
+     */
+    public static long export(TppAuditJournalReader reader, long from, long to, Writer out) throws IOException {
+        long exported = 0;
+        StringBuilder line = new StringBuilder(1024);
+        while (reader.hasNext()) {
+            TppAuditRecord record = reader.next();
+            if (record.getTimestampMillis() < from || record.getTimestampMillis() >= to) {
+                continue;
+            }
+            line.setLength(0);
+            line.append("{\"sequence\":").append(record.getSequence())
+                    .append(",\"timestamp\":");
+            string(line, Instant.ofEpochMilli(record.getTimestampMillis()).toString());
+            line.append(",\"method\":");
+            string(line, record.getMethod());
+            line.append(",\"uri\":");
+            string(line, record.getUri());
+            line.append(",\"status\":").append(record.getStatus())
+                    .append(",\"requestHeaders\":");
+            headers(line, record.getRequestHeaders());
+            line.append(",\"responseHeaders\":");
+            headers(line, record.getResponseHeaders());
+            line.append(",\"error\":");
+            string(line, record.getError());
+            line.append("}\n");
+            out.append(line);
+            exported++;
+        }
+        return exported;
+    }
+
+    private static void headers(StringBuilder line, TppHeaders headers) {
+        if (headers == null) {
+            line.append("null");
+            return;
+        }
+        line.append('{');
+        boolean first = true;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!first) {
+                line.append(',');
+            }
+            first = false;
+            string(line, header.getKey());
+            line.append(":[");
+            for (int i = 0; i < header.getValue().size(); i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                string(line, header.getValue().get(i));
+            }
+            line.append(']');
+        }
+        line.append('}');
+    }
+
+    private static void string(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
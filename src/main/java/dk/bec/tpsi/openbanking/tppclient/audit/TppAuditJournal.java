@@ -0,0 +1,200 @@
+package dk.bec.tpsi.openbanking.tppclient.audit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditOverflow;
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Journal of the signed requests sent to the gateways and the responses they got. Calling threads only hand
+ * their records to a {@link TppAuditRingBuffer}; a background thread appends them to segment files mapped into
+ * memory, starting a new segment when one is full. What happens when the buffer is full is up to the
+ * {@link TppAuditOverflow} setting. Records are read back with {@link TppAuditJournalReader}.
+ */
+@Slf4j
+public class TppAuditJournal implements Closeable {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    //written records are flushed to disk at least this often
+    private static final long FORCE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int INITIAL_PAYLOAD_SIZE = 4096;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final TppAuditOverflow overflow;
+    private final TppAuditRingBuffer buffer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    //state of the writer thread
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer payload = ByteBuffer.allocate(INITIAL_PAYLOAD_SIZE);
+    private TppAuditSegment segment;
+    private long nextSegment;
+    private long nextSequence;
+
+    /**
+     * Opens the journal in the directory, continuing after the segments already there.
+     *
+     * @param bufferSize   records waiting for the writer at most, rounded up to a power of two
+     * @param segmentBytes size of a segment file
+     */
+    public TppAuditJournal(Path directory, int bufferSize, long segmentBytes, TppAuditOverflow overflow) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.overflow = overflow;
+        buffer = new TppAuditRingBuffer(bufferSize);
+        Files.createDirectories(directory);
+        resume();
+        writer = new Thread(this::write, "tpp-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Continues the sequence of the last segment; a new segment is started rather than appending to it. The
+     * sequence starts from the one in the segment header, so it does not repeat if the segment has no readable
+     * records.
+     */
+    private void resume() throws IOException {
+        List<Path> segments = TppAuditJournalReader.segments(directory);
+        if (segments.isEmpty()) {
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        nextSegment = TppAuditCodec.segmentIndex(last) + 1;
+        try (TppAuditJournalReader reader = new TppAuditJournalReader(segments.subList(segments.size() - 1, segments.size()))) {
+            // opens the segment and reads its header
+            reader.hasNext();
+            nextSequence = reader.getFirstSequence();
+            while (reader.hasNext()) {
+                nextSequence = Math.max(nextSequence, reader.next().getSequence() + 1);
+            }
+        }
+    }
+
+    /**
+     * Hands the record to the writer. If the buffer is full the call waits for room or drops the record, as
+     * configured.
+     *
+     * @return false if the record was dropped
+     */
+    public boolean append(TppAuditRecord record) {
+        while (!closed) {
+            if (buffer.offer(record)) {
+                return true;
+            }
+            // the writer may be idling while the buffer fills up
+            LockSupport.unpark(writer);
+            if (overflow == TppAuditOverflow.DROP) {
+                break;
+            }
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return records dropped because the buffer was full, the journal was closed or writing failed
+     */
+    public long getDroppedRecords() {
+        return dropped.get();
+    }
+
+    private void write() {
+        long lastForce = System.nanoTime();
+        boolean unforced = false;
+        while (true) {
+            TppAuditRecord record = buffer.poll();
+            if (record != null) {
+                unforced |= writeRecord(record);
+                continue;
+            }
+            if (unforced && segment != null && System.nanoTime() - lastForce >= FORCE_INTERVAL_NANOS) {
+                segment.force();
+                lastForce = System.nanoTime();
+                unforced = false;
+            }
+            if (closed) {
+                // records handed over before the journal was closed are still written
+                while ((record = buffer.poll()) != null) {
+                    writeRecord(record);
+                }
+                closeSegment();
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private boolean writeRecord(TppAuditRecord record) {
+        try {
+            payload = TppAuditCodec.encode(record, nextSequence, payload);
+            crc.reset();
+            crc.update(payload.array(), 0, payload.position());
+            int checksum = (int) crc.getValue();
+            if (segment == null || !segment.append(payload, checksum)) {
+                startSegment(payload.position());
+                segment.append(payload, checksum);
+            }
+            nextSequence++;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Error writing audit record of {} {}", record.getMethod(), record.getUri(), e);
+            dropped.incrementAndGet();
+            closeSegment();
+            return false;
+        }
+    }
+
+    private void startSegment(int payloadLength) throws IOException {
+        closeSegment();
+        // a record larger than a segment gets a segment of its own
+        long size = Math.max(segmentBytes, TppAuditCodec.SEGMENT_HEADER_SIZE + TppAuditCodec.FRAME_HEADER_SIZE + payloadLength);
+        Path file = directory.resolve(TppAuditCodec.segmentName(nextSegment++));
+        segment = TppAuditSegment.create(file, size, nextSequence);
+        log.debug("Started audit journal segment {}", file);
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.error("Error closing audit journal segment", e);
+            }
+            segment = null;
+        }
+    }
+
+    /**
+     * Writes the records handed over so far and stops the writer. The writer thread is the only consumer of the
+     * buffer until it ends, this thread afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the audit journal", e);
+        }
+        // handed over by calls that saw the journal open while the writer finished
+        while (buffer.poll() != null) {
+            dropped.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package dk.bec.tpsi.openbanking.tppclient.audit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the records of an audit journal in the order they were written. Every frame is checked against its
+ * checksum; a frame that is cut off or does not match, e.g. after a crash while it was written, ends its segment
+ * and is counted, and reading goes on with the next segment.
+ */
+@Slf4j
+public class TppAuditJournalReader implements Iterator<TppAuditRecord>, Closeable {
+    private final Iterator<Path> segments;
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private Path segmentFile;
+    //sequence of the first record of the segment opened last
+    private long firstSequence;
+    private TppAuditRecord next;
+    private long corruptFrames;
+
+    public TppAuditJournalReader(Path directory) throws IOException {
+        this(segments(directory));
+    }
+
+    TppAuditJournalReader(List<Path> segments) {
+        this.segments = segments.iterator();
+    }
+
+    /**
+     * Segment files of the journal in the directory, oldest first.
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                TppAuditCodec.SEGMENT_PREFIX + "*" + TppAuditCodec.SEGMENT_SUFFIX)) {
+            files.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * @return frames skipped so far because they were cut off or did not match their checksum
+     */
+    public long getCorruptFrames() {
+        return corruptFrames;
+    }
+
+    /**
+     * @return sequence the writer gave the first record of the segment opened last, even if it has no readable records
+     */
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public TppAuditRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        TppAuditRecord record = next;
+        next = null;
+        return record;
+    }
+
+    private TppAuditRecord readNext() {
+        while (true) {
+            if (segment == null) {
+                if (!segments.hasNext()) {
+                    return null;
+                }
+                openSegment(segments.next());
+                continue;
+            }
+            if (segment.remaining() < TppAuditCodec.FRAME_HEADER_SIZE) {
+                closeSegment();
+                continue;
+            }
+            int length = segment.getInt();
+            int checksum = segment.getInt();
+            if (length == 0) {
+                closeSegment();
+                continue;
+            }
+            if (length < 0 || length > segment.remaining()) {
+                corrupt("cut off frame");
+                continue;
+            }
+            byte[] payload = new byte[length];
+            segment.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                corrupt("checksum mismatch");
+                continue;
+            }
+            return TppAuditCodec.decode(ByteBuffer.wrap(payload));
+        }
+    }
+
+    private void openSegment(Path file) {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            segmentFile = file;
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (segment.remaining() < TppAuditCodec.SEGMENT_HEADER_SIZE
+                    || segment.getInt() != TppAuditCodec.MAGIC
+                    || segment.getInt() != TppAuditCodec.VERSION) {
+                throw new IOException(String.format("%s is not an audit journal segment", file));
+            }
+            firstSequence = segment.getLong();
+        } catch (IOException e) {
+            closeSegment();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void corrupt(String reason) {
+        corruptFrames++;
+        log.warn("Skipping the rest of audit journal segment {} at offset {}: {}", segmentFile, segment.position(), reason);
+        closeSegment();
+    }
+
+    private void closeSegment() {
+        segment = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing audit journal segment {}", segmentFile, e);
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        closeSegment();
+    }
+}
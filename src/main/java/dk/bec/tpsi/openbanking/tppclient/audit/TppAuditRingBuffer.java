@@ -0,0 +1,73 @@
+package dk.bec.tpsi.openbanking.tppclient.audit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditRecord;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue of audit records for many calling threads and a single writer. Every slot carries a
+ * sequence telling whether it is free for the producer of a position or filled for the writer, so producers
+ * only compete on claiming a position and never wait for each other.
+ */
+final class TppAuditRingBuffer {
+    private final AtomicReferenceArray<TppAuditRecord> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    //next position claimed by a producer
+    private final AtomicLong tail = new AtomicLong();
+    //next position read by the writer, only accessed by the writer thread
+    private long head;
+
+    TppAuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    boolean offer(TppAuditRecord record) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, record);
+                    // publishes the record to the writer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                // the writer has not yet taken the record a full round ago
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return the next record, null if there is none; only called by the writer
+     */
+    TppAuditRecord poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        TppAuditRecord record = slots.get(index);
+        slots.lazySet(index, null);
+        // frees the slot for the producer one round ahead
+        sequences.set(index, head + mask + 1);
+        head++;
+        return record;
+    }
+}
@@ -0,0 +1,71 @@
+package dk.bec.tpsi.openbanking.tppclient.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Journal segment being written, a file of fixed size mapped into memory. Frames are appended by the audit writer
+ * thread only.
+ */
+final class TppAuditSegment implements Closeable {
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private TppAuditSegment(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static TppAuditSegment create(Path file, long size, long firstSequence) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // mapping beyond the end extends the file with zeros
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(TppAuditCodec.MAGIC);
+            buffer.putInt(TppAuditCodec.VERSION);
+            buffer.putLong(firstSequence);
+            return new TppAuditSegment(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a frame with the payload between position 0 and the position of the given buffer.
+     *
+     * @return false if the segment has no room left for it
+     */
+    boolean append(ByteBuffer payload, int crc) {
+        int length = payload.position();
+        int position = buffer.position();
+        if (buffer.remaining() < TppAuditCodec.FRAME_HEADER_SIZE + length) {
+            return false;
+        }
+        // the length goes in last, a reader never sees a length before its payload is complete
+        buffer.position(position + TppAuditCodec.FRAME_HEADER_SIZE);
+        payload.flip();
+        buffer.put(payload);
+        buffer.putInt(position + 4, crc);
+        buffer.putInt(position, length);
+        return true;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            force();
+        } finally {
+            channel.close();
+        }
+    }
+}
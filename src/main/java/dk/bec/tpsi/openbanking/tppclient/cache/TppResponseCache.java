@@ -0,0 +1,283 @@
+package dk.bec.tpsi.openbanking.tppclient.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientListener;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Bounded in-memory cache of GET responses. Responses are cached per gateway, path, request parameters and the
+ * values of the identity headers, so the answer for one consent or PSU is never served for another. Entries
+ * live at most the configured time to live, or shorter if the gateway says so with Cache-Control; expired
+ * entries with an ETag are revalidated with If-None-Match instead of being fetched again. Identical calls
+ * missing the cache at the same time share a single call to the gateway.
+ */
+public class TppResponseCache {
+    private static final String GET = "GET";
+    private static final String CACHE_CONTROL = "cache-control";
+    private static final String ETAG = "etag";
+    private static final String IF_NONE_MATCH = "if-none-match";
+    //requests with own preconditions are passed on as they are
+    private static final List<String> CONDITIONAL_HEADERS = Arrays.asList(IF_NONE_MATCH, "if-modified-since", "range");
+    private static final int OK = 200;
+    private static final int NOT_MODIFIED = 304;
+
+    private final long ttlNanos;
+    private final List<String> keyHeaders;
+    private final Cache<Key, Entry> entries;
+    //calls to the gateway on their way, by the key they will be cached with
+    private final Map<Key, CompletableFuture<TppClientResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public TppResponseCache(int maxEntries, long ttlMillis, Collection<String> keyHeaders) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        List<String> names = new ArrayList<>();
+        keyHeaders.forEach(name -> names.add(TppHeaders.normalise(name)));
+        Collections.sort(names);
+        this.keyHeaders = names;
+        entries = CacheBuilder
+                .newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public TppResponseCache(TppClientConnectionParams connectionParams) {
+        this(connectionParams.getResponseCacheMaxEntries(), connectionParams.getResponseCacheTtlMillis(),
+                connectionParams.getResponseCacheKeyHeaders());
+    }
+
+    /**
+     * @return the key the response of the request is cached with, null if it is not cached
+     */
+    public Key key(String gatewayUrl, TppClientRequest request) {
+        if (!GET.equalsIgnoreCase(request.getHttpMethod())) {
+            return null;
+        }
+        TppHeaders headers = request.getHeaders();
+        if (headers != null) {
+            for (String name : CONDITIONAL_HEADERS) {
+                if (headers.containsKey(name)) {
+                    return null;
+                }
+            }
+            if (CacheControl.of(headers).noStore) {
+                return null;
+            }
+        }
+
+        List<String> identity = new ArrayList<>(keyHeaders.size());
+        for (String name : keyHeaders) {
+            identity.add(headers == null ? null : headers.getFirst(name));
+        }
+        return new Key(GET, gatewayUrl, request.getPath(), params(request.getRequestParams()), identity);
+    }
+
+    /**
+     * Answers the request from the cache, or from the loader if the response is not cached, has expired or the
+     * request asks for a fresh one. The returned responses are copies and may be changed by the caller.
+     * Cancelling the returned future does not cancel the call to the gateway, it may be shared with others.
+     *
+     * @param loader calls the gateway with the request, or with a conditional copy of it
+     */
+    public CompletableFuture<TppClientResponse> get(Key key, TppClientRequest request,
+                                                    Function<TppClientRequest, CompletableFuture<TppClientResponse>> loader,
+                                                    TppClientListener listener) {
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.isFresh(System.nanoTime()) && !mustRevalidate(request)) {
+            listener.onCacheHit();
+            return CompletableFuture.completedFuture(copy(entry.response));
+        }
+
+        CompletableFuture<TppClientResponse> call = new CompletableFuture<>();
+        CompletableFuture<TppClientResponse> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            // an identical call is on its way to the gateway, its answer is shared
+            listener.onCacheHit();
+            return running.thenApply(TppResponseCache::copy);
+        }
+
+        listener.onCacheMiss();
+        try {
+            TppClientRequest upstream = entry != null && entry.etag != null ? conditional(request, entry.etag) : request;
+            loader.apply(upstream).whenComplete((response, e) -> complete(key, entry, call, response, e));
+        } catch (RuntimeException e) {
+            complete(key, entry, call, null, e);
+        }
+        return call.thenApply(TppResponseCache::copy);
+    }
+
+    private void complete(Key key, Entry entry, CompletableFuture<TppClientResponse> call, TppClientResponse response, Throwable e) {
+        TppClientResponse result = null;
+        Throwable failure = e;
+        if (failure == null) {
+            try {
+                result = store(key, entry, response);
+            } catch (RuntimeException storeException) {
+                failure = storeException;
+            }
+        }
+        // the entry is in place before the call is given up, so the next identical call finds it
+        inFlight.remove(key, call);
+        if (failure == null) {
+            call.complete(result);
+        } else {
+            call.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+        }
+    }
+
+    private TppClientResponse store(Key key, Entry entry, TppClientResponse response) {
+        CacheControl cacheControl = CacheControl.of(response.getHeaders());
+        if (response.getStatus() == NOT_MODIFIED && entry != null) {
+            entries.put(key, new Entry(entry.response, entry.etag, System.nanoTime() + freshness(cacheControl)));
+            return entry.response;
+        }
+        if (response.getStatus() != OK) {
+            return response;
+        }
+
+        String etag = response.getHeaders() == null ? null : StringUtils.trimToNull(response.getHeaders().getFirst(ETAG));
+        long freshness = freshness(cacheControl);
+        if (cacheControl.noStore || (freshness == 0 && etag == null)) {
+            entries.invalidate(key);
+        } else {
+            entries.put(key, new Entry(response, etag, System.nanoTime() + freshness));
+        }
+        return response;
+    }
+
+    private long freshness(CacheControl cacheControl) {
+        if (cacheControl.noCache) {
+            return 0;
+        }
+        return cacheControl.maxAgeSeconds < 0 ? ttlNanos : Math.min(TimeUnit.SECONDS.toNanos(cacheControl.maxAgeSeconds), ttlNanos);
+    }
+
+    /**
+     * Drops the cached responses of the path and of the paths below it, e.g. after the resource was changed.
+     */
+    public void invalidate(String gatewayUrl, String path) {
+        entries.asMap().keySet().removeIf(key -> Objects.equals(key.gatewayUrl, gatewayUrl)
+                && key.path != null && path != null && (key.path.equals(path) || key.path.startsWith(path + '/')));
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    private static boolean mustRevalidate(TppClientRequest request) {
+        if (request.getHeaders() == null) {
+            return false;
+        }
+        CacheControl cacheControl = CacheControl.of(request.getHeaders());
+        return cacheControl.noCache || cacheControl.maxAgeSeconds == 0;
+    }
+
+    private static TppClientRequest conditional(TppClientRequest request, String etag) {
+        TppHeaders headers = request.getHeaders() == null ? new TppHeaders() : new TppHeaders(request.getHeaders());
+        return TppClientRequest
+                .builder()
+                .httpMethod(request.getHttpMethod())
+                .path(request.getPath())
+                .requestParams(request.getRequestParams())
+                .headers(headers.set(IF_NONE_MATCH, etag))
+                .build();
+    }
+
+    private static SortedMap<String, List<String>> params(Map<String, String[]> requestParams) {
+        SortedMap<String, List<String>> params = new TreeMap<>();
+        if (requestParams != null) {
+            requestParams.forEach((name, values) -> params.put(name, values == null ? null : Arrays.asList(values)));
+        }
+        return params;
+    }
+
+    private static TppClientResponse copy(TppClientResponse response) {
+        return TppClientResponse
+                .builder()
+                .status(response.getStatus())
+                .body(response.getBody())
+                .headers(response.getHeaders() == null ? null : new TppHeaders(response.getHeaders()))
+                .build();
+    }
+
+    @Value
+    public static class Key {
+        String method;
+        String gatewayUrl;
+        String path;
+        SortedMap<String, List<String>> params;
+        //values of the identity headers, in the order of their names
+        List<String> identity;
+    }
+
+    private static class Entry {
+        private final TppClientResponse response;
+        private final String etag;
+        private final long freshUntil;
+
+        private Entry(TppClientResponse response, String etag, long freshUntil) {
+            this.response = response;
+            this.etag = etag;
+            this.freshUntil = freshUntil;
+        }
+
+        private boolean isFresh(long now) {
+            return freshUntil - now > 0;
+        }
+    }
+
+    private static class CacheControl {
+        private static final CacheControl NONE = new CacheControl();
+
+        private boolean noStore;
+        private boolean noCache;
+        private long maxAgeSeconds = -1;
+
+        private static CacheControl of(TppHeaders headers) {
+            List<String> values = headers == null ? null : headers.get(CACHE_CONTROL);
+            if (values == null || values.isEmpty()) {
+                return NONE;
+            }
+            CacheControl cacheControl = new CacheControl();
+            for (String value : values) {
+                for (String directive : StringUtils.split(value, ',')) {
+                    String name = StringUtils.substringBefore(directive, "=").trim().toLowerCase();
+                    if ("no-store".equals(name)) {
+                        cacheControl.noStore = true;
+                    } else if ("no-cache".equals(name)) {
+                        cacheControl.noCache = true;
+                    } else if ("max-age".equals(name)) {
+                        String seconds = StringUtils.strip(StringUtils.substringAfter(directive, "="), " \"");
+                        cacheControl.maxAgeSeconds = StringUtils.isNumeric(seconds) ? NumberUtils.toLong(seconds, Long.MAX_VALUE) : 0;
+                    }
+                }
+            }
+            return cacheControl;
+        }
+    }
+}
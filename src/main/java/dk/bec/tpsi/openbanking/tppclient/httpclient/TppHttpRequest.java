@@ -0,0 +1,29 @@
+package dk.bec.tpsi.openbanking.tppclient.httpclient;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import dk.bec.tpsi.openbanking.tppclient.model.TppRequestBody;
+import lombok.Builder;
+import lombok.Value;
+
+import javax.net.ssl.SSLContext;
+import java.util.Map;
+
+/**
+ * Signed request as handed to a {@link TppHttpTransport}, the headers include the signature.
+ */
+@Value
+@Builder
+public class TppHttpRequest {
+    String method;
+    //gateway url and path, without the request parameters
+    String uri;
+    Map<String, String[]> requestParams;
+    TppHeaders headers;
+    String body;
+    //streamed body, takes precedence over body
+    TppRequestBody bodySource;
+    //mTLS context of the key material the request was signed with, connections must authenticate with it
+    SSLContext sslContext;
+    //ask the gateway for a compressed response and decompress it
+    boolean compressResponse;
+}
@@ -0,0 +1,40 @@
+package dk.bec.tpsi.openbanking.tppclient.httpclient;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Answer of a gateway as returned by a {@link TppHttpTransport}. The body is decompressed and the headers
+ * describing the compressed body are removed. Closing the response releases the connection, which is only
+ * reused if the body has been read to its end.
+ */
+@Getter
+public class TppHttpResponse implements Closeable {
+    private final int status;
+    private final TppHeaders headers;
+    private final InputStream body;
+    private final Closeable connection;
+
+    public TppHttpResponse(int status, TppHeaders headers, InputStream body, Closeable connection) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body == null ? new ByteArrayInputStream(new byte[0]) : body;
+        this.connection = connection;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            body.close();
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+}
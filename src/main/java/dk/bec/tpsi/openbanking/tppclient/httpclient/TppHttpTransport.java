@@ -0,0 +1,41 @@
+package dk.bec.tpsi.openbanking.tppclient.httpclient;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientPoolStats;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Exchanges signed requests with the gateways. Signing, retries, quotas and the circuit breaker stay with the
+ * client service, a transport only sends the request over a connection authenticated with the
+ * {@link TppHttpRequest#getSslContext() SSL context} of the request.
+ */
+public interface TppHttpTransport extends Closeable {
+
+    /**
+     * Blocking exchange, the body is streamed from the connection while it is read.
+     *
+     * @throws IOException if no answer was received, the call may be retried
+     */
+    TppHttpResponse execute(TppHttpRequest request) throws IOException;
+
+    /**
+     * Asynchronous exchange, the body is read into memory before the future completes. Cancelling the future
+     * aborts the exchange.
+     */
+    CompletableFuture<TppHttpResponse> executeAsync(TppHttpRequest request);
+
+    TppClientPoolStats getPoolStats();
+
+    /**
+     * Opens connections to the gateway ahead of the first calls, authenticated with the SSL context.
+     *
+     * @return connections to the gateway ready for calls, 0 if the transport only opens connections for a call
+     * @throws IOException if a connection could not be opened, e.g. because the gateway rejected the client certificate
+     */
+    default int preconnect(String gatewayUrl, SSLContext sslContext, int connections) throws IOException {
+        return 0;
+    }
+}
@@ -0,0 +1,55 @@
+package dk.bec.tpsi.openbanking.tppclient.httpclient;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppRequestBody;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Entity streaming a {@link TppRequestBody} to the gateway. Every write opens a new stream, so the entity
+ * stays repeatable.
+ */
+public class TppRequestBodyEntity extends AbstractHttpEntity {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final TppRequestBody body;
+
+    public TppRequestBodyEntity(TppRequestBody body, ContentType contentType) {
+        this.body = body;
+        setContentType(contentType.toString());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return body.contentLength();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return body.openStream();
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        try (InputStream instream = body.openStream()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = instream.read(buffer)) != -1) {
+                outstream.write(buffer, 0, read);
+            }
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -1,6 +1,7 @@
 package dk.bec.tpsi.openbanking.tppclient.httpclient;
 
 import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppRequestBody;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.NameValuePair;
@@ -10,6 +11,9 @@ import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicNameValuePair;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Stream;
 
 public class TppRequestBuilder {
@@ -28,16 +32,32 @@ public class TppRequestBuilder {
         return tppRequestBuilder.addTppRequest(request);
     }
 
+    public static TppRequestBuilder create(TppHttpRequest request) {
+        return new TppRequestBuilder(RequestBuilder.create(request.getMethod()))
+                .addHeaders(request.getHeaders())
+                .addParams(request.getRequestParams())
+                .addBody(request.getBody(), request.getBodySource())
+                .setUri(request.getUri());
+    }
+
     public RequestBuilder delegate() {
         return requestBuilder;
     }
 
     public TppRequestBuilder addHeaders(TppClientRequest request) {
-        if (MapUtils.isEmpty(request.getHeaders())) {
+        return addHeaders(request.getHeaders());
+    }
+
+    private TppRequestBuilder addHeaders(Map<String, List<String>> headers) {
+        if (MapUtils.isEmpty(headers)) {
             return this;
         }
 
-        request.getHeaders().forEach((k, vl) -> vl.forEach(v -> requestBuilder.addHeader(k, v)));
+        headers.forEach((name, values) -> {
+            for (String value : values) {
+                requestBuilder.addHeader(name, value);
+            }
+        });
         return this;
     }
 
@@ -49,12 +69,15 @@ public class TppRequestBuilder {
     }
 
     public TppRequestBuilder addParams(TppClientRequest request) {
-        if (MapUtils.isEmpty(request.getRequestParams())) {
+        return addParams(request.getRequestParams());
+    }
+
+    private TppRequestBuilder addParams(Map<String, String[]> requestParams) {
+        if (MapUtils.isEmpty(requestParams)) {
             return this;
         }
 
-        requestBuilder.addParameters(request
-                .getRequestParams()
+        requestBuilder.addParameters(requestParams
                 .entrySet()
                 .stream()
                 .flatMap(e ->
@@ -66,11 +89,20 @@ public class TppRequestBuilder {
     }
 
     public TppRequestBuilder addBody(TppClientRequest request) {
-        if (StringUtils.isBlank(request.getRequestBody())) {
+        return addBody(request.getRequestBody(), request.getRequestBodySource());
+    }
+
+    private TppRequestBuilder addBody(String body, TppRequestBody bodySource) {
+        if (Objects.nonNull(bodySource)) {
+            requestBuilder.setEntity(new TppRequestBodyEntity(bodySource, ContentType.APPLICATION_JSON));
+            return this;
+        }
+
+        if (StringUtils.isBlank(body)) {
             return this;
         }
 
-        requestBuilder.setEntity(new StringEntity(request.getRequestBody(), ContentType.APPLICATION_JSON));
+        requestBuilder.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
         return this;
     }
 
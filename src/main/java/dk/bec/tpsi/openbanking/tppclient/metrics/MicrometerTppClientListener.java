@@ -0,0 +1,104 @@
+package dk.bec.tpsi.openbanking.tppclient.metrics;
+
+import dk.bec.tpsi.openbanking.tppclient.service.TppCallRejectedException;
+import dk.bec.tpsi.openbanking.tppclient.service.TppClientService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes gateway call metrics to a Micrometer registry. Requires micrometer-core on the class path.
+ * <pre>
+ * tppClientService.setListener(new MicrometerTppClientListener(meterRegistry, tppClientService));
+ * </pre>
+ */
+public class MicrometerTppClientListener implements TppClientListener {
+    private static final String PREFIX = "tpp.client.";
+
+    private final MeterRegistry registry;
+    private final Map<TppClientPhase, Timer> phaseTimers = new EnumMap<>(TppClientPhase.class);
+    private final Map<Integer, Timer> callTimers = new ConcurrentHashMap<>();
+    private final Counter failures;
+    private final Counter rejections;
+    private final Counter retries;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Counter auditDropped;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public MicrometerTppClientListener(MeterRegistry registry, TppClientService tppClientService) {
+        this.registry = registry;
+        for (TppClientPhase phase : TppClientPhase.values()) {
+            phaseTimers.put(phase, Timer.builder(PREFIX + "phase")
+                    .tag("phase", phase.name().toLowerCase())
+                    .register(registry));
+        }
+        failures = Counter.builder(PREFIX + "calls.failed").register(registry);
+        rejections = Counter.builder(PREFIX + "calls.rejected").register(registry);
+        retries = Counter.builder(PREFIX + "calls.retried").register(registry);
+        cacheHits = Counter.builder(PREFIX + "cache.hits").register(registry);
+        cacheMisses = Counter.builder(PREFIX + "cache.misses").register(registry);
+        auditDropped = Counter.builder(PREFIX + "audit.dropped").register(registry);
+        Gauge.builder(PREFIX + "calls.in.flight", inFlight, AtomicInteger::get).register(registry);
+        Gauge.builder(PREFIX + "pool.leased", tppClientService, s -> s.getPoolStats().getLeased()).register(registry);
+        Gauge.builder(PREFIX + "pool.pending", tppClientService, s -> s.getPoolStats().getPending()).register(registry);
+        Gauge.builder(PREFIX + "pool.available", tppClientService, s -> s.getPoolStats().getAvailable()).register(registry);
+        Gauge.builder(PREFIX + "pool.max", tppClientService, s -> s.getPoolStats().getMax()).register(registry);
+    }
+
+    @Override
+    public void onCallStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void onCallCompleted(int status, long durationNanos) {
+        inFlight.decrementAndGet();
+        callTimers.computeIfAbsent(status, s -> Timer.builder(PREFIX + "calls")
+                .tag("status", String.valueOf(s))
+                .register(registry))
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onCallFailed(Throwable cause, long durationNanos) {
+        inFlight.decrementAndGet();
+        if (cause instanceof TppCallRejectedException) {
+            rejections.increment();
+        } else {
+            failures.increment();
+        }
+    }
+
+    @Override
+    public void onRetry(int attempt) {
+        retries.increment();
+    }
+
+    @Override
+    public void onCacheHit() {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void onCacheMiss() {
+        cacheMisses.increment();
+    }
+
+    @Override
+    public void onAuditRecordDropped() {
+        auditDropped.increment();
+    }
+
+    @Override
+    public void onPhase(TppClientPhase phase, long durationNanos) {
+        phaseTimers.get(phase).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+}
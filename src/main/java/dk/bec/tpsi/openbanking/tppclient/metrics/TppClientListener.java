@@ -0,0 +1,46 @@
+package dk.bec.tpsi.openbanking.tppclient.metrics;
+
+/**
+ * Receives timings and outcomes of gateway calls. All methods are called on the thread doing the work and
+ * must return quickly. Timings are only taken while a listener other than {@link #NOOP} is registered.
+ */
+public interface TppClientListener {
+    TppClientListener NOOP = new TppClientListener() {
+    };
+
+    default void onCallStarted() {
+    }
+
+    default void onCallCompleted(int status, long durationNanos) {
+    }
+
+    default void onCallFailed(Throwable cause, long durationNanos) {
+    }
+
+    default void onPhase(TppClientPhase phase, long durationNanos) {
+    }
+
+    /**
+     * A call is retried after the given failed attempt.
+     */
+    default void onRetry(int attempt) {
+    }
+
+    /**
+     * A call is answered from the response cache, or shares the answer of an identical call in flight.
+     */
+    default void onCacheHit() {
+    }
+
+    /**
+     * A cacheable call goes to the gateway, possibly to revalidate an expired response.
+     */
+    default void onCacheMiss() {
+    }
+
+    /**
+     * The audit record of a call is dropped because the audit buffer is full.
+     */
+    default void onAuditRecordDropped() {
+    }
+}
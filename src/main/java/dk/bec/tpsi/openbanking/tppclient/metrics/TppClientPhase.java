@@ -0,0 +1,18 @@
+package dk.bec.tpsi.openbanking.tppclient.metrics;
+
+public enum TppClientPhase {
+    //removing headers that must not be relayed to the gateway
+    FILTER_HEADERS,
+    //SHA-256 digest of the request body
+    DIGEST,
+    //signature and request assembly
+    SIGN,
+    //waiting for a connection from the pool
+    CONNECTION_LEASE,
+    //opening a new connection including the TLS handshake, only recorded when the pool has no idle connection
+    CONNECT,
+    //from the request being sent until the response head has been received
+    TIME_TO_FIRST_BYTE,
+    //reading the response body
+    BODY_READ
+}
@@ -0,0 +1,18 @@
+package dk.bec.tpsi.openbanking.tppclient.metrics;
+
+/**
+ * Steps getting a client service ready for its first call, see
+ * {@link dk.bec.tpsi.openbanking.tppclient.service.TppClientService#warmUp()}.
+ */
+public enum TppStartupPhase {
+    //registering the Bouncy Castle provider, the trust store is loaded meanwhile
+    PROVIDERS,
+    //loading the seal and WAC keystores in parallel, and waiting for the trust store
+    KEYSTORES,
+    //building the mTLS context from the WAC key and the trust store
+    SSL_CONTEXT,
+    //checking the certificates, digesting and signing a sample request and verifying its signature
+    SIGNING,
+    //opening connections to the gateway ahead of the first calls
+    CONNECTIONS
+}
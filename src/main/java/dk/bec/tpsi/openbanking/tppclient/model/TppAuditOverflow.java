@@ -0,0 +1,8 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+public enum TppAuditOverflow {
+    //the call waits until the audit writer has made room, no record is lost
+    BLOCK,
+    //the record is dropped and counted, the call goes on right away
+    DROP
+}
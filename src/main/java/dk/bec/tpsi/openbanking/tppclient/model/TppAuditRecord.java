@@ -0,0 +1,25 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * One signed request sent to a gateway, with the response it got, as kept in the audit journal.
+ */
+@Value
+@Builder
+public class TppAuditRecord {
+    //position in the journal, assigned when the record is written
+    long sequence;
+    long timestampMillis;
+    String method;
+    String uri;
+    //request headers as sent, with digest, signature and tpp-signature-certificate
+    TppHeaders requestHeaders;
+    //0 if no response was received
+    int status;
+    //null if no response was received
+    TppHeaders responseHeaders;
+    //reason no response was received, null otherwise
+    String error;
+}
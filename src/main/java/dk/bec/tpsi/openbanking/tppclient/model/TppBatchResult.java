@@ -0,0 +1,18 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class TppBatchResult {
+    TppClientRequest request;
+    //null if the call failed
+    TppClientResponse response;
+    //cause of the failure, null if the call succeeded
+    Throwable exception;
+
+    public boolean isFailed() {
+        return exception != null;
+    }
+}
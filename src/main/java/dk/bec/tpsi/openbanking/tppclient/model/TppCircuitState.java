@@ -0,0 +1,10 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+public enum TppCircuitState {
+    //calls go through
+    CLOSED,
+    //calls are rejected until the open time has passed
+    OPEN,
+    //a single trial call decides whether the circuit closes or opens again
+    HALF_OPEN
+}
@@ -14,6 +14,7 @@ import java.io.Serializable;
 @NoArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class TppClientCertParams implements Serializable {
+    //classpath folder of the seal and WAC keystores, or a file system folder when prefixed with file:
     String keystorePath;
     String trustStorePath;
     String wacCertPass;
@@ -22,4 +23,14 @@ public class TppClientCertParams implements Serializable {
     String sealCertPass;
     String sealCertName;
     String sealKeyAlias;
+    //JCA provider used for SHA256withRSA signatures, if not specified the first provider supporting it is used
+    String signatureProvider;
+    //JCA provider used for SHA-256 body digests, if not specified the first provider supporting it is used
+    String digestProvider;
+    //reload the key material when a file system keystore or the trust store changes
+    boolean watchKeystores;
+    //concurrent signing requests coalesced into one call of the signer, 0 or 1 to sign every request on its own
+    int signingBatchSize;
+    //longest time a signing request waits for its batch to fill up
+    long signingBatchWindowMicros;
 }
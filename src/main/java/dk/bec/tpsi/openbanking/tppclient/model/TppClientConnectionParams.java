@@ -0,0 +1,119 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TppClientConnectionParams implements Serializable {
+    //max pooled connections across all gateways
+    @Builder.Default
+    int maxConnTotal = 50;
+    //max pooled connections to a single gateway host
+    @Builder.Default
+    int maxConnPerRoute = 20;
+    //connections idle longer than this are evicted from the pool
+    @Builder.Default
+    long maxIdleTimeMillis = 30_000;
+    //total life time of a pooled connection, -1 means no limit
+    @Builder.Default
+    long connectionTimeToLiveMillis = -1;
+    //pooled connections idle longer than this are re-validated before reuse
+    @Builder.Default
+    int validateAfterInactivityMillis = 2_000;
+    //timeout establishing a connection to the gateway, -1 means system default
+    @Builder.Default
+    int connectTimeoutMillis = -1;
+    //timeout waiting for data from the gateway, -1 means system default
+    @Builder.Default
+    int socketTimeoutMillis = -1;
+    //timeout leasing a connection from the pool, -1 means no limit
+    @Builder.Default
+    int connectionRequestTimeoutMillis = -1;
+    //I/O dispatcher threads of the asynchronous client, 0 means one per available processor
+    @Builder.Default
+    int ioThreadCount = 0;
+    //max calls of a batch in flight at the same time
+    @Builder.Default
+    int batchConcurrency = 64;
+    //attempts per call including the first one, only idempotent requests are retried
+    @Builder.Default
+    int maxAttempts = 1;
+    //backoff before the first retry, doubled for every further retry; the actual wait is a random time up to it
+    @Builder.Default
+    long retryBackoffMillis = 100;
+    //upper limit of the backoff between attempts
+    @Builder.Default
+    long maxRetryBackoffMillis = 5_000;
+    //also retry non-idempotent requests carrying an x-request-id, for gateways that detect duplicates by it
+    @Builder.Default
+    boolean retryWithSameRequestId = false;
+    //consecutive failed calls opening the circuit breaker of a gateway, 0 disables the circuit breaker
+    @Builder.Default
+    int circuitBreakerFailureThreshold = 0;
+    //time an open circuit breaker rejects calls before it lets a trial call through
+    @Builder.Default
+    long circuitBreakerOpenMillis = 30_000;
+    //max calls in flight to a single gateway, 0 means no limit
+    @Builder.Default
+    int maxConcurrentCallsPerGateway = 0;
+    //time a blocking call waits for a free slot when the gateway is at its max calls, asynchronous calls only wait on virtual threads
+    @Builder.Default
+    long bulkheadWaitMillis = 0;
+    //call quota of a gateway, not limited if not specified
+    TppRateLimit gatewayRateLimit;
+    //call quota per consent-id of a gateway, not limited if not specified
+    TppRateLimit consentRateLimit;
+    //call quota per psu-id of a gateway, not limited if not specified
+    TppRateLimit psuRateLimit;
+    //time a call may be held back to stay within the quotas, 0 rejects calls over quota right away
+    @Builder.Default
+    long rateLimitWaitMillis = 0;
+    //ask for gzip or deflate compressed responses, also br if org.brotli:dec is on the class path
+    @Builder.Default
+    boolean compressResponses = true;
+    //library the calls are sent with, the JDK transport needs Java 11
+    @Builder.Default
+    TppHttpTransportType transport = TppHttpTransportType.APACHE;
+    //run asynchronous calls as blocking calls on virtual threads and keep callers on virtual threads from being
+    //pinned while they wait for a pooled connection; needs Java 21
+    @Builder.Default
+    boolean virtualThreads = false;
+    //max GET responses kept in the response cache, 0 disables the cache
+    @Builder.Default
+    int responseCacheMaxEntries = 0;
+    //time a response is cached at most, shorter if the gateway says so with Cache-Control
+    @Builder.Default
+    long responseCacheTtlMillis = 30_000;
+    //request headers identifying whose data a response is, responses are only shared by calls with the same values
+    @Builder.Default
+    Set<String> responseCacheKeyHeaders = new HashSet<>(Arrays.asList("authorization", "consent-id", "psu-id", "psu-corporate-id"));
+    //directory of the journal keeping every signed request and its response, no journal if not specified
+    String auditJournalPath;
+    //audit records waiting for the journal writer at most
+    @Builder.Default
+    int auditBufferSize = 8192;
+    //size of an audit journal segment file, a new one is started when it is full
+    @Builder.Default
+    long auditSegmentBytes = 64L * 1024 * 1024;
+    //whether a call waits for room or drops its audit record when the audit buffer is full
+    @Builder.Default
+    TppAuditOverflow auditOverflow = TppAuditOverflow.BLOCK;
+    //warm the service up when it is created, so it fails right away on key material that cannot be used
+    @Builder.Default
+    boolean warmUp = false;
+    //connections to the gateway opened by a warm-up, at most maxConnPerRoute
+    @Builder.Default
+    int warmUpConnections = 1;
+}
@@ -0,0 +1,16 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class TppClientPoolStats {
+    //connections handed out to running calls
+    int leased;
+    //calls waiting for a connection
+    int pending;
+    //idle connections kept alive in the pool
+    int available;
+    int max;
+}
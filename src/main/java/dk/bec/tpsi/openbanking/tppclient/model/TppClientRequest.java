@@ -2,10 +2,7 @@ package dk.bec.tpsi.openbanking.tppclient.model;
 
 import lombok.Builder;
 import lombok.Data;
-import org.apache.commons.collections4.CollectionUtils;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,13 +13,24 @@ public class TppClientRequest {
     Map<String, String[]> requestParams;
     String httpMethod;
     String requestBody;
-    Map<String, List<String>> headers;
+    //streamed body, takes precedence over requestBody
+    TppRequestBody requestBodySource;
+    TppHeaders headers;
+
+    public void setHeaders(Map<String, List<String>> headers) {
+        this.headers = TppHeaders.of(headers);
+    }
 
     public static class TppClientRequestBuilder {
-        Map<String, List<String>> headers = new HashMap<>();
+        TppHeaders headers = new TppHeaders();
+
+        public TppClientRequestBuilder headers(Map<String, List<String>> headers) {
+            this.headers = TppHeaders.of(headers);
+            return this;
+        }
 
         public TppClientRequestBuilder addHeader(String name, String value){
-            headers.put(name, Collections.singletonList(value));
+            headers.set(name, value);
             return this;
         }
     }
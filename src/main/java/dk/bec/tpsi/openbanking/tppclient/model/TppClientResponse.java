@@ -11,5 +11,18 @@ import java.util.Map;
 public class TppClientResponse {
     int status;
     String body;
-    Map<String, List<String>> headers;
+    TppHeaders headers;
+
+    public void setHeaders(Map<String, List<String>> headers) {
+        this.headers = TppHeaders.of(headers);
+    }
+
+    public static class TppClientResponseBuilder {
+        TppHeaders headers;
+
+        public TppClientResponseBuilder headers(Map<String, List<String>> headers) {
+            this.headers = TppHeaders.of(headers);
+            return this;
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TppGatewayProfile implements Serializable {
+    //id the gateway is routed by, e.g. the ASPSP or tenant id
+    String id;
+    String gatewayUrl;
+    TppClientCertParams certParams;
+    //max pooled connections to this gateway, if not specified the router default is used
+    Integer maxConnPerRoute;
+    //ask for compressed responses, if not specified the router default is used
+    Boolean compressResponses;
+    //library the calls to this gateway are sent with, if not specified the router default is used
+    TppHttpTransportType transport;
+}
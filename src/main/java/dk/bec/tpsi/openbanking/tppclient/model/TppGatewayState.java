@@ -0,0 +1,19 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class TppGatewayState {
+    String gatewayUrl;
+    TppCircuitState circuitState;
+    //failed calls since the last successful one
+    int consecutiveFailures;
+    //calls holding a slot of the gateway's bulkhead
+    int activeCalls;
+    //max calls in flight, 0 means no limit
+    int maxConcurrentCalls;
+    //calls rejected by the circuit breaker or the bulkhead
+    long rejectedCalls;
+}
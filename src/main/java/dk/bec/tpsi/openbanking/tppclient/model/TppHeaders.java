@@ -0,0 +1,298 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Ordered, case-insensitive HTTP header map. Names are stored in lower case, well-known names as shared
+ * constants, so the usual request headers are added and looked up without allocating strings. Headers are
+ * kept in insertion order in two small arrays and looked up by scanning, which for the few dozen headers of
+ * a request is faster than hashing.
+ */
+public class TppHeaders extends AbstractMap<String, List<String>> {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final String[] WELL_KNOWN = {
+            "accept", "accept-encoding", "aspsp-sca-approach", "authorization", "cache-control", "connection",
+            "consent-id", "content-encoding", "content-length", "content-type", "cookie", "date", "digest", "etag",
+            "expires", "host", "keep-alive", "last-modified", "location", "psu-corporate-id", "psu-id",
+            "psu-ip-address", "retry-after", "server", "set-cookie", "signature", "tpp-nok-redirect-uri",
+            "tpp-redirect-uri", "tpp-signature-certificate", "transfer-encoding", "user-agent", "vary",
+            "x-forwarded-for", "x-forwarded-host", "x-forwarded-port", "x-forwarded-proto", "x-request-id"};
+    //well-known names by length, so a name is only compared with the few of the same length
+    private static final String[][] WELL_KNOWN_BY_LENGTH = byLength(WELL_KNOWN);
+
+    private String[] names;
+    private List<String>[] values;
+    private int size;
+    private Set<Entry<String, List<String>>> entrySet;
+
+    public TppHeaders() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public TppHeaders(int capacity) {
+        names = new String[Math.max(capacity, 1)];
+        values = newValues(names.length);
+    }
+
+    public TppHeaders(Map<String, List<String>> headers) {
+        this(headers.size());
+        headers.forEach(this::put);
+    }
+
+    /**
+     * The headers as TppHeaders, copied only if they are another kind of map.
+     */
+    public static TppHeaders of(Map<String, List<String>> headers) {
+        if (headers == null || headers instanceof TppHeaders) {
+            return (TppHeaders) headers;
+        }
+        return new TppHeaders(headers);
+    }
+
+    /**
+     * Lower case form of the name, the shared constant for well-known names.
+     */
+    public static String normalise(String name) {
+        int length = name.length();
+        if (length < WELL_KNOWN_BY_LENGTH.length) {
+            for (String wellKnown : WELL_KNOWN_BY_LENGTH[length]) {
+                if (wellKnown.equalsIgnoreCase(name)) {
+                    return wellKnown;
+                }
+            }
+        }
+        // returns the name itself if it is lower case already
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Appends a value to the header, keeping the values it already has.
+     */
+    public TppHeaders add(String name, String value) {
+        int index = indexOf(name);
+        if (index < 0) {
+            append(normalise(name), Collections.singletonList(value));
+        } else {
+            List<String> current = values[index];
+            List<String> merged = new ArrayList<>(current.size() + 1);
+            merged.addAll(current);
+            merged.add(value);
+            values[index] = merged;
+        }
+        return this;
+    }
+
+    /**
+     * Replaces the values of the header with a single value.
+     */
+    public TppHeaders set(String name, String value) {
+        put(name, Collections.singletonList(value));
+        return this;
+    }
+
+    public String getFirst(String name) {
+        int index = indexOf(name);
+        return index < 0 || values[index].isEmpty() ? null : values[index].get(0);
+    }
+
+    /**
+     * Removes all headers whose lower case name matches, keeping the order of the others.
+     */
+    public void removeIf(Predicate<String> name) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!name.test(names[i])) {
+                names[kept] = names[i];
+                values[kept] = values[i];
+                kept++;
+            }
+        }
+        Arrays.fill(names, kept, size, null);
+        Arrays.fill(values, kept, size, null);
+        size = kept;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public List<String> get(Object name) {
+        int index = indexOf(name);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public List<String> put(String name, List<String> value) {
+        Objects.requireNonNull(value, "header values");
+        int index = indexOf(name);
+        if (index < 0) {
+            append(normalise(name), value);
+            return null;
+        }
+        List<String> previous = values[index];
+        values[index] = value;
+        return previous;
+    }
+
+    @Override
+    public List<String> remove(Object name) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        List<String> previous = values[index];
+        removeAt(index);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super List<String>> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(names[i], values[i]);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, List<String>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private int indexOf(Object name) {
+        if (!(name instanceof String)) {
+            return -1;
+        }
+        // well-known names are usually passed as the same constant, try identity before comparing
+        for (int i = 0; i < size; i++) {
+            if (names[i] == name) {
+                return i;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i].equalsIgnoreCase((String) name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void append(String name, List<String> value) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+    }
+
+    private void removeAt(int index) {
+        int moved = size - index - 1;
+        System.arraycopy(names, index + 1, names, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        size--;
+        names[size] = null;
+        values[size] = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String>[] newValues(int length) {
+        return (List<String>[]) new List<?>[length];
+    }
+
+    private static String[][] byLength(String[] names) {
+        int maxLength = 0;
+        for (String name : names) {
+            maxLength = Math.max(maxLength, name.length());
+        }
+        String[][] byLength = new String[maxLength + 1][];
+        for (int length = 0; length <= maxLength; length++) {
+            int finalLength = length;
+            byLength[length] = Arrays.stream(names).filter(n -> n.length() == finalLength).toArray(String[]::new);
+        }
+        return byLength;
+    }
+
+    private class EntrySet extends AbstractSet<Entry<String, List<String>>> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<Entry<String, List<String>>> iterator() {
+            return new Iterator<Entry<String, List<String>>>() {
+                private int next;
+                private int last = -1;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public Entry<String, List<String>> next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next++;
+                    return new HeaderEntry(last);
+                }
+
+                @Override
+                public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    }
+                    removeAt(last);
+                    next = last;
+                    last = -1;
+                }
+            };
+        }
+    }
+
+    private class HeaderEntry extends SimpleEntry<String, List<String>> {
+        private final int index;
+
+        private HeaderEntry(int index) {
+            super(names[index], values[index]);
+            this.index = index;
+        }
+
+        @Override
+        public List<String> setValue(List<String> value) {
+            values[index] = Objects.requireNonNull(value, "header values");
+            return super.setValue(value);
+        }
+    }
+}
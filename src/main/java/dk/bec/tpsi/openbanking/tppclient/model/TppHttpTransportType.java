@@ -0,0 +1,8 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+public enum TppHttpTransportType {
+    //Apache HttpClient 4.5, HTTP/1.1 over a connection pool shared by the gateways of a TppGatewayRouter
+    APACHE,
+    //java.net.http client of Java 11 or later, HTTP/2 where the gateway supports it, many calls sharing a connection
+    JDK
+}
@@ -0,0 +1,25 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Call quota: at most {@code permits} calls per {@code periodMillis}, all of which may be used at once.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TppRateLimit implements Serializable {
+    int permits;
+    long periodMillis;
+
+    public static TppRateLimit of(int permits, long period, TimeUnit unit) {
+        return new TppRateLimit(permits, unit.toMillis(period));
+    }
+}
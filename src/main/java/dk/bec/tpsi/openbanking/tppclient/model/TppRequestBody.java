@@ -0,0 +1,54 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Repeatable source of a request body. The body is read once to compute the digest header and once more
+ * when it is sent, each time from a fresh stream, so it is never held in memory as a whole.
+ */
+@FunctionalInterface
+public interface TppRequestBody {
+
+    InputStream openStream() throws IOException;
+
+    //length in bytes, -1 if not known up front
+    default long contentLength() {
+        return -1;
+    }
+
+    static TppRequestBody ofBytes(byte[] bytes) {
+        return new TppRequestBody() {
+            @Override
+            public InputStream openStream() {
+                return new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public long contentLength() {
+                return bytes.length;
+            }
+        };
+    }
+
+    static TppRequestBody ofFile(Path file) {
+        return new TppRequestBody() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return Files.newInputStream(file);
+            }
+
+            @Override
+            public long contentLength() {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    return -1;
+                }
+            }
+        };
+    }
+}
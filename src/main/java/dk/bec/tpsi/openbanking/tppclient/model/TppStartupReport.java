@@ -0,0 +1,30 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppStartupPhase;
+import lombok.Value;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Outcome of warming up a client service.
+ */
+@Value
+public class TppStartupReport {
+    //duration of every phase in nanoseconds, in the order they ran
+    Map<TppStartupPhase, Long> phaseNanos;
+    //connections to the gateway opened ahead of the first calls
+    int connections;
+
+    public long getTotalNanos() {
+        return phaseNanos.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public String toString() {
+        return phaseNanos.entrySet().stream()
+                .map(phase -> String.format("%s=%dms", phase.getKey().name().toLowerCase(), TimeUnit.NANOSECONDS.toMillis(phase.getValue())))
+                .collect(Collectors.joining(", ", "", String.format(", %d connections ready", connections)));
+    }
+}
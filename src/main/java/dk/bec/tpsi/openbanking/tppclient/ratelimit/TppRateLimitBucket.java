@@ -0,0 +1,90 @@
+package dk.bec.tpsi.openbanking.tppclient.ratelimit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppRateLimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket of one quota key, implemented as generic cell rate algorithm: instead of a token count it
+ * keeps the time at which the bucket would be full again, so taking a permit is a single compare-and-set.
+ * Calls may also reserve a permit in the future and wait for it. A bucket without limit only holds back
+ * calls while the gateway has asked to pause.
+ */
+class TppRateLimitBucket {
+    //a new bucket is full and not paused as of this long before its creation, callers that read the clock
+    //just before the bucket was created must not find it drawn ahead
+    private static final long FULL_SINCE_NANOS = TimeUnit.DAYS.toNanos(1);
+
+    //time between two permits
+    private final long intervalNanos;
+    //how far the bucket may be drawn ahead of time, the burst of permits - 1 intervals
+    private final long toleranceNanos;
+    //theoretical arrival time of the next call if calls came at the permitted rate
+    private final AtomicLong arrival;
+    //no calls before this time, as asked by the gateway
+    private final AtomicLong pausedUntil;
+
+    TppRateLimitBucket(TppRateLimit limit, long now) {
+        if (limit == null || limit.getPermits() <= 0) {
+            intervalNanos = 0;
+            toleranceNanos = 0;
+        } else {
+            intervalNanos = TimeUnit.MILLISECONDS.toNanos(limit.getPeriodMillis()) / limit.getPermits();
+            toleranceNanos = intervalNanos * (limit.getPermits() - 1);
+        }
+        arrival = new AtomicLong(now - FULL_SINCE_NANOS);
+        pausedUntil = new AtomicLong(now - FULL_SINCE_NANOS);
+    }
+
+    /**
+     * Takes a permit, possibly one becoming available later.
+     *
+     * @return nanoseconds until the permit is available, -1 if that is longer than maxWaitNanos, in which case
+     * no permit is taken
+     */
+    long reserve(long now, long maxWaitNanos) {
+        if (intervalNanos == 0) {
+            // nothing to count, only the pause matters; no write keeps an unlimited bucket free of contention
+            long wait = Math.max(pausedUntil.get() - now, 0);
+            return wait > maxWaitNanos ? -1 : wait;
+        }
+        while (true) {
+            long current = arrival.get();
+            long start = later(later(now, current - toleranceNanos), pausedUntil.get());
+            long wait = start - now;
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (arrival.compareAndSet(current, later(current, start) + intervalNanos)) {
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * Gives back a permit taken by {@link #reserve} that was not used.
+     */
+    void refund() {
+        arrival.addAndGet(-intervalNanos);
+    }
+
+    void pauseUntil(long until) {
+        long current;
+        do {
+            current = pausedUntil.get();
+        } while (until - current > 0 && !pausedUntil.compareAndSet(current, until));
+    }
+
+    /**
+     * @return true if the bucket is full and not paused, so it behaves like a new one
+     */
+    boolean isIdle(long now) {
+        return arrival.get() - now <= 0 && pausedUntil.get() - now <= 0;
+    }
+
+    private static long later(long a, long b) {
+        // nano times may overflow, so they are only compared by their difference
+        return b - a > 0 ? b : a;
+    }
+}
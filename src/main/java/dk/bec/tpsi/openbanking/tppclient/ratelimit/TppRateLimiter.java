@@ -0,0 +1,242 @@
+package dk.bec.tpsi.openbanking.tppclient.ratelimit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import dk.bec.tpsi.openbanking.tppclient.model.TppRateLimit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.http.client.utils.DateUtils;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceImpl.PSU_ID;
+
+/**
+ * Keeps calls within the quotas of the gateways: one per gateway, one per consent-id and one per psu-id of
+ * a gateway. Every call takes a permit from each quota that applies to it. The quotas adapt to what the
+ * gateways answer: a Retry-After pauses the calls it concerns and an exhausted rate limit header pauses the
+ * gateway until the limit resets. Permits are taken without locks, see {@link TppRateLimitBucket}.
+ */
+@Slf4j
+public class TppRateLimiter {
+    public static final String CONSENT_ID = "consent-id";
+    private static final String RETRY_AFTER = "retry-after";
+    private static final String[] RATE_LIMIT_REMAINING = {"ratelimit-remaining", "x-ratelimit-remaining"};
+    private static final String[] RATE_LIMIT_RESET = {"ratelimit-reset", "x-ratelimit-reset"};
+    //reset values above this are epoch seconds rather than seconds from now
+    private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+    //longest pause a gateway can ask for, longer values are taken as this
+    private static final long MAX_PAUSE_NANOS = TimeUnit.DAYS.toNanos(1);
+    //idle consent and psu buckets are dropped after this many new buckets
+    private static final int SWEEP_INTERVAL = 4096;
+
+    private final TppRateLimit gatewayLimit;
+    private final TppRateLimit consentLimit;
+    private final TppRateLimit psuLimit;
+    private final Map<String, TppRateLimitBucket> gatewayBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TppRateLimitBucket> consentBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TppRateLimitBucket> psuBuckets = new ConcurrentHashMap<>();
+    private final AtomicInteger newBuckets = new AtomicInteger();
+
+    public TppRateLimiter(TppRateLimit gatewayLimit, TppRateLimit consentLimit, TppRateLimit psuLimit) {
+        this.gatewayLimit = gatewayLimit;
+        this.consentLimit = consentLimit;
+        this.psuLimit = psuLimit;
+    }
+
+    public TppRateLimiter(TppClientConnectionParams connectionParams) {
+        this(connectionParams.getGatewayRateLimit(), connectionParams.getConsentRateLimit(), connectionParams.getPsuRateLimit());
+    }
+
+    /**
+     * Non-blocking acquire: takes a permit from every quota of the call if the call can go out within the
+     * given time.
+     *
+     * @return nanoseconds the caller has to wait before making the call, -1 if the call is over quota for
+     * longer than maxWaitNanos, in which case no permit is taken
+     */
+    public long reserve(String gatewayUrl, TppClientRequest request, long maxWaitNanos) {
+        long now = System.nanoTime();
+        TppRateLimitBucket gateway = gatewayBucket(gatewayUrl, now);
+        long wait = gateway.reserve(now, maxWaitNanos);
+        if (wait < 0) {
+            return -1;
+        }
+
+        TppRateLimitBucket consent = bucket(consentBuckets, gatewayUrl, header(request, CONSENT_ID), consentLimit, now);
+        long consentWait = consent == null ? 0 : consent.reserve(now, maxWaitNanos);
+        if (consentWait < 0) {
+            gateway.refund();
+            return -1;
+        }
+
+        TppRateLimitBucket psu = bucket(psuBuckets, gatewayUrl, header(request, PSU_ID), psuLimit, now);
+        long psuWait = psu == null ? 0 : psu.reserve(now, maxWaitNanos);
+        if (psuWait < 0) {
+            gateway.refund();
+            if (consent != null) {
+                consent.refund();
+            }
+            return -1;
+        }
+        return Math.max(wait, Math.max(consentWait, psuWait));
+    }
+
+    /**
+     * Non-blocking acquire of a permit that is available right now.
+     */
+    public boolean tryAcquire(String gatewayUrl, TppClientRequest request) {
+        return reserve(gatewayUrl, request, 0) == 0;
+    }
+
+    /**
+     * Blocking acquire, waits up to the timeout for the call to be within its quotas.
+     *
+     * @return false if the call is over quota for longer than the timeout
+     */
+    public boolean acquire(String gatewayUrl, TppClientRequest request, long timeout, TimeUnit unit) throws InterruptedException {
+        long wait = reserve(gatewayUrl, request, unit.toNanos(timeout));
+        if (wait < 0) {
+            return false;
+        }
+        long deadline = System.nanoTime() + wait;
+        for (long left = wait; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(this, left);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adapts the quotas to the answer of the gateway. A 429 with Retry-After pauses the most specific quota
+     * of the call, consent before psu before gateway; a 503 with Retry-After pauses the gateway. Rate limit
+     * headers with nothing remaining pause the gateway until the reset.
+     */
+    public void onResponse(String gatewayUrl, TppClientRequest request, int status, TppHeaders headers) {
+        if (headers == null) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (status == 429 || status == 503) {
+            long retryAfter = retryAfterNanos(headers);
+            if (retryAfter > 0) {
+                TppRateLimitBucket bucket = status == 429 ? mostSpecificBucket(gatewayUrl, request, now) : gatewayBucket(gatewayUrl, now);
+                bucket.pauseUntil(now + retryAfter);
+                log.warn("Gateway {} answered {}, pausing calls for {} ms", gatewayUrl, status, TimeUnit.NANOSECONDS.toMillis(retryAfter));
+            }
+        }
+
+        if ("0".equals(firstOf(headers, RATE_LIMIT_REMAINING))) {
+            long reset = resetNanos(firstOf(headers, RATE_LIMIT_RESET));
+            if (reset > 0) {
+                gatewayBucket(gatewayUrl, now).pauseUntil(now + reset);
+                log.debug("Rate limit of gateway {} exhausted, pausing calls for {} ms", gatewayUrl, TimeUnit.NANOSECONDS.toMillis(reset));
+            }
+        }
+    }
+
+    private TppRateLimitBucket mostSpecificBucket(String gatewayUrl, TppClientRequest request, long now) {
+        String consentId = header(request, CONSENT_ID);
+        if (consentId != null) {
+            return getOrCreate(consentBuckets, key(gatewayUrl, consentId), consentLimit, now);
+        }
+        String psuId = header(request, PSU_ID);
+        if (psuId != null) {
+            return getOrCreate(psuBuckets, key(gatewayUrl, psuId), psuLimit, now);
+        }
+        return gatewayBucket(gatewayUrl, now);
+    }
+
+    private TppRateLimitBucket gatewayBucket(String gatewayUrl, long now) {
+        // computeIfAbsent locks even if the bucket exists, the common case is served by get
+        TppRateLimitBucket bucket = gatewayBuckets.get(gatewayUrl);
+        return bucket != null ? bucket : gatewayBuckets.computeIfAbsent(gatewayUrl, key -> new TppRateLimitBucket(gatewayLimit, now));
+    }
+
+    private TppRateLimitBucket bucket(Map<String, TppRateLimitBucket> buckets, String gatewayUrl, String id, TppRateLimit limit, long now) {
+        if (id == null) {
+            return null;
+        }
+        // without a quota a bucket only exists while the gateway has paused it
+        if (limit == null) {
+            return buckets.isEmpty() ? null : buckets.get(key(gatewayUrl, id));
+        }
+        return getOrCreate(buckets, key(gatewayUrl, id), limit, now);
+    }
+
+    private TppRateLimitBucket getOrCreate(Map<String, TppRateLimitBucket> buckets, String key, TppRateLimit limit, long now) {
+        TppRateLimitBucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        bucket = buckets.computeIfAbsent(key, k -> new TppRateLimitBucket(limit, now));
+        if (newBuckets.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            // full buckets behave like new ones, dropping them keeps the maps to the recently used ids
+            consentBuckets.values().removeIf(idle -> idle.isIdle(now));
+            psuBuckets.values().removeIf(idle -> idle.isIdle(now));
+        }
+        return bucket;
+    }
+
+    private static String key(String gatewayUrl, String id) {
+        return gatewayUrl + ' ' + id;
+    }
+
+    private static String header(TppClientRequest request, String name) {
+        return request.getHeaders() == null ? null : StringUtils.trimToNull(request.getHeaders().getFirst(name));
+    }
+
+    private static String firstOf(TppHeaders headers, String[] names) {
+        for (String name : names) {
+            String value = headers.getFirst(name);
+            if (value != null) {
+                return value.trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the time to wait given by a Retry-After header in seconds or as HTTP date, 0 if there is none
+     */
+    public static long retryAfterNanos(TppHeaders headers) {
+        String retryAfter = StringUtils.trimToNull(headers.getFirst(RETRY_AFTER));
+        if (retryAfter == null) {
+            return 0;
+        }
+        if (StringUtils.isNumeric(retryAfter)) {
+            // values too large for a long are taken as the longest pause
+            return pauseNanos(TimeUnit.SECONDS.toNanos(NumberUtils.toLong(retryAfter, Long.MAX_VALUE)));
+        }
+        Date date = DateUtils.parseDate(retryAfter);
+        return date == null ? 0 : pauseNanos(TimeUnit.MILLISECONDS.toNanos(date.getTime() - System.currentTimeMillis()));
+    }
+
+    private static long resetNanos(String reset) {
+        if (!StringUtils.isNumeric(reset)) {
+            return 0;
+        }
+        long seconds = NumberUtils.toLong(reset, Long.MAX_VALUE);
+        if (seconds > EPOCH_SECONDS_THRESHOLD) {
+            return pauseNanos(TimeUnit.MILLISECONDS.toNanos(TimeUnit.SECONDS.toMillis(seconds) - System.currentTimeMillis()));
+        }
+        return pauseNanos(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    /**
+     * @return the pause bounded by MAX_PAUSE_NANOS, so adding it to System.nanoTime() cannot overflow
+     */
+    private static long pauseNanos(long nanos) {
+        return Math.min(Math.max(nanos, 0), MAX_PAUSE_NANOS);
+    }
+}
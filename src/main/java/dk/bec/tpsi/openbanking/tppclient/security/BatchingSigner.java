@@ -0,0 +1,135 @@
+package dk.bec.tpsi.openbanking.tppclient.security;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Signer coalescing concurrent signing requests into batches for another signer. A batch is handed over once it
+ * is full or once its first request has waited for the batch window, whichever comes first, and is signed with
+ * a single {@link Signer#signAll} call on a signer thread.
+ */
+@Slf4j
+public class BatchingSigner implements Signer {
+    private final Signer delegate;
+    private final int maxBatchSize;
+    private final long windowMicros;
+    private final Lock lock = new ReentrantLock();
+    //batch being filled, null until the next request arrives
+    private List<PendingSignature> batch;
+
+    /**
+     * @param maxBatchSize most signing requests in one call of the signer
+     * @param windowMicros longest time a signing request waits for its batch to fill up
+     */
+    public BatchingSigner(Signer delegate, int maxBatchSize, long windowMicros) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMicros = windowMicros;
+    }
+
+    @Override
+    public byte[] sign(byte[] data, int offset, int length) throws SecurityProviderServiceException {
+        // the caller may reuse its bytes once this returns, the batch gets a copy
+        try {
+            return signAsync(Arrays.copyOfRange(data, offset, offset + length)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SecurityProviderServiceException("Interrupted while signing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SecurityProviderServiceException) {
+                throw (SecurityProviderServiceException) e.getCause();
+            }
+            throw new SecurityProviderServiceException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<byte[]> signAsync(byte[] data) {
+        PendingSignature pending = new PendingSignature(data);
+        List<PendingSignature> full = null;
+        List<PendingSignature> started = null;
+        lock.lock();
+        try {
+            if (batch == null) {
+                batch = new ArrayList<>(maxBatchSize);
+                started = batch;
+            }
+            batch.add(pending);
+            if (batch.size() >= maxBatchSize) {
+                full = batch;
+                batch = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (full != null) {
+            List<PendingSignature> signed = full;
+            SignerThreads.execute(() -> signBatch(signed));
+        } else if (started != null) {
+            List<PendingSignature> window = started;
+            SignerThreads.schedule(() -> flush(window), windowMicros, TimeUnit.MICROSECONDS);
+        }
+        return pending.signature;
+    }
+
+    @Override
+    public List<byte[]> signAll(List<byte[]> data) throws SecurityProviderServiceException {
+        return delegate.signAll(data);
+    }
+
+    /**
+     * Signs the batch once its window is over, unless it has filled up and been signed already.
+     */
+    private void flush(List<PendingSignature> window) {
+        lock.lock();
+        try {
+            if (batch != window) {
+                return;
+            }
+            batch = null;
+        } finally {
+            lock.unlock();
+        }
+        signBatch(window);
+    }
+
+    private void signBatch(List<PendingSignature> pending) {
+        List<byte[]> data = new ArrayList<>(pending.size());
+        for (PendingSignature signature : pending) {
+            data.add(signature.data);
+        }
+        try {
+            List<byte[]> signatures = delegate.signAll(data);
+            if (signatures.size() != pending.size()) {
+                throw new SecurityProviderServiceException(String.format("Signer returned %d signatures for %d signing strings",
+                        signatures.size(), pending.size()));
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                pending.get(i).signature.complete(signatures.get(i));
+            }
+        } catch (SecurityProviderServiceException | RuntimeException e) {
+            log.error("Error signing a batch of {} requests", pending.size(), e);
+            for (PendingSignature signature : pending) {
+                signature.signature.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class PendingSignature {
+        private final byte[] data;
+        private final CompletableFuture<byte[]> signature = new CompletableFuture<>();
+
+        private PendingSignature(byte[] data) {
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package dk.bec.tpsi.openbanking.tppclient.security;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * Signs on the calling thread with a seal key loaded from a keystore.
+ */
+public class KeyStoreSigner implements Signer {
+    private static final String SHA_256_WITH_RSA = "SHA256withRSA";
+
+    private final PrivateKey privateKey;
+    private final String provider;
+    // JCA engines are not thread safe, each thread keeps its own initialised instance
+    private final ThreadLocal<Signature> signatureEngine = new ThreadLocal<>();
+
+    /**
+     * @param provider JCA provider of the signature engine, the first provider supporting it if blank
+     */
+    public KeyStoreSigner(PrivateKey privateKey, String provider) throws SecurityProviderServiceException {
+        this.privateKey = privateKey;
+        this.provider = provider;
+        try {
+            // fail fast on unknown providers
+            signatureEngine();
+        } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidKeyException e) {
+            throw new SecurityProviderServiceException(e);
+        }
+    }
+
+    @Override
+    public byte[] sign(byte[] data, int offset, int length) throws SecurityProviderServiceException {
+        try {
+            Signature sign = signatureEngine();
+            sign.update(data, offset, length);
+            return sign.sign();
+        } catch (SignatureException e) {
+            // the engine state is undefined after a failure, start over with a fresh one
+            signatureEngine.remove();
+            throw new SecurityProviderServiceException(e);
+        } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidKeyException e) {
+            throw new SecurityProviderServiceException(e);
+        }
+    }
+
+    private Signature signatureEngine() throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
+        Signature sign = signatureEngine.get();
+        if (sign == null) {
+            sign = StringUtils.isBlank(provider)
+                    ? Signature.getInstance(SHA_256_WITH_RSA)
+                    : Signature.getInstance(SHA_256_WITH_RSA, provider);
+            // sign() resets the engine to this initialised state, so it can be reused for the next request
+            sign.initSign(privateKey);
+            signatureEngine.set(sign);
+        }
+        return sign;
+    }
+}
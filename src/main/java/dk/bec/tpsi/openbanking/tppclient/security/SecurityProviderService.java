@@ -3,10 +3,24 @@ package dk.bec.tpsi.openbanking.tppclient.security;
 import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
 
 import java.security.KeyStore;
+import java.util.concurrent.CompletableFuture;
 
 public interface SecurityProviderService {
     String createSignature(TppClientRequest request) throws SecurityProviderServiceException;
 
+    /**
+     * Signature header of the request, created without blocking the calling thread if the signer supports it.
+     */
+    default CompletableFuture<String> createSignatureAsync(TppClientRequest request) {
+        CompletableFuture<String> signature = new CompletableFuture<>();
+        try {
+            signature.complete(createSignature(request));
+        } catch (SecurityProviderServiceException | RuntimeException e) {
+            signature.completeExceptionally(e);
+        }
+        return signature;
+    }
+
     String digestBody(TppClientRequest request) throws SecurityProviderServiceException;
 
     void filterHeaders(TppClientRequest request);
@@ -16,4 +30,13 @@ public interface SecurityProviderService {
     KeyStore getWacKey();
 
     String getTrustStorePath();
+
+    /**
+     * Runs digesting and signing once, so the providers and engines are ready for the first call, and checks
+     * that the key material can be used.
+     *
+     * @throws SecurityProviderServiceException if a certificate is not valid or a key does not match its certificate
+     */
+    default void warmUp() throws SecurityProviderServiceException {
+    }
 }
@@ -1,8 +1,8 @@
 package dk.bec.tpsi.openbanking.tppclient.security;
 
-import com.google.common.collect.Sets;
 import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
 import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppRequestBody;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -11,14 +11,16 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.*;
-import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 public class SecurityProviderServiceImpl implements SecurityProviderService {
@@ -30,31 +32,85 @@ public class SecurityProviderServiceImpl implements SecurityProviderService {
     public static final String X_REQUEST_ID = "x-request-id";
     public static final String DIGEST = "digest";
     public static final String SHA_256 = "SHA-256";
+    public static final String FILE_KEYSTORE_PREFIX = "file:";
+    private static final int DIGEST_BUFFER_SIZE = 8192;
+    private static final String SHA_256_WITH = "SHA256with";
+    private static final byte[] WARM_UP_DATA = "warm-up".getBytes(StandardCharsets.UTF_8);
     private final static Set<String> DONT_RELAY = new HashSet<>(
             Arrays.asList("content-length", "cache-control", "accept", "user-agent", "connection", "host",
                     "accept-encoding", "x-forwarded-host", "cookie", "x-forwarded-proto", "x-forwarded-port", "x-forwarded-for"));
 
-    private static final Set<String> SIGN_HEADERS = Sets.newHashSet(DIGEST, X_REQUEST_ID, PSU_ID, PSU_CORPORATE_ID, TPP_REDIRECT_URI);
+    //signed headers, in the order they are signed in
+    private static final String[] SIGN_HEADERS = {DIGEST, X_REQUEST_ID, PSU_ID, PSU_CORPORATE_ID, TPP_REDIRECT_URI};
     private KeyStore sealKeystore;
     private KeyStore wacKeystore;
     private TppClientCertParams certParams;
+    private SigningIdentity signingIdentity;
+    //signature header layouts by the bit mask of the signed headers a request has
+    private SigningTemplate[] signingTemplates;
+    private Signer signer;
+    // JCA engines are not thread safe, each thread keeps its own initialised instance
+    private final ThreadLocal<MessageDigest> digestEngine = new ThreadLocal<>();
 
     public SecurityProviderServiceImpl(TppClientCertParams certParams) throws SecurityProviderServiceException {
+        this(certParams, null);
+    }
+
+    /**
+     * @param signer signs with a seal key held elsewhere, e.g. by an HSM, the seal keystore then only needs the
+     *               certificate. Null to sign with the key of the seal keystore.
+     */
+    public SecurityProviderServiceImpl(TppClientCertParams certParams, Signer signer) throws SecurityProviderServiceException {
         try {
-            if (Security.getProvider(BC) == null) {
-                // insert at specific position
-                Security.insertProviderAt(new BouncyCastleProvider(), 1);
-            }
+            registerProvider();
+            // deriving the keys from the passwords takes most of the time, so both keystores are loaded at once
+            CompletableFuture<KeyStore> wac = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return loadKeyStore(certParams.getKeystorePath(), certParams.getWacCertName(), certParams.getWacCertPass(), certParams.getWacKeyAlias());
+                } catch (SecurityProviderServiceException e) {
+                    throw new CompletionException(e);
+                }
+            });
             sealKeystore = loadKeyStore(certParams.getKeystorePath(), certParams.getSealCertName(), certParams.getSealCertPass(), certParams.getSealKeyAlias());
-            wacKeystore = loadKeyStore(certParams.getKeystorePath(), certParams.getWacCertName(), certParams.getWacCertPass(), certParams.getWacKeyAlias());
+            try {
+                wacKeystore = wac.join();
+            } catch (CompletionException e) {
+                throw new SecurityProviderServiceException(e.getCause());
+            }
+            // with a signer of its own the seal key may be held outside the keystore
+            signingIdentity = SigningIdentity.load(sealKeystore, certParams.getSealKeyAlias(), certParams.getSealCertPass(),
+                    Objects.isNull(signer));
+            signingTemplates = SigningTemplate.compile(signingIdentity.getKeyId(), SIGN_HEADERS);
             this.certParams = certParams;
+            this.signer = createSigner(certParams, signer, signingIdentity);
+            // fail fast on unknown providers
+            digestEngine();
         } catch (Exception e) {
             throw new SecurityProviderServiceException(e);
         }
     }
 
+    /**
+     * Registers Bouncy Castle as the preferred provider, unless it is registered already.
+     */
+    public static void registerProvider() {
+        if (Security.getProvider(BC) == null) {
+            // insert at specific position
+            Security.insertProviderAt(new BouncyCastleProvider(), 1);
+        }
+    }
+
+    private static Signer createSigner(TppClientCertParams certParams, Signer remoteSigner, SigningIdentity signingIdentity) throws SecurityProviderServiceException {
+        Signer signer = Objects.nonNull(remoteSigner)
+                ? remoteSigner
+                : new KeyStoreSigner(signingIdentity.getPrivateKey(), certParams.getSignatureProvider());
+        return certParams.getSigningBatchSize() > 1
+                ? new BatchingSigner(signer, certParams.getSigningBatchSize(), certParams.getSigningBatchWindowMicros())
+                : signer;
+    }
+
     private KeyStore loadKeyStore(String keystorePath, String keystoreName, String keystorePass, String keyAlias) throws SecurityProviderServiceException {
-        try (InputStream instream = this.getClass().getClassLoader().getResourceAsStream(keystorePath + keystoreName)) {
+        try (InputStream instream = openKeyStore(keystorePath, keystoreName)) {
             KeyStore keyStore = KeyStore.getInstance(PKCS_12, BC);
             keyStore.load(instream, keystorePass.toCharArray());
             if (keyStore.size() == 0) {
@@ -71,115 +127,206 @@ public class SecurityProviderServiceImpl implements SecurityProviderService {
         }
     }
 
+    private InputStream openKeyStore(String keystorePath, String keystoreName) throws IOException {
+        if (StringUtils.startsWith(keystorePath, FILE_KEYSTORE_PREFIX)) {
+            return Files.newInputStream(keystoreFile(keystorePath, keystoreName));
+        }
+        return this.getClass().getClassLoader().getResourceAsStream(keystorePath + keystoreName);
+    }
+
+    /**
+     * File of a keystore on the file system, for a keystore path with the {@value #FILE_KEYSTORE_PREFIX} prefix.
+     */
+    public static Path keystoreFile(String keystorePath, String keystoreName) {
+        return Paths.get(keystorePath.substring(FILE_KEYSTORE_PREFIX.length()), keystoreName);
+    }
+
     @Override
     public String createSignature(TppClientRequest request) throws SecurityProviderServiceException {
         if (MapUtils.isEmpty(request.getHeaders())) {
             return "";
         }
 
-        String signingString = signingString(request);
-        log.debug("Signing string is : {}", signingString);
-        String signature = sign(signingString);
+        List<String>[] values = signHeaderValues();
+        SigningTemplate template = signingTemplate(request, values);
+        byte[] signature = template.sign(values, signer::sign);
+        return template.signatureHeader(Base64.getEncoder().encodeToString(signature));
+    }
 
-        return String.format(
-                "keyId=\"%s\",algorithm=\"rsa-sha256\",headers=\"%s\",signature=\"%s\"",
-                keyId(), signingHeaders(request), signature);
+    @Override
+    public CompletableFuture<String> createSignatureAsync(TppClientRequest request) {
+        if (MapUtils.isEmpty(request.getHeaders())) {
+            return CompletableFuture.completedFuture("");
+        }
+
+        List<String>[] values = signHeaderValues();
+        SigningTemplate template = signingTemplate(request, values);
+        try {
+            // the signer takes over the signing string, so it is copied out of the reused buffer
+            return template
+                    .sign(values, (data, offset, length) -> signer.signAsync(Arrays.copyOfRange(data, offset, offset + length)))
+                    .thenApply(signature -> template.signatureHeader(Base64.getEncoder().encodeToString(signature)));
+        } catch (SecurityProviderServiceException e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Values of the signable headers of a request, in the order of {@link #SIGN_HEADERS}.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String>[] signHeaderValues() {
+        return (List<String>[]) new List<?>[SIGN_HEADERS.length];
+    }
+
+    /**
+     * Template of the signed headers the request has, which fixes their order and the constant part of the header.
+     *
+     * @param values filled with the values of the signable headers, null for those the request does not have
+     */
+    private SigningTemplate signingTemplate(TppClientRequest request, List<String>[] values) {
+        int mask = 0;
+        for (int i = 0; i < SIGN_HEADERS.length; i++) {
+            values[i] = request.getHeaders().get(SIGN_HEADERS[i]);
+            if (values[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        return signingTemplates[mask];
     }
 
     @Override
     public String digestBody(TppClientRequest request) throws SecurityProviderServiceException {
         try {
-            String body = StringUtils.isBlank(request.getRequestBody()) ? "" : request.getRequestBody();
-
-            MessageDigest sha256 = MessageDigest.getInstance(SHA_256);
-            byte[] encoded = sha256.digest(body.getBytes(StandardCharsets.UTF_8));
+            byte[] encoded;
+            if (Objects.nonNull(request.getRequestBodySource())) {
+                encoded = digestStream(request.getRequestBodySource());
+            } else {
+                String body = StringUtils.isBlank(request.getRequestBody()) ? "" : request.getRequestBody();
+                encoded = digestEngine().digest(body.getBytes(StandardCharsets.UTF_8));
+            }
             String digest = SHA_256 + "=" + Base64.getEncoder().encodeToString(encoded);
             log.debug("Digest is: {}", digest);
-            request.getHeaders().put(DIGEST, Collections.singletonList(digest));
+            request.getHeaders().set(DIGEST, digest);
             return digest;
-        } catch (NoSuchAlgorithmException e) {
+        } catch (NoSuchAlgorithmException | NoSuchProviderException | IOException e) {
             throw new SecurityProviderServiceException(e);
         }
     }
 
+    private byte[] digestStream(TppRequestBody body) throws IOException, NoSuchAlgorithmException, NoSuchProviderException {
+        MessageDigest sha256 = digestEngine();
+        try (InputStream instream = body.openStream()) {
+            byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+            int read;
+            while ((read = instream.read(buffer)) != -1) {
+                sha256.update(buffer, 0, read);
+            }
+            return sha256.digest();
+        } finally {
+            // a body failing halfway must not leave its bytes in the engine the thread digests the next body with
+            sha256.reset();
+        }
+    }
+
     @Override
     public void filterHeaders(TppClientRequest request) {
         if (MapUtils.isEmpty(request.getHeaders())) {
             return;
         }
 
-        request.setHeaders(request.getHeaders()
-                .entrySet()
-                .stream()
-                .filter(h -> !DONT_RELAY.contains(h.getKey().toLowerCase()))
-                .collect(Collectors.toMap(e -> e.getKey().toLowerCase(), Map.Entry::getValue)));
+        // header names are kept in lower case, so they can be matched as they are
+        request.getHeaders().removeIf(DONT_RELAY::contains);
     }
 
-    private String signingHeaders(TppClientRequest tppClientRequest) {
-        return tppClientRequest.getHeaders().keySet().stream()
-                .filter(SIGN_HEADERS::contains)
-                .collect(Collectors.joining(" "));
-    }
-
-    private String keyId() throws SecurityProviderServiceException {
-        try {
-            X509Certificate cert = (X509Certificate) getSealCertificate();
-            BigInteger serialNumber = cert.getSerialNumber();
-            String issuerName = cert.getIssuerX500Principal().getName();
-            return String.format("SN=%s,CA=%s", serialNumber.toString(16), issuerName);
-        } catch (KeyStoreException e) {
-            throw new SecurityProviderServiceException(e);
+    private MessageDigest digestEngine() throws NoSuchAlgorithmException, NoSuchProviderException {
+        MessageDigest sha256 = digestEngine.get();
+        if (sha256 == null) {
+            sha256 = StringUtils.isBlank(certParams.getDigestProvider())
+                    ? MessageDigest.getInstance(SHA_256)
+                    : MessageDigest.getInstance(SHA_256, certParams.getDigestProvider());
+            digestEngine.set(sha256);
         }
+        return sha256;
     }
 
+    @Override
+    public void warmUp() throws SecurityProviderServiceException {
+        X509Certificate sealCertificate = signingIdentity.getCertificate();
+        checkValidity("seal", sealCertificate);
+        checkWacKeys();
 
+        TppClientRequest request = TppClientRequest.builder()
+                .httpMethod("POST")
+                .path("/")
+                .requestBody(new String(WARM_UP_DATA, StandardCharsets.UTF_8))
+                .addHeader(X_REQUEST_ID, UUID.randomUUID().toString())
+                .addHeader(PSU_ID, "warm-up")
+                .build();
+        filterHeaders(request);
+        digestBody(request);
+        // the signing string goes through the same template and signer as a call
+        List<String>[] values = signHeaderValues();
+        boolean verified = signingTemplate(request, values).sign(values,
+                (data, offset, length) -> verify(sealCertificate, data, offset, length, signer.sign(data, offset, length)));
+        if (!verified) {
+            throw new SecurityProviderServiceException("Seal key does not match the seal certificate");
+        }
+    }
 
-    private String sign(String string) throws SecurityProviderServiceException {
+    /**
+     * Every key of the WAC keystore must match its certificate, otherwise the gateway rejects the TLS handshake.
+     */
+    private void checkWacKeys() throws SecurityProviderServiceException {
         try {
-            PrivateKey key = getSealPrivateKey();
-
-            String signatureAlg = "SHA256withRSA";
-            Signature sign = Signature.getInstance(signatureAlg);
-            sign.initSign(key);
-            sign.update(string.getBytes(StandardCharsets.UTF_8));
-
-            return Base64.getEncoder().encodeToString(sign.sign());
-        } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException | InvalidKeyException | SignatureException e) {
+            for (String alias : Collections.list(wacKeystore.aliases())) {
+                if (!wacKeystore.isKeyEntry(alias)) {
+                    continue;
+                }
+                PrivateKey key = (PrivateKey) wacKeystore.getKey(alias, certParams.getWacCertPass().toCharArray());
+                X509Certificate certificate = (X509Certificate) wacKeystore.getCertificate(alias);
+                checkValidity("WAC", certificate);
+                Signature sign = Signature.getInstance(signatureAlgorithm(key));
+                sign.initSign(key);
+                sign.update(WARM_UP_DATA);
+                if (!verify(certificate, WARM_UP_DATA, 0, WARM_UP_DATA.length, sign.sign())) {
+                    throw new SecurityProviderServiceException(String.format("WAC key %s does not match its certificate", alias));
+                }
+            }
+        } catch (GeneralSecurityException e) {
             throw new SecurityProviderServiceException(e);
         }
     }
 
-    private Certificate getSealCertificate() throws KeyStoreException {
-        return sealKeystore.getCertificate(getSealKeyAlias());
-    }
-
-    private String getSealKeyAlias() throws KeyStoreException {
-        if (StringUtils.isNoneBlank(certParams.getSealKeyAlias())){
-            return certParams.getSealKeyAlias();
+    private static void checkValidity(String name, X509Certificate certificate) throws SecurityProviderServiceException {
+        try {
+            certificate.checkValidity();
+        } catch (CertificateException e) {
+            throw new SecurityProviderServiceException(String.format("The %s certificate %s is only valid from %s to %s",
+                    name, certificate.getSubjectX500Principal().getName(), certificate.getNotBefore(), certificate.getNotAfter()), e);
         }
-        //get first
-        return sealKeystore.aliases().nextElement();
     }
 
-    private PrivateKey getSealPrivateKey() throws KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException {
-        return (PrivateKey) sealKeystore.getKey(getSealKeyAlias(), certParams.getSealCertPass().toCharArray());
+    private static boolean verify(X509Certificate certificate, byte[] data, int offset, int length, byte[] signature) throws SecurityProviderServiceException {
+        try {
+            Signature verifier = Signature.getInstance(signatureAlgorithm(certificate.getPublicKey()));
+            verifier.initVerify(certificate.getPublicKey());
+            verifier.update(data, offset, length);
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException e) {
+            throw new SecurityProviderServiceException(e);
+        }
     }
 
-    private String signingString(TppClientRequest request) {
-        return request.getHeaders().entrySet().stream()
-                .filter(m -> SIGN_HEADERS.contains(m.getKey()))
-                .map(m -> String.format("%s: %s", m.getKey(), String.join(",", m.getValue())))
-                .collect(Collectors.joining("\n"));
+    private static String signatureAlgorithm(Key key) {
+        return SHA_256_WITH + ("EC".equals(key.getAlgorithm()) ? "ECDSA" : key.getAlgorithm());
     }
 
     @Override
     public String getSignatureCertificate() throws SecurityProviderServiceException {
-        try {
-            Certificate cert = getSealCertificate();
-            return Base64.getEncoder().encodeToString(cert.getEncoded());
-        } catch (Exception e) {
-            throw new SecurityProviderServiceException(e);
-        }
+        return signingIdentity.getCertificateHeader();
     }
 
     @Override
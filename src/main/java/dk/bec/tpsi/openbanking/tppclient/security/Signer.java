@@ -0,0 +1,43 @@
+package dk.bec.tpsi.openbanking.tppclient.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Creates the SHA256withRSA signatures of signing strings with the seal key. The key may be held in memory, see
+ * {@link KeyStoreSigner}, or behind a remote signing service such as an HSM, in which case the asynchronous and
+ * batch variants let callers avoid blocking on every round trip.
+ */
+public interface Signer {
+    /**
+     * Signs the bytes, blocking until the signature is available. The bytes are not kept after the call returns.
+     */
+    byte[] sign(byte[] data, int offset, int length) throws SecurityProviderServiceException;
+
+    /**
+     * Signs the bytes without blocking the calling thread. The signer takes over the array.
+     */
+    default CompletableFuture<byte[]> signAsync(byte[] data) {
+        CompletableFuture<byte[]> signature = new CompletableFuture<>();
+        try {
+            signature.complete(sign(data, 0, data.length));
+        } catch (SecurityProviderServiceException | RuntimeException e) {
+            signature.completeExceptionally(e);
+        }
+        return signature;
+    }
+
+    /**
+     * Signs several signing strings in one call, e.g. one round trip to a remote signing service.
+     *
+     * @return the signatures, in the order of the signing strings
+     */
+    default List<byte[]> signAll(List<byte[]> data) throws SecurityProviderServiceException {
+        List<byte[]> signatures = new ArrayList<>(data.size());
+        for (byte[] bytes : data) {
+            signatures.add(sign(bytes, 0, bytes.length));
+        }
+        return signatures;
+    }
+}
@@ -0,0 +1,48 @@
+package dk.bec.tpsi.openbanking.tppclient.security;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Daemon threads shared by all signers, so signers replaced when the key material is reloaded need not be closed.
+ */
+final class SignerThreads {
+    private SignerThreads() {
+    }
+
+    /**
+     * Runs the task after the delay. The timer thread only hands the task over to a worker.
+     */
+    static void schedule(Runnable task, long delay, TimeUnit unit) {
+        Timer.INSTANCE.schedule(() -> execute(task), delay, unit);
+    }
+
+    /**
+     * Runs the task on a worker, which may block on a remote signing service.
+     */
+    static void execute(Runnable task) {
+        Workers.INSTANCE.execute(task);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Timer {
+        // only started once a signing request waits for its batch
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(daemonThreads("tpp-signer-timer-"));
+    }
+
+    private static class Workers {
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(daemonThreads("tpp-signer-"));
+    }
+}
@@ -0,0 +1,55 @@
+package dk.bec.tpsi.openbanking.tppclient.security;
+
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+
+import java.math.BigInteger;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+
+/**
+ * Seal key material resolved once from the seal keystore, together with the values derived from it
+ * that go into every signed request.
+ */
+@Value
+public class SigningIdentity {
+    PrivateKey privateKey;
+    X509Certificate certificate;
+    //keyId parameter of the signature header
+    String keyId;
+    //value of the tpp-signature-certificate header
+    String certificateHeader;
+
+    public static SigningIdentity load(KeyStore sealKeystore, String keyAlias, String keyPass) throws SecurityProviderServiceException {
+        return load(sealKeystore, keyAlias, keyPass, true);
+    }
+
+    /**
+     * @param keyRequired false if the seal key is held elsewhere, the private key is then null unless the keystore has it
+     */
+    public static SigningIdentity load(KeyStore sealKeystore, String keyAlias, String keyPass, boolean keyRequired) throws SecurityProviderServiceException {
+        try {
+            String alias = StringUtils.isNoneBlank(keyAlias) ? keyAlias : sealKeystore.aliases().nextElement();
+            PrivateKey privateKey = (PrivateKey) sealKeystore.getKey(alias, keyPass.toCharArray());
+            X509Certificate certificate = (X509Certificate) sealKeystore.getCertificate(alias);
+            if ((keyRequired && privateKey == null) || certificate == null) {
+                throw new SecurityProviderServiceException(String.format("No seal key and certificate found for alias %s", alias));
+            }
+
+            BigInteger serialNumber = certificate.getSerialNumber();
+            String issuerName = certificate.getIssuerX500Principal().getName();
+            String keyId = String.format("SN=%s,CA=%s", serialNumber.toString(16), issuerName);
+            String certificateHeader = Base64.getEncoder().encodeToString(certificate.getEncoded());
+
+            return new SigningIdentity(privateKey, certificate, keyId, certificateHeader);
+        } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException | CertificateEncodingException e) {
+            throw new SecurityProviderServiceException(e);
+        }
+    }
+}
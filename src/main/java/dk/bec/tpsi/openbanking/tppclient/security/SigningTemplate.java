@@ -0,0 +1,147 @@
+package dk.bec.tpsi.openbanking.tppclient.security;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Signature header layout for one set of signed headers, compiled once per signing identity. The headers are
+ * always signed in the order of the signable header names, whatever order the request has them in, and the
+ * constant part of the signature header is prebuilt.
+ */
+@Slf4j
+final class SigningTemplate {
+    //buffers grown beyond this size by a large header are not kept for the next request
+    private static final int MAX_RETAINED_BUFFER_SIZE = 16 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<>();
+
+    //positions of the signed headers among the signable header names, in signing order
+    private final int[] headers;
+    //"name: " of each signed header, preceded by a line feed for all but the first
+    private final byte[][] linePrefixes;
+    //keyId, algorithm and headers parameters, up to the opening quote of the signature
+    private final String signaturePrefix;
+
+    private SigningTemplate(int[] headers, byte[][] linePrefixes, String signaturePrefix) {
+        this.headers = headers;
+        this.linePrefixes = linePrefixes;
+        this.signaturePrefix = signaturePrefix;
+    }
+
+    /**
+     * Templates for every subset of the signable header names, indexed by the bit mask of the headers present.
+     */
+    static SigningTemplate[] compile(String keyId, String[] headerNames) {
+        SigningTemplate[] templates = new SigningTemplate[1 << headerNames.length];
+        for (int mask = 0; mask < templates.length; mask++) {
+            int[] headers = new int[Integer.bitCount(mask)];
+            byte[][] linePrefixes = new byte[headers.length][];
+            StringBuilder signedNames = new StringBuilder(64);
+            int signed = 0;
+            for (int i = 0; i < headerNames.length; i++) {
+                if ((mask & 1 << i) == 0) {
+                    continue;
+                }
+                String separator = signed == 0 ? "" : "\n";
+                if (signed > 0) {
+                    signedNames.append(' ');
+                }
+                signedNames.append(headerNames[i]);
+                headers[signed] = i;
+                linePrefixes[signed] = (separator + headerNames[i] + ": ").getBytes(StandardCharsets.UTF_8);
+                signed++;
+            }
+            templates[mask] = new SigningTemplate(headers, linePrefixes,
+                    "keyId=\"" + keyId + "\",algorithm=\"rsa-sha256\",headers=\"" + signedNames + "\",signature=\"");
+        }
+        return templates;
+    }
+
+    /**
+     * Writes the signing string into a buffer of the calling thread, which is reused by its next request, and
+     * hands it to the signing function.
+     *
+     * @param values values of the signable headers, by position among the signable header names
+     */
+    <T> T sign(List<String>[] values, SigningFunction<T> signing) throws SecurityProviderServiceException {
+        byte[] buffer = BUFFER.get();
+        if (buffer == null) {
+            buffer = new byte[INITIAL_BUFFER_SIZE];
+        }
+        int size = 0;
+        for (int i = 0; i < headers.length; i++) {
+            buffer = write(buffer, size, linePrefixes[i]);
+            size += linePrefixes[i].length;
+            List<String> headerValues = values[headers[i]];
+            for (int j = 0; j < headerValues.size(); j++) {
+                if (j > 0) {
+                    buffer = ensureCapacity(buffer, size + 1);
+                    buffer[size++] = ',';
+                }
+                String value = headerValues.get(j);
+                buffer = ensureCapacity(buffer, size + value.length());
+                size = writeAscii(buffer, size, value);
+                if (size < 0) {
+                    // not plain ASCII, encode the value as a whole
+                    size = -size - 1;
+                    byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                    buffer = write(buffer, size, encoded);
+                    size += encoded.length;
+                }
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Signing string is : {}", new String(buffer, 0, size, StandardCharsets.UTF_8));
+        }
+        BUFFER.set(buffer.length > MAX_RETAINED_BUFFER_SIZE ? null : buffer);
+        return signing.sign(buffer, 0, size);
+    }
+
+    /**
+     * Value of the signature header for the Base64 encoded signature.
+     */
+    String signatureHeader(String signature) {
+        return new StringBuilder(signaturePrefix.length() + signature.length() + 1)
+                .append(signaturePrefix)
+                .append(signature)
+                .append('"')
+                .toString();
+    }
+
+    /**
+     * Copies the characters as bytes while they are ASCII.
+     *
+     * @return size after the value, or if a non-ASCII character is met, -1 minus the size before the value
+     */
+    private static int writeAscii(byte[] buffer, int size, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                return -size - 1;
+            }
+            buffer[size + i] = (byte) c;
+        }
+        return size + length;
+    }
+
+    private static byte[] write(byte[] buffer, int size, byte[] bytes) {
+        buffer = ensureCapacity(buffer, size + bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        return buffer;
+    }
+
+    private static byte[] ensureCapacity(byte[] buffer, int capacity) {
+        return capacity <= buffer.length ? buffer : Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+    }
+
+    /**
+     * Signs a signing string held in the reused buffer, which must not be kept after the call.
+     */
+    interface SigningFunction<T> {
+        T sign(byte[] data, int offset, int length) throws SecurityProviderServiceException;
+    }
+}
@@ -0,0 +1,82 @@
+package dk.bec.tpsi.openbanking.tppclient.security;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signer adding a fixed round trip time to every call of another signer, to try out locally how the client
+ * behaves with a remote signing service such as an HSM. Like such a service it serves a limited number of calls
+ * at a time, and a batch costs a single round trip.
+ */
+public class SimulatedLatencySigner implements Signer {
+    private final Signer delegate;
+    private final long latencyMicros;
+    //sessions of the simulated service, a call waits for a free one
+    private final Semaphore sessions;
+
+    public SimulatedLatencySigner(Signer delegate, long latencyMicros) {
+        this(delegate, latencyMicros, Integer.MAX_VALUE);
+    }
+
+    public SimulatedLatencySigner(Signer delegate, long latencyMicros, int maxConcurrentCalls) {
+        this.delegate = delegate;
+        this.latencyMicros = latencyMicros;
+        sessions = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    @Override
+    public byte[] sign(byte[] data, int offset, int length) throws SecurityProviderServiceException {
+        acquireSession();
+        try {
+            roundTrip();
+            return delegate.sign(data, offset, length);
+        } finally {
+            sessions.release();
+        }
+    }
+
+    @Override
+    public CompletableFuture<byte[]> signAsync(byte[] data) {
+        // a blocking client of the service waits on a signer thread instead of the caller
+        CompletableFuture<byte[]> signature = new CompletableFuture<>();
+        SignerThreads.execute(() -> {
+            try {
+                signature.complete(sign(data, 0, data.length));
+            } catch (SecurityProviderServiceException | RuntimeException e) {
+                signature.completeExceptionally(e);
+            }
+        });
+        return signature;
+    }
+
+    @Override
+    public List<byte[]> signAll(List<byte[]> data) throws SecurityProviderServiceException {
+        acquireSession();
+        try {
+            roundTrip();
+            return delegate.signAll(data);
+        } finally {
+            sessions.release();
+        }
+    }
+
+    private void acquireSession() throws SecurityProviderServiceException {
+        try {
+            sessions.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SecurityProviderServiceException("Interrupted while signing", e);
+        }
+    }
+
+    private void roundTrip() throws SecurityProviderServiceException {
+        try {
+            TimeUnit.MICROSECONDS.sleep(latencyMicros);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SecurityProviderServiceException("Interrupted while signing", e);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpRequest;
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpResponse;
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpTransport;
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppRequestBuilder;
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientListener;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientPoolStats;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.ssl.DefaultHostnameVerifier;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.pool.PoolStats;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import static dk.bec.tpsi.openbanking.tppclient.util.HeaderUtils.collectHeaders;
+
+/**
+ * Transport over Apache HttpClient. Blocking calls go through a pooled client, which a {@link TppGatewayRouter}
+ * shares between its gateways; asynchronous calls go through a client of their own whose I/O reactor is only
+ * started once the asynchronous API is used. The asynchronous client cannot pick the client certificate per call,
+ * so a new one is built once the key material has been reloaded and the previous one is closed when its calls
+ * have ended.
+ */
+class TppApacheHttpTransport implements TppHttpTransport {
+    private final TppClientConnectionParams connectionParams;
+    private final RequestConfig requestConfig;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    //true if the blocking client belongs to a TppGatewayRouter
+    private final boolean shared;
+    private volatile TppKeyMaterialClient<CloseableHttpAsyncClient> httpAsyncClient;
+    private final Lock httpAsyncClientLock = new ReentrantLock();
+
+    TppApacheHttpTransport(TppClientConnectionParams connectionParams, Supplier<TppClientListener> listener) {
+        this.connectionParams = connectionParams;
+        requestConfig = TppHttpClients.createRequestConfig(connectionParams);
+        connectionManager = TppHttpClients.createConnectionManager(new TppRoutingSocketFactory(), connectionParams, listener);
+        httpClient = TppHttpClients.createHttpClient(connectionManager, requestConfig, connectionParams, listener);
+        shared = false;
+    }
+
+    /**
+     * Transport sending blocking calls through the pool of a {@link TppGatewayRouter}, which is not closed with
+     * the transport.
+     */
+    TppApacheHttpTransport(TppClientConnectionParams connectionParams, PoolingHttpClientConnectionManager connectionManager,
+                           CloseableHttpClient httpClient) {
+        this.connectionParams = connectionParams;
+        requestConfig = TppHttpClients.createRequestConfig(connectionParams);
+        this.connectionManager = connectionManager;
+        this.httpClient = httpClient;
+        shared = true;
+    }
+
+    /**
+     * @return the asynchronous client of the key material, with the call counted as running on it
+     */
+    private TppKeyMaterialClient<CloseableHttpAsyncClient> acquireHttpAsyncClient(SSLContext sslContext) {
+        while (true) {
+            TppKeyMaterialClient<CloseableHttpAsyncClient> current = httpAsyncClient;
+            if (current == null || current.getSslContext() != sslContext) {
+                current = replaceHttpAsyncClient(sslContext);
+            }
+            if (current.acquire()) {
+                return current;
+            }
+        }
+    }
+
+    private TppKeyMaterialClient<CloseableHttpAsyncClient> replaceHttpAsyncClient(SSLContext sslContext) {
+        // a lock rather than a monitor, a virtual thread waiting for it is not pinned to its carrier
+        httpAsyncClientLock.lock();
+        try {
+            TppKeyMaterialClient<CloseableHttpAsyncClient> previous = httpAsyncClient;
+            if (previous != null && previous.getSslContext() == sslContext) {
+                return previous;
+            }
+            CloseableHttpAsyncClient client = HttpAsyncClients
+                    .custom()
+                    .setSSLContext(sslContext)
+                    .setSSLHostnameVerifier(new DefaultHostnameVerifier())
+                    .setMaxConnTotal(connectionParams.getMaxConnTotal())
+                    .setMaxConnPerRoute(connectionParams.getMaxConnPerRoute())
+                    .setDefaultRequestConfig(requestConfig)
+                    .setDefaultIOReactorConfig(IOReactorConfig
+                            .custom()
+                            .setIoThreadCount(connectionParams.getIoThreadCount() > 0
+                                    ? connectionParams.getIoThreadCount()
+                                    : Runtime.getRuntime().availableProcessors())
+                            .setConnectTimeout(connectionParams.getConnectTimeoutMillis())
+                            .build())
+                    // all connections of the client present the same certificate
+                    .disableConnectionState()
+                    // responses are decompressed once they are complete, see executeAsync
+                    .addInterceptorLast(TppHttpClients.acceptCompressed())
+                    .build();
+            client.start();
+            httpAsyncClient = new TppKeyMaterialClient<>(sslContext, client, client);
+            if (previous != null) {
+                previous.retire();
+            }
+            return httpAsyncClient;
+        } finally {
+            httpAsyncClientLock.unlock();
+        }
+    }
+
+    @Override
+    public TppHttpResponse execute(TppHttpRequest request) throws IOException {
+        CloseableHttpResponse response = httpClient.execute(TppRequestBuilder.create(request).build(), createContext(request));
+        try {
+            HttpEntity entity = response.getEntity();
+            return new TppHttpResponse(response.getStatusLine().getStatusCode(), collectHeaders(response),
+                    entity == null ? null : entity.getContent(), response);
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<TppHttpResponse> executeAsync(TppHttpRequest request) {
+        CompletableFuture<TppHttpResponse> result = new CompletableFuture<>();
+        HttpClientContext context = createContext(request);
+        TppKeyMaterialClient<CloseableHttpAsyncClient> client = acquireHttpAsyncClient(request.getSslContext());
+        Future<HttpResponse> exchange;
+        try {
+            exchange = client.getClient().execute(TppRequestBuilder.create(request).build(), context, callback(result, context, client));
+        } catch (RuntimeException e) {
+            client.release();
+            result.completeExceptionally(e);
+            return result;
+        }
+        // cancelling the returned future aborts the running exchange
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static FutureCallback<HttpResponse> callback(CompletableFuture<TppHttpResponse> result, HttpClientContext context,
+                                                         TppKeyMaterialClient<CloseableHttpAsyncClient> client) {
+        return new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                client.release();
+                try {
+                    // the buffered body stays compressed, it is decompressed while it is read
+                    TppHttpClients.decompress(response, context);
+                    HttpEntity entity = response.getEntity();
+                    result.complete(new TppHttpResponse(response.getStatusLine().getStatusCode(), collectHeaders(response),
+                            entity == null ? null : entity.getContent(), null));
+                } catch (HttpException e) {
+                    result.completeExceptionally(new ClientProtocolException(e));
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                client.release();
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                client.release();
+                result.cancel(false);
+            }
+        };
+    }
+
+    /**
+     * Opens connections of the blocking client, the asynchronous client only connects for a call. The TLS
+     * handshakes run in parallel.
+     */
+    @Override
+    public int preconnect(String gatewayUrl, SSLContext sslContext, int connections) throws IOException {
+        HttpRoute route = TppHttpClients.route(gatewayUrl);
+        // more connections than the pool allows for the route would wait for each other
+        int count = Math.min(connections, Math.min(connectionManager.getMaxPerRoute(route), connectionManager.getMaxTotal()));
+        List<HttpClientConnection> leased = new ArrayList<>(count);
+        try {
+            // the connections are held until all are open, otherwise the pool would hand out the same one again
+            for (int i = 0; i < count; i++) {
+                leased.add(connectionManager.requestConnection(route, sslContext)
+                        .get(connectionParams.getConnectionRequestTimeoutMillis(), TimeUnit.MILLISECONDS));
+            }
+            List<CompletableFuture<Void>> handshakes = new ArrayList<>(count);
+            for (HttpClientConnection connection : leased) {
+                if (!connection.isOpen()) {
+                    handshakes.add(CompletableFuture.runAsync(() -> connect(connection, route, sslContext)));
+                }
+            }
+            CompletableFuture.allOf(handshakes.toArray(new CompletableFuture<?>[0])).join();
+            return (int) leased.stream().filter(HttpClientConnection::isOpen).count();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while opening connections");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof UncheckedIOException ? ((UncheckedIOException) e.getCause()).getCause() : new IOException(e.getCause());
+        } finally {
+            for (HttpClientConnection connection : leased) {
+                // kept in the pool for the calls with the same key material, unless it could not be opened
+                connectionManager.releaseConnection(connection, sslContext, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void connect(HttpClientConnection connection, HttpRoute route, SSLContext sslContext) {
+        HttpClientContext context = HttpClientContext.create();
+        context.setUserToken(sslContext);
+        try {
+            connectionManager.connect(connection, route, Math.max(connectionParams.getConnectTimeoutMillis(), 0), context);
+            connectionManager.routeComplete(connection, route, context);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static HttpClientContext createContext(TppHttpRequest request) {
+        // selects the client certificate and only reuses connections opened with the same key material
+        HttpClientContext context = HttpClientContext.create();
+        context.setUserToken(request.getSslContext());
+        context.setAttribute(TppHttpClients.COMPRESS_RESPONSE, request.isCompressResponse());
+        return context;
+    }
+
+    @Override
+    public TppClientPoolStats getPoolStats() {
+        PoolStats totalStats = connectionManager.getTotalStats();
+        return TppClientPoolStats
+                .builder()
+                .leased(totalStats.getLeased())
+                .pending(totalStats.getPending())
+                .available(totalStats.getAvailable())
+                .max(totalStats.getMax())
+                .build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!shared) {
+                httpClient.close();
+            }
+        } finally {
+            TppKeyMaterialClient<CloseableHttpAsyncClient> client = httpAsyncClient;
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+/**
+ * Thrown without calling the gateway, when its circuit breaker is open, its bulkhead is full or the call is
+ * over quota.
+ */
+public class TppCallRejectedException extends TppClientException {
+    public TppCallRejectedException(String message) {
+        super(message);
+    }
+}
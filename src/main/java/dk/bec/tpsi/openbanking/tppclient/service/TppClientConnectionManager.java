@@ -0,0 +1,171 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientListener;
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientPhase;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Connection pool reporting connection lease and connect times to the registered {@link TppClientListener}.
+ * <p>
+ * The pool waits for a free connection inside a monitor, which pins a virtual thread to its carrier thread until
+ * a connection is released, by another virtual thread that may then find no carrier to run on. With admission on,
+ * callers instead wait for permits mirroring the pool limits before they lease, so the pool always has a
+ * connection for them right away.
+ */
+class TppClientConnectionManager extends PoolingHttpClientConnectionManager {
+    private final Supplier<TppClientListener> listener;
+    //wait for permits instead of inside the pool
+    private final boolean admission;
+    private volatile Semaphore totalPermits;
+    private final Map<HttpRoute, Semaphore> routePermits = new ConcurrentHashMap<>();
+    //permits held by leased connections, given back when the connection is released
+    private final Map<HttpClientConnection, Semaphore[]> heldPermits = new ConcurrentHashMap<>();
+
+    TppClientConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry, long timeToLive, TimeUnit timeUnit,
+                               Supplier<TppClientListener> listener, boolean admission) {
+        super(socketFactoryRegistry, null, null, null, timeToLive, timeUnit);
+        this.listener = listener;
+        this.admission = admission;
+        totalPermits = new Semaphore(getMaxTotal());
+    }
+
+    @Override
+    public void setMaxTotal(int max) {
+        super.setMaxTotal(max);
+        // connections leased meanwhile give their permits back to the replaced semaphore
+        totalPermits = new Semaphore(max);
+    }
+
+    @Override
+    public void setDefaultMaxPerRoute(int max) {
+        super.setDefaultMaxPerRoute(max);
+        routePermits.clear();
+    }
+
+    @Override
+    public void setMaxPerRoute(HttpRoute route, int max) {
+        super.setMaxPerRoute(route, max);
+        routePermits.remove(route);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        ConnectionRequest connectionRequest = admission
+                ? admitted(route, super.requestConnection(route, state))
+                : super.requestConnection(route, state);
+        if (listener.get() == TppClientListener.NOOP) {
+            return connectionRequest;
+        }
+
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    return connectionRequest.get(timeout, timeUnit);
+                } finally {
+                    listener.get().onPhase(TppClientPhase.CONNECTION_LEASE, System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return connectionRequest.cancel();
+            }
+        };
+    }
+
+    private ConnectionRequest admitted(HttpRoute route, ConnectionRequest connectionRequest) {
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                // a timeout of 0 or less waits without limit, as in the pool
+                long deadline = timeout > 0 ? System.nanoTime() + timeUnit.toNanos(timeout) : 0;
+                Semaphore routeSlots = routePermits(route);
+                Semaphore totalSlots = totalPermits;
+                acquire(routeSlots, deadline);
+                try {
+                    acquire(totalSlots, deadline);
+                } catch (InterruptedException | ConnectionPoolTimeoutException | RuntimeException e) {
+                    routeSlots.release();
+                    throw e;
+                }
+
+                HttpClientConnection connection;
+                try {
+                    connection = connectionRequest.get(timeout, timeUnit);
+                } catch (InterruptedException | ExecutionException | ConnectionPoolTimeoutException | RuntimeException e) {
+                    routeSlots.release();
+                    totalSlots.release();
+                    throw e;
+                }
+                heldPermits.put(connection, new Semaphore[]{routeSlots, totalSlots});
+                return connection;
+            }
+
+            @Override
+            public boolean cancel() {
+                return connectionRequest.cancel();
+            }
+        };
+    }
+
+    private Semaphore routePermits(HttpRoute route) {
+        Semaphore permits = routePermits.get(route);
+        return permits != null ? permits : routePermits.computeIfAbsent(route, r -> new Semaphore(getMaxPerRoute(r)));
+    }
+
+    private static void acquire(Semaphore permits, long deadline) throws InterruptedException, ConnectionPoolTimeoutException {
+        if (deadline == 0) {
+            permits.acquire();
+        } else if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            throw new ConnectionPoolTimeoutException("Timeout waiting for connection from pool");
+        }
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection managedConn, Object state, long keepalive, TimeUnit timeUnit) {
+        try {
+            super.releaseConnection(managedConn, state, keepalive, timeUnit);
+        } finally {
+            Semaphore[] permits = admission ? heldPermits.remove(managedConn) : null;
+            if (permits != null) {
+                for (Semaphore held : permits) {
+                    held.release();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void connect(HttpClientConnection managedConn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+        TppClientListener current = listener.get();
+        if (current == TppClientListener.NOOP) {
+            super.connect(managedConn, route, connectTimeout, context);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            // the TLS socket factory completes the handshake before returning the connected socket
+            super.connect(managedConn, route, connectTimeout, context);
+        } finally {
+            current.onPhase(TppClientPhase.CONNECT, System.nanoTime() - start);
+        }
+    }
+}
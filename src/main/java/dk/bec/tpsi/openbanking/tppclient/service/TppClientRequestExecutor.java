@@ -0,0 +1,39 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientListener;
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientPhase;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Request executor reporting the time between the request being sent and the response head arriving.
+ */
+class TppClientRequestExecutor extends HttpRequestExecutor {
+    private final Supplier<TppClientListener> listener;
+
+    TppClientRequestExecutor(Supplier<TppClientListener> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context) throws HttpException, IOException {
+        TppClientListener current = listener.get();
+        if (current == TppClientListener.NOOP) {
+            return super.doReceiveResponse(request, conn, context);
+        }
+
+        long start = System.nanoTime();
+        try {
+            return super.doReceiveResponse(request, conn, context);
+        } finally {
+            current.onPhase(TppClientPhase.TIME_TO_FIRST_BYTE, System.nanoTime() - start);
+        }
+    }
+}
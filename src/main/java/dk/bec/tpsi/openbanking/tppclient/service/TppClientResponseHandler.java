@@ -0,0 +1,16 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Consumes a gateway response while it is streamed. The response carries the status and headers only,
+ * the body is read from the stream, which is closed once the handler returns.
+ */
+@FunctionalInterface
+public interface TppClientResponseHandler<T> {
+
+    T handleResponse(TppClientResponse response, InputStream body) throws IOException;
+}
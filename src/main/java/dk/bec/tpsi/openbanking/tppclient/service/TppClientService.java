@@ -1,12 +1,76 @@
 package dk.bec.tpsi.openbanking.tppclient.service;
 
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientListener;
+import dk.bec.tpsi.openbanking.tppclient.model.TppBatchResult;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientPoolStats;
 import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
 import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.model.TppGatewayState;
+import dk.bec.tpsi.openbanking.tppclient.model.TppStartupReport;
 
-public interface TppClientService {
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public interface TppClientService extends Closeable {
 
     TppClientResponse callGateway(String gatewayUrl, TppClientRequest request) throws TppClientException;
 
     TppClientResponse callGateway(TppClientRequest request) throws TppClientException;
 
+    <T> T callGateway(String gatewayUrl, TppClientRequest request, TppClientResponseHandler<T> responseHandler) throws TppClientException;
+
+    <T> T callGateway(TppClientRequest request, TppClientResponseHandler<T> responseHandler) throws TppClientException;
+
+    CompletableFuture<TppClientResponse> callGatewayAsync(String gatewayUrl, TppClientRequest request);
+
+    CompletableFuture<TppClientResponse> callGatewayAsync(TppClientRequest request);
+
+    /**
+     * Calls the gateway for all requests, with at most batchConcurrency calls in flight. Results are passed
+     * to the consumer in completion order, from the thread completing the call. The returned future
+     * completes once every result has been consumed.
+     */
+    CompletableFuture<Void> callGatewayBatch(String gatewayUrl, Collection<TppClientRequest> requests, Consumer<TppBatchResult> resultConsumer);
+
+    CompletableFuture<Void> callGatewayBatch(Collection<TppClientRequest> requests, Consumer<TppBatchResult> resultConsumer);
+
+    /**
+     * Pages of a paginated resource such as the transactions of an account. Every following page is called at the
+     * _links.next of the page before, signed again and with a new x-request-id. The next page is fetched while
+     * the current one is consumed, at most two pages are held at a time. The stream ends after the last page or
+     * after an error answer; calls that fail throw {@link UncheckedTppClientException}. Close the stream to stop
+     * early.
+     */
+    Stream<TppClientResponse> callGatewayPaged(String gatewayUrl, TppClientRequest request);
+
+    Stream<TppClientResponse> callGatewayPaged(TppClientRequest request);
+
+    /**
+     * Loads the seal and WAC keystores and the trust store again. Calls already running finish with the
+     * previous key material, new calls and new connections use the reloaded one.
+     */
+    void reloadKeyMaterial() throws TppClientException;
+
+    /**
+     * Gets the service ready for its first calls: checks that the certificates are valid and the keys match them,
+     * runs digesting and signing once and opens warmUpConnections connections to the gateway url of the service.
+     * The report holds the time spent on loading the key material and on every warm-up step.
+     *
+     * @throws TppClientException if the key material cannot be used or the connections could not be opened
+     */
+    TppStartupReport warmUp() throws TppClientException;
+
+    void setListener(TppClientListener listener);
+
+    TppClientPoolStats getPoolStats();
+
+    /**
+     * Circuit breaker and bulkhead state of every gateway called so far, by gateway url.
+     */
+    Map<String, TppGatewayState> getGatewayStates();
+
 }
@@ -1,139 +1,952 @@
 package dk.bec.tpsi.openbanking.tppclient.service;
 
-import dk.bec.tpsi.openbanking.tppclient.httpclient.TppRequestBuilder;
+import dk.bec.tpsi.openbanking.tppclient.audit.TppAuditJournal;
+import dk.bec.tpsi.openbanking.tppclient.cache.TppResponseCache;
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpRequest;
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpResponse;
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpTransport;
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientListener;
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientPhase;
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppStartupPhase;
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditRecord;
+import dk.bec.tpsi.openbanking.tppclient.model.TppBatchResult;
 import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientPoolStats;
 import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
 import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.model.TppGatewayState;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHttpTransportType;
+import dk.bec.tpsi.openbanking.tppclient.model.TppStartupReport;
+import dk.bec.tpsi.openbanking.tppclient.ratelimit.TppRateLimiter;
 import dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderService;
-import dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceImpl;
+import dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceException;
+import dk.bec.tpsi.openbanking.tppclient.security.Signer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.conn.ssl.DefaultHostnameVerifier;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.ssl.SSLContextBuilder;
-
-import javax.net.ssl.SSLContext;
-import java.io.File;
+
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
-
-import static dk.bec.tpsi.openbanking.tppclient.util.HeaderUtils.collectHeaders;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Slf4j
 public class TppClientServiceImpl implements TppClientService {
     private static final String SIGNATURE = "signature";
     private static final String TPP_SIGNATURE_CERTIFICATE = "tpp-signature-certificate";
+    private static final int CONSUME_BUFFER_SIZE = 8192;
 
-    private SecurityProviderService securityProviderService;
-    private SSLContext sslContext;
+    private TppKeyMaterialHolder keyMaterial;
     private String gatewayUrl;
+    private TppHttpTransport transport;
+    //true if the key material and the audit journal belong to a TppGatewayRouter
+    private boolean shared;
+    private TppClientConnectionParams connectionParams;
+    //ask the gateway for compressed responses
+    private boolean compressResponses;
+    //runs asynchronous calls on virtual threads instead of the asynchronous client, null if not enabled
+    private ExecutorService virtualThreads;
+    private volatile TppClientListener listener = TppClientListener.NOOP;
+    private TppRetryPolicy retryPolicy;
+    private TppRateLimiter rateLimiter;
+    //null when responses are not cached
+    private TppResponseCache responseCache;
+    //null when calls are not audited
+    private TppAuditJournal auditJournal;
+    //circuit breaker and bulkhead by gateway url
+    private final Map<String, TppGatewayGuard> guards = new ConcurrentHashMap<>();
 
     public TppClientServiceImpl(String gatewayUrl, TppClientCertParams certParams) throws TppClientException {
-        this.gatewayUrl = gatewayUrl;
-        parseParams(certParams);
+        this(gatewayUrl, certParams, TppClientConnectionParams.builder().build());
     }
 
     public TppClientServiceImpl(TppClientCertParams certParams) throws TppClientException {
-        parseParams(certParams);
+        this(null, certParams, TppClientConnectionParams.builder().build());
     }
 
-    private void parseParams(TppClientCertParams certParams) throws TppClientException {
-        try {
-            securityProviderService = new SecurityProviderServiceImpl(certParams);
-            SSLContextBuilder sslBuilder = new SSLContextBuilder();
+    public TppClientServiceImpl(TppClientCertParams certParams, TppClientConnectionParams connectionParams) throws TppClientException {
+        this(null, certParams, connectionParams);
+    }
 
-            String trustStorePath = securityProviderService.getTrustStorePath();
-            if (StringUtils.isNotEmpty(trustStorePath)) {
-                log.debug("Setting custom SSL builder trust store from path: {}", trustStorePath);
-                sslBuilder.loadTrustMaterial(new File(trustStorePath));
-            }
+    public TppClientServiceImpl(String gatewayUrl, TppClientCertParams certParams, TppClientConnectionParams connectionParams) throws TppClientException {
+        this(gatewayUrl, certParams, connectionParams, null);
+    }
 
-            if (Objects.nonNull(securityProviderService.getWacKey())) {
-                sslBuilder.loadKeyMaterial(securityProviderService.getWacKey(), certParams.getWacCertPass().toCharArray());
+    /**
+     * Service sending its calls with the given transport instead of the one chosen by the connection params. The
+     * transport is closed with the service.
+     */
+    public TppClientServiceImpl(String gatewayUrl, TppClientCertParams certParams, TppClientConnectionParams connectionParams,
+                                TppHttpTransport transport) throws TppClientException {
+        this(gatewayUrl, certParams, null, connectionParams, transport);
+    }
+
+    /**
+     * Service signing with a seal key held elsewhere, e.g. by an HSM. The seal keystore then only needs the
+     * certificate.
+     */
+    public TppClientServiceImpl(String gatewayUrl, TppClientCertParams certParams, Signer signer,
+                                TppClientConnectionParams connectionParams) throws TppClientException {
+        this(gatewayUrl, certParams, signer, connectionParams, null);
+    }
+
+    /**
+     * @param signer signs with a seal key held elsewhere, null to sign with the key of the seal keystore
+     * @param transport sends the calls instead of the transport chosen by the connection params, closed with the
+     *                  service
+     */
+    public TppClientServiceImpl(String gatewayUrl, TppClientCertParams certParams, Signer signer,
+                                TppClientConnectionParams connectionParams, TppHttpTransport transport) throws TppClientException {
+        this.gatewayUrl = gatewayUrl;
+        this.connectionParams = connectionParams;
+        compressResponses = connectionParams.isCompressResponses();
+        keyMaterial = new TppKeyMaterialHolder(certParams, signer);
+        retryPolicy = new TppRetryPolicy(connectionParams);
+        rateLimiter = new TppRateLimiter(connectionParams);
+        responseCache = createResponseCache(connectionParams);
+        virtualThreads = connectionParams.isVirtualThreads() ? TppVirtualThreads.newExecutor() : null;
+        if (Objects.nonNull(transport)) {
+            this.transport = transport;
+        } else if (connectionParams.getTransport() == TppHttpTransportType.JDK) {
+            this.transport = TppJavaNetHttp.newTransport(connectionParams);
+        } else {
+            this.transport = new TppApacheHttpTransport(connectionParams, () -> listener);
+        }
+        auditJournal = openAuditJournal(connectionParams);
+        if (connectionParams.isWarmUp()) {
+            try {
+                warmUp();
+            } catch (TppClientException e) {
+                try {
+                    close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+                throw e;
             }
+        }
+    }
 
-            sslContext = sslBuilder.build();
+    /**
+     * Service using key material and an audit journal shared with other services, see {@link TppGatewayRouter}.
+     * They are not closed with the service, the transport is.
+     */
+    TppClientServiceImpl(String gatewayUrl, TppKeyMaterialHolder keyMaterial, TppClientConnectionParams connectionParams,
+                         boolean compressResponses, TppHttpTransport transport, TppAuditJournal auditJournal) throws TppClientException {
+        this.gatewayUrl = gatewayUrl;
+        this.connectionParams = connectionParams;
+        this.compressResponses = compressResponses;
+        this.keyMaterial = keyMaterial;
+        this.shared = true;
+        retryPolicy = new TppRetryPolicy(connectionParams);
+        rateLimiter = new TppRateLimiter(connectionParams);
+        responseCache = createResponseCache(connectionParams);
+        virtualThreads = connectionParams.isVirtualThreads() ? TppVirtualThreads.newExecutor() : null;
+        this.transport = transport;
+        this.auditJournal = auditJournal;
+    }
 
-        } catch (Exception e) {
-            log.error("Error creating tpp client service", e);
+    /**
+     * @return the audit journal configured by the connection params, null if none is
+     */
+    static TppAuditJournal openAuditJournal(TppClientConnectionParams connectionParams) throws TppClientException {
+        if (Objects.isNull(connectionParams.getAuditJournalPath())) {
+            return null;
+        }
+        try {
+            return new TppAuditJournal(Paths.get(connectionParams.getAuditJournalPath()), connectionParams.getAuditBufferSize(),
+                    connectionParams.getAuditSegmentBytes(), connectionParams.getAuditOverflow());
+        } catch (IOException e) {
+            log.error("Error opening audit journal", e);
             throw new TppClientException(e);
         }
     }
 
-    private CloseableHttpClient getHttpClient() {
-        return HttpClientBuilder
-                .create()
-                .setSSLHostnameVerifier(new DefaultHostnameVerifier())
-                .setSSLContext(sslContext)
-                .build();
+    private static TppResponseCache createResponseCache(TppClientConnectionParams connectionParams) {
+        return connectionParams.getResponseCacheMaxEntries() > 0 ? new TppResponseCache(connectionParams) : null;
     }
 
     @Override
     public TppClientResponse callGateway(String gatewayUrl, TppClientRequest request) throws TppClientException {
-        HttpUriRequest httpRequest = buildRequest(gatewayUrl, request);
+        TppResponseCache.Key key = responseCache == null ? null : responseCache.key(gatewayUrl, request);
+        if (key == null) {
+            return callGateway(gatewayUrl, request, TppClientServiceImpl::readBody);
+        }
 
-        return callTargetGateway(httpRequest);
+        CompletableFuture<TppClientResponse> response = responseCache.get(key, request, upstream -> {
+            // the call runs on this thread, callers of identical requests wait for its answer
+            CompletableFuture<TppClientResponse> answer = new CompletableFuture<>();
+            try {
+                answer.complete(callGateway(gatewayUrl, upstream, TppClientServiceImpl::readBody));
+            } catch (TppClientException e) {
+                answer.completeExceptionally(e);
+            }
+            return answer;
+        }, listener);
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TppClientException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TppClientException) {
+                throw (TppClientException) e.getCause();
+            }
+            throw new TppClientException(e.getCause());
+        }
     }
 
     @Override
     public TppClientResponse callGateway(TppClientRequest request) throws TppClientException {
-        HttpUriRequest httpRequest = buildRequest(gatewayUrl, request);
+        return callGateway(gatewayUrl, request);
+    }
+
+    @Override
+    public <T> T callGateway(String gatewayUrl, TppClientRequest request, TppClientResponseHandler<T> responseHandler) throws TppClientException {
+        TppClientListener listener = this.listener;
+        long start = startTimer(listener);
+        listener.onCallStarted();
+        try {
+            return callTargetGateway(gatewayUrl, request, responseHandler, listener, start);
+        } catch (TppClientException e) {
+            listener.onCallFailed(failureCause(e), elapsed(listener, start));
+            throw e;
+        } finally {
+            invalidateCachedResponses(gatewayUrl, request);
+        }
+    }
+
+    @Override
+    public <T> T callGateway(TppClientRequest request, TppClientResponseHandler<T> responseHandler) throws TppClientException {
+        return callGateway(gatewayUrl, request, responseHandler);
+    }
+
+    @Override
+    public CompletableFuture<TppClientResponse> callGatewayAsync(String gatewayUrl, TppClientRequest request) {
+        return callCachedGatewayAsync(gatewayUrl, request);
+    }
+
+    @Override
+    public CompletableFuture<TppClientResponse> callGatewayAsync(TppClientRequest request) {
+        return callCachedGatewayAsync(gatewayUrl, request);
+    }
+
+    @Override
+    public CompletableFuture<Void> callGatewayBatch(String gatewayUrl, Collection<TppClientRequest> requests, Consumer<TppBatchResult> resultConsumer) {
+        return callTargetGatewayBatch(gatewayUrl, requests, resultConsumer);
+    }
+
+    @Override
+    public CompletableFuture<Void> callGatewayBatch(Collection<TppClientRequest> requests, Consumer<TppBatchResult> resultConsumer) {
+        return callTargetGatewayBatch(gatewayUrl, requests, resultConsumer);
+    }
+
+    @Override
+    public Stream<TppClientResponse> callGatewayPaged(String gatewayUrl, TppClientRequest request) {
+        TppPageIterator pages = new TppPageIterator(gatewayUrl, request, page -> callCachedGatewayAsync(gatewayUrl, page));
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(pages::close);
+    }
+
+    @Override
+    public Stream<TppClientResponse> callGatewayPaged(TppClientRequest request) {
+        return callGatewayPaged(gatewayUrl, request);
+    }
 
-        return callTargetGateway(httpRequest);
+    private CompletableFuture<Void> callTargetGatewayBatch(String gatewayUrl, Collection<TppClientRequest> requests, Consumer<TppBatchResult> resultConsumer) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (requests.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+
+        // every lane takes the next request as soon as its previous call completes, so signing of the
+        // next requests overlaps with the exchanges of the others
+        Queue<TppClientRequest> pending = new ConcurrentLinkedQueue<>(requests);
+        AtomicInteger remaining = new AtomicInteger(requests.size());
+        int lanes = Math.min(Math.max(connectionParams.getBatchConcurrency(), 1), requests.size());
+        for (int i = 0; i < lanes; i++) {
+            callNextInBatch(gatewayUrl, pending, remaining, resultConsumer, done);
+        }
+        return done;
+    }
+
+    private void callNextInBatch(String gatewayUrl, Queue<TppClientRequest> pending, AtomicInteger remaining,
+                                 Consumer<TppBatchResult> resultConsumer, CompletableFuture<Void> done) {
+        TppClientRequest request = pending.poll();
+        if (request == null) {
+            return;
+        }
+
+        CompletableFuture
+                // requests are signed in parallel on the common pool, the exchange runs on the I/O threads
+                .supplyAsync(() -> callCachedGatewayAsync(gatewayUrl, request))
+                .thenCompose(Function.identity())
+                .whenComplete((response, e) -> {
+                    try {
+                        resultConsumer.accept(new TppBatchResult(request, response, unwrap(e)));
+                    } catch (RuntimeException consumerException) {
+                        log.error("Error consuming batch result", consumerException);
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            done.complete(null);
+                        } else {
+                            callNextInBatch(gatewayUrl, pending, remaining, resultConsumer, done);
+                        }
+                    }
+                });
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+    }
+
+    private CompletableFuture<TppClientResponse> callCachedGatewayAsync(String gatewayUrl, TppClientRequest request) {
+        TppResponseCache.Key key = responseCache == null ? null : responseCache.key(gatewayUrl, request);
+        if (key == null) {
+            return callTargetGatewayAsync(gatewayUrl, request);
+        }
+        return responseCache.get(key, request, upstream -> callTargetGatewayAsync(gatewayUrl, upstream), listener);
+    }
+
+    private void invalidateCachedResponses(String gatewayUrl, TppClientRequest request) {
+        // a changed resource also changes what is below it, e.g. deleting a consent changes its status
+        if (responseCache != null && !TppRetryPolicy.isSafe(request)) {
+            responseCache.invalidate(gatewayUrl, request.getPath());
+        }
+    }
+
+    private CompletableFuture<TppClientResponse> callTargetGatewayAsync(String gatewayUrl, TppClientRequest request) {
+        if (virtualThreads != null) {
+            return callOnVirtualThread(gatewayUrl, request);
+        }
+
+        CompletableFuture<TppClientResponse> result = new CompletableFuture<>();
+        TppClientListener listener = this.listener;
+        long start = startTimer(listener);
+        listener.onCallStarted();
+        AsyncCall call = new AsyncCall(gatewayUrl, request, listener, start, result);
+        call.attempt(1);
+        // cancelling the returned future aborts the running exchange, or ends the call if none is running
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+            invalidateCachedResponses(gatewayUrl, request);
+        });
+        return result;
+    }
+
+    private CompletableFuture<TppClientResponse> callOnVirtualThread(String gatewayUrl, TppClientRequest request) {
+        CompletableFuture<TppClientResponse> result = new CompletableFuture<>();
+        Future<?> call;
+        try {
+            // the blocking call with its retries, quota waits and bulkhead waits runs on a thread of its own
+            call = virtualThreads.submit(() -> {
+                try {
+                    result.complete(callGateway(gatewayUrl, request, TppClientServiceImpl::readBody));
+                } catch (TppClientException e) {
+                    result.completeExceptionally(e);
+                } catch (RuntimeException e) {
+                    log.error("Error calling gateway", e);
+                    result.completeExceptionally(new TppClientException(e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new TppClientException(e));
+            return result;
+        }
+        // cancelling interrupts the thread, which closes the connection it is blocked on
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private <T> T callTargetGateway(String gatewayUrl, TppClientRequest request, TppClientResponseHandler<T> responseHandler,
+                                    TppClientListener listener, long start) throws TppClientException {
+        TppGatewayGuard guard = guard(gatewayUrl);
+        boolean retryable = retryPolicy.isRetryable(request);
+        TppKeyMaterial keyMaterial = null;
+        TppHttpRequest httpRequest = null;
+        for (int attempt = 1; ; attempt++) {
+            // every attempt uses the key material current at its start; the request is only signed again
+            // if the key material has been reloaded since the previous attempt
+            TppKeyMaterial current = this.keyMaterial.get();
+            if (current != keyMaterial) {
+                keyMaterial = current;
+                httpRequest = buildRequest(gatewayUrl, request, keyMaterial, listener);
+            }
+
+            awaitRateLimit(gatewayUrl, request);
+            long generation = guard.acquire(connectionParams.getBulkheadWaitMillis());
+            TppHttpResponse response;
+            try {
+                response = transport.execute(httpRequest);
+            } catch (IOException e) {
+                audit(httpRequest, null, e, listener);
+                guard.record(generation, true);
+                guard.release();
+                if (retryable && retryPolicy.hasAttemptsLeft(attempt)) {
+                    log.warn("Attempt {} calling gateway failed, retrying", attempt, e);
+                    backoff(attempt, retryPolicy.backoffMillis(attempt), listener);
+                    continue;
+                }
+                log.error("Error calling gateway", e);
+                throw new TppClientException(e);
+            } catch (RuntimeException e) {
+                audit(httpRequest, null, e, listener);
+                guard.record(generation, true);
+                guard.release();
+                log.error("Error calling gateway", e);
+                throw new TppClientException(e);
+            }
+
+            audit(httpRequest, response, null, listener);
+            int status = response.getStatus();
+            TppHeaders headers = response.getHeaders();
+            long retryDelay;
+            try {
+                guard.record(generation, isServerError(status));
+                rateLimiter.onResponse(gatewayUrl, request, status, headers);
+                retryDelay = retryable ? retryPolicy.retryDelayMillis(attempt, status, headers) : -1;
+            } catch (RuntimeException e) {
+                discard(response);
+                guard.release();
+                log.error("Error handling gateway response", e);
+                throw new TppClientException(e);
+            }
+            if (retryDelay >= 0) {
+                // the slot is given back before waiting, the next attempt competes for it again
+                discard(response);
+                guard.release();
+                log.warn("Attempt {} calling gateway returned {}, retrying", attempt, status);
+                backoff(attempt, retryDelay, listener);
+                continue;
+            }
+            try {
+                return handleResponse(response, headers, responseHandler, listener, start);
+            } finally {
+                guard.release();
+            }
+        }
     }
 
-    private TppClientResponse callTargetGateway(HttpUriRequest httpRequest) throws TppClientException {
-        TppClientResponse tppClientResponse;
-        try (CloseableHttpClient httpClient = getHttpClient(); CloseableHttpResponse response = httpClient.execute(httpRequest)) {
-            tppClientResponse = TppClientResponse
-                    .builder()
-                    .body(bodyToString(response))
-                    .status(response.getStatusLine().getStatusCode())
-                    .headers(collectHeaders(response))
-                    .build();
+    private <T> T handleResponse(TppHttpResponse response, TppHeaders headers, TppClientResponseHandler<T> responseHandler,
+                                 TppClientListener listener, long start) throws TppClientException {
+        T result;
+        try {
+            try {
+                TppClientResponse tppClientResponse = TppClientResponse
+                        .builder()
+                        .status(response.getStatus())
+                        .headers(headers)
+                        .build();
+                long bodyStart = startTimer(listener);
+                result = responseHandler.handleResponse(tppClientResponse, response.getBody());
+                // read what the handler left over, so the connection goes back to the pool
+                consume(response.getBody());
+                recordPhase(listener, TppClientPhase.BODY_READ, bodyStart);
+                listener.onCallCompleted(tppClientResponse.getStatus(), elapsed(listener, start));
+            } finally {
+                response.close();
+            }
         } catch (Exception e) {
             log.error("Error calling gateway", e);
             throw new TppClientException(e);
         }
-        return tppClientResponse;
+        return result;
+    }
+
+    private void backoff(int attempt, long delayMillis, TppClientListener listener) throws TppClientException {
+        listener.onRetry(attempt);
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TppClientException(e);
+        }
+    }
+
+    private void awaitRateLimit(String gatewayUrl, TppClientRequest request) throws TppClientException {
+        try {
+            if (!rateLimiter.acquire(gatewayUrl, request, connectionParams.getRateLimitWaitMillis(), TimeUnit.MILLISECONDS)) {
+                throw new TppCallRejectedException(String.format("Call quota of gateway %s exhausted", gatewayUrl));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TppClientException(e);
+        }
+    }
+
+    private static void discard(TppHttpResponse response) {
+        try {
+            try {
+                consume(response.getBody());
+            } finally {
+                response.close();
+            }
+        } catch (IOException e) {
+            log.debug("Error discarding response of failed attempt", e);
+        }
+    }
+
+    private static void consume(InputStream body) throws IOException {
+        byte[] buffer = new byte[CONSUME_BUFFER_SIZE];
+        while (body.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    /**
+     * Hands the sent request and the response or failure to the audit journal, if there is one.
+     */
+    private void audit(TppHttpRequest httpRequest, TppHttpResponse response, Throwable failure, TppClientListener listener) {
+        if (Objects.isNull(auditJournal)) {
+            return;
+        }
+        TppAuditRecord record = TppAuditRecord
+                .builder()
+                .timestampMillis(System.currentTimeMillis())
+                .method(httpRequest.getMethod())
+                .uri(httpRequest.getUri())
+                // the journal writer encodes the headers later, the caller may change them meanwhile
+                .requestHeaders(copy(httpRequest.getHeaders()))
+                .status(Objects.isNull(response) ? 0 : response.getStatus())
+                .responseHeaders(Objects.isNull(response) ? null : copy(response.getHeaders()))
+                .error(Objects.isNull(failure) ? null : failure.toString())
+                .build();
+        if (!auditJournal.append(record)) {
+            listener.onAuditRecordDropped();
+        }
     }
 
-    private HttpUriRequest buildRequest(String gatewayUrl, TppClientRequest request) throws TppClientException {
-        HttpUriRequest httpRequest;
+    private static TppHeaders copy(TppHeaders headers) {
+        return Objects.isNull(headers) ? null : new TppHeaders(headers);
+    }
+
+    private static boolean isServerError(int status) {
+        return status >= 500;
+    }
+
+    private static Throwable failureCause(TppClientException e) {
+        // rejections have no cause, the rejection itself is the reason the call failed
+        return e instanceof TppCallRejectedException ? e : e.getCause();
+    }
+
+    private TppGatewayGuard guard(String gatewayUrl) {
+        TppGatewayGuard guard = guards.get(gatewayUrl);
+        return guard != null ? guard : guards.computeIfAbsent(gatewayUrl, url -> new TppGatewayGuard(url, connectionParams));
+    }
+
+    private TppHttpRequest buildRequest(String gatewayUrl, TppClientRequest request, TppKeyMaterial keyMaterial,
+                                        TppClientListener listener) throws TppClientException {
         try {
-            String uriToCall = buildUri(gatewayUrl, request);
-            log.debug("Calling {}", uriToCall);
-            securityProviderService.filterHeaders(request);
-            securityProviderService.digestBody(request);
-
-            httpRequest = TppRequestBuilder
-                    .create(request)
-                    .replaceHeader(SIGNATURE, securityProviderService.createSignature(request))
-                    .replaceHeader(TPP_SIGNATURE_CERTIFICATE, securityProviderService.getSignatureCertificate())
-                    .setUri(uriToCall)
-                    .build();
+            long start = prepareRequest(request, keyMaterial, listener);
+            String signature = keyMaterial.getSecurityProviderService().createSignature(request);
+            return signedRequest(gatewayUrl, request, keyMaterial, signature, listener, start);
         } catch (Exception e) {
             log.error("Error calling gateway", e);
             throw new TppClientException(e);
         }
-        return httpRequest;
     }
 
-    private String bodyToString(CloseableHttpResponse response) throws IOException {
-        if (Objects.isNull(response.getEntity()) || Objects.isNull(response.getEntity().getContent())) {
-            return "";
+    /**
+     * Builds the request without blocking on the signer, for asynchronous calls.
+     */
+    private CompletableFuture<TppHttpRequest> buildRequestAsync(String gatewayUrl, TppClientRequest request, TppKeyMaterial keyMaterial,
+                                                                TppClientListener listener) {
+        CompletableFuture<TppHttpRequest> httpRequest = new CompletableFuture<>();
+        long start;
+        try {
+            start = prepareRequest(request, keyMaterial, listener);
+        } catch (Exception e) {
+            log.error("Error calling gateway", e);
+            httpRequest.completeExceptionally(new TppClientException(e));
+            return httpRequest;
         }
+        keyMaterial.getSecurityProviderService().createSignatureAsync(request).whenComplete((signature, failure) -> {
+            try {
+                if (failure != null) {
+                    throw unwrap(failure);
+                }
+                httpRequest.complete(signedRequest(gatewayUrl, request, keyMaterial, signature, listener, start));
+            } catch (Throwable e) {
+                log.error("Error calling gateway", e);
+                httpRequest.completeExceptionally(new TppClientException(e));
+            }
+        });
+        return httpRequest;
+    }
+
+    /**
+     * Filters the headers and digests the body of the request ahead of signing it.
+     *
+     * @return start of the signing phase
+     */
+    private static long prepareRequest(TppClientRequest request, TppKeyMaterial keyMaterial, TppClientListener listener) throws SecurityProviderServiceException {
+        SecurityProviderService securityProviderService = keyMaterial.getSecurityProviderService();
+        long start = startTimer(listener);
+        securityProviderService.filterHeaders(request);
+        start = recordPhase(listener, TppClientPhase.FILTER_HEADERS, start);
+        securityProviderService.digestBody(request);
+        return recordPhase(listener, TppClientPhase.DIGEST, start);
+    }
+
+    private TppHttpRequest signedRequest(String gatewayUrl, TppClientRequest request, TppKeyMaterial keyMaterial, String signature,
+                                         TppClientListener listener, long start) throws SecurityProviderServiceException {
+        String uriToCall = buildUri(gatewayUrl, request);
+        log.debug("Calling {}", uriToCall);
+        TppHeaders headers = Objects.isNull(request.getHeaders()) ? new TppHeaders() : new TppHeaders(request.getHeaders());
+        headers.set(SIGNATURE, signature);
+        headers.set(TPP_SIGNATURE_CERTIFICATE, keyMaterial.getSecurityProviderService().getSignatureCertificate());
+        TppHttpRequest httpRequest = TppHttpRequest
+                .builder()
+                .method(request.getHttpMethod())
+                .uri(uriToCall)
+                .requestParams(request.getRequestParams())
+                .headers(headers)
+                .body(request.getRequestBody())
+                .bodySource(request.getRequestBodySource())
+                // connections authenticate with the WAC of the key material the request is signed with
+                .sslContext(keyMaterial.getSslContext())
+                .compressResponse(compressResponses)
+                .build();
+        recordPhase(listener, TppClientPhase.SIGN, start);
+        return httpRequest;
+    }
+
+    private TppClientResponse toTppClientResponse(TppHttpResponse response) throws IOException {
+        return TppClientResponse
+                .builder()
+                .body(IOUtils.toString(response.getBody(), StandardCharsets.UTF_8.name()))
+                .status(response.getStatus())
+                .headers(response.getHeaders())
+                .build();
+    }
 
-        return IOUtils.toString(response.getEntity().getContent(), StandardCharsets.UTF_8.name());
+    private static TppClientResponse readBody(TppClientResponse response, InputStream body) throws IOException {
+        response.setBody(IOUtils.toString(body, StandardCharsets.UTF_8.name()));
+        return response;
     }
 
     private String buildUri(String gatewayUrl, TppClientRequest request) {
         return gatewayUrl + request.getPath();
     }
 
+    private static long startTimer(TppClientListener listener) {
+        // no clock reads while nobody is listening
+        return listener == TppClientListener.NOOP ? 0L : System.nanoTime();
+    }
+
+    private static long recordPhase(TppClientListener listener, TppClientPhase phase, long start) {
+        if (listener == TppClientListener.NOOP) {
+            return 0L;
+        }
+        long now = System.nanoTime();
+        listener.onPhase(phase, now - start);
+        return now;
+    }
+
+    private static long elapsed(TppClientListener listener, long start) {
+        return listener == TppClientListener.NOOP ? 0L : System.nanoTime() - start;
+    }
+
+    @Override
+    public void reloadKeyMaterial() throws TppClientException {
+        keyMaterial.reload();
+    }
+
+    @Override
+    public TppStartupReport warmUp() throws TppClientException {
+        TppKeyMaterial current = keyMaterial.get();
+        Map<TppStartupPhase, Long> phaseNanos = new EnumMap<>(TppStartupPhase.class);
+        phaseNanos.putAll(current.getLoadNanos());
+        long start = System.nanoTime();
+        try {
+            current.getSecurityProviderService().warmUp();
+        } catch (SecurityProviderServiceException e) {
+            log.error("Key material cannot be used", e);
+            throw new TppClientException(e);
+        }
+        long signed = System.nanoTime();
+        phaseNanos.put(TppStartupPhase.SIGNING, signed - start);
+
+        int connections = 0;
+        if (Objects.nonNull(gatewayUrl) && connectionParams.getWarmUpConnections() > 0) {
+            try {
+                connections = transport.preconnect(gatewayUrl, current.getSslContext(), connectionParams.getWarmUpConnections());
+            } catch (IOException e) {
+                log.error("Error opening connections to {}", gatewayUrl, e);
+                throw new TppClientException(e);
+            }
+            phaseNanos.put(TppStartupPhase.CONNECTIONS, System.nanoTime() - signed);
+        }
+        TppStartupReport report = new TppStartupReport(Collections.unmodifiableMap(phaseNanos), connections);
+        log.info("Warmed up for {} in {}ms: {}", gatewayUrl, TimeUnit.NANOSECONDS.toMillis(report.getTotalNanos()), report);
+        return report;
+    }
+
+    @Override
+    public void setListener(TppClientListener listener) {
+        this.listener = Objects.isNull(listener) ? TppClientListener.NOOP : listener;
+    }
+
+    @Override
+    public TppClientPoolStats getPoolStats() {
+        return transport.getPoolStats();
+    }
+
+    @Override
+    public Map<String, TppGatewayState> getGatewayStates() {
+        Map<String, TppGatewayState> states = new HashMap<>();
+        guards.forEach((url, guard) -> states.put(url, guard.getState()));
+        return states;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (virtualThreads != null) {
+            virtualThreads.shutdown();
+        }
+        try {
+            transport.close();
+        } finally {
+            if (!shared) {
+                try {
+                    keyMaterial.close();
+                } finally {
+                    if (Objects.nonNull(auditJournal)) {
+                        auditJournal.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Attempts of one asynchronous call. Retries are scheduled after the backoff instead of blocking a thread.
+     */
+    private class AsyncCall {
+        private final String gatewayUrl;
+        private final TppClientRequest request;
+        private final TppClientListener listener;
+        private final long start;
+        private final CompletableFuture<TppClientResponse> result;
+        private final TppGatewayGuard guard;
+        private final boolean retryable;
+        private TppKeyMaterial keyMaterial;
+        private TppHttpRequest httpRequest;
+        private volatile Future<TppHttpResponse> exchange;
+        //set once the call has been reported completed or failed to the listener
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        private AsyncCall(String gatewayUrl, TppClientRequest request, TppClientListener listener, long start,
+                          CompletableFuture<TppClientResponse> result) {
+            this.gatewayUrl = gatewayUrl;
+            this.request = request;
+            this.listener = listener;
+            this.start = start;
+            this.result = result;
+            guard = guard(gatewayUrl);
+            retryable = retryPolicy.isRetryable(request);
+        }
+
+        private void attempt(int attempt) {
+            if (result.isDone()) {
+                abandoned();
+                return;
+            }
+            TppKeyMaterial current = TppClientServiceImpl.this.keyMaterial.get();
+            if (current == keyMaterial) {
+                reserve(attempt);
+                return;
+            }
+            // a remote signer completes the signature on a thread of its own, the attempt goes on from there
+            keyMaterial = current;
+            buildRequestAsync(gatewayUrl, request, current, listener).whenComplete((signed, e) -> {
+                if (e != null) {
+                    TppClientException failure = (TppClientException) unwrap(e);
+                    fail(failure, failureCause(failure));
+                } else {
+                    httpRequest = signed;
+                    reserve(attempt);
+                }
+            });
+        }
+
+        private void reserve(int attempt) {
+            // over quota calls are sent later instead of blocking a thread until then
+            long wait = rateLimiter.reserve(gatewayUrl, request, TimeUnit.MILLISECONDS.toNanos(connectionParams.getRateLimitWaitMillis()));
+            if (wait < 0) {
+                TppClientException e = new TppCallRejectedException(String.format("Call quota of gateway %s exhausted", gatewayUrl));
+                fail(e, e);
+            } else if (wait > 0) {
+                TppRetryPolicy.schedule(() -> send(attempt), wait, TimeUnit.NANOSECONDS);
+            } else {
+                send(attempt);
+            }
+        }
+
+        private void send(int attempt) {
+            if (result.isDone()) {
+                abandoned();
+                return;
+            }
+            long generation;
+            try {
+                // the I/O threads must not block, so asynchronous calls never wait for a bulkhead slot
+                generation = guard.acquire(0);
+            } catch (TppClientException e) {
+                fail(e, failureCause(e));
+                return;
+            }
+
+            try {
+                exchange = execute(attempt, generation);
+            } catch (RuntimeException e) {
+                guard.release();
+                log.error("Error calling gateway", e);
+                fail(new TppClientException(e), e);
+                return;
+            }
+            if (result.isCancelled()) {
+                cancel();
+            }
+        }
+
+        private Future<TppHttpResponse> execute(int attempt, long generation) {
+            CompletableFuture<TppHttpResponse> exchange = transport.executeAsync(httpRequest);
+            exchange.whenComplete((response, e) -> {
+                if (exchange.isCancelled()) {
+                    cancelled();
+                } else if (e != null) {
+                    failed(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e, attempt, generation);
+                } else {
+                    completed(response, attempt, generation);
+                }
+            });
+            return exchange;
+        }
+
+        private void completed(TppHttpResponse response, int attempt, long generation) {
+            audit(httpRequest, response, null, listener);
+            int status = response.getStatus();
+            guard.record(generation, isServerError(status));
+            guard.release();
+            TppHeaders headers = response.getHeaders();
+            long retryDelay;
+            try {
+                rateLimiter.onResponse(gatewayUrl, request, status, headers);
+                retryDelay = retryable ? retryPolicy.retryDelayMillis(attempt, status, headers) : -1;
+            } catch (RuntimeException e) {
+                discard(response);
+                log.error("Error handling gateway response", e);
+                fail(new TppClientException(e), e);
+                return;
+            }
+            if (retryDelay >= 0) {
+                // a transport streaming the body holds the connection until the response is closed
+                discard(response);
+                log.warn("Attempt {} calling gateway returned {}, retrying", attempt, status);
+                retry(attempt, retryDelay);
+                return;
+            }
+            try {
+                TppClientResponse tppClientResponse;
+                try {
+                    tppClientResponse = toTppClientResponse(response);
+                } finally {
+                    response.close();
+                }
+                if (ended.compareAndSet(false, true)) {
+                    listener.onCallCompleted(tppClientResponse.getStatus(), elapsed(listener, start));
+                }
+                result.complete(tppClientResponse);
+            } catch (Exception e) {
+                log.error("Error reading gateway response", e);
+                fail(new TppClientException(e), e);
+            }
+        }
+
+        private void failed(Throwable e, int attempt, long generation) {
+            audit(httpRequest, null, e, listener);
+            guard.record(generation, true);
+            guard.release();
+            if (retryable && retryPolicy.hasAttemptsLeft(attempt)) {
+                log.warn("Attempt {} calling gateway failed, retrying", attempt, e);
+                retry(attempt, retryPolicy.backoffMillis(attempt));
+                return;
+            }
+            log.error("Error calling gateway", e);
+            fail(new TppClientException(e), e);
+        }
+
+        private void cancelled() {
+            audit(httpRequest, null, new CancellationException("Call cancelled"), listener);
+            guard.release();
+            abandoned();
+            result.cancel(false);
+        }
+
+        /**
+         * Ends a call that was cancelled or completed by the caller while no exchange was running, e.g. during a
+         * backoff, a quota wait or signing.
+         */
+        private void abandoned() {
+            if (ended.compareAndSet(false, true)) {
+                listener.onCallFailed(null, elapsed(listener, start));
+            }
+        }
+
+        private void retry(int attempt, long delayMillis) {
+            listener.onRetry(attempt);
+            TppRetryPolicy.schedule(() -> attempt(attempt + 1), delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void fail(TppClientException e, Throwable cause) {
+            if (ended.compareAndSet(false, true)) {
+                listener.onCallFailed(cause, elapsed(listener, start));
+            }
+            result.completeExceptionally(e);
+        }
+
+        private void cancel() {
+            Future<TppHttpResponse> current = exchange;
+            // an exchange that is already done belongs to an earlier attempt
+            if (current == null || !current.cancel(true)) {
+                abandoned();
+            }
+        }
+    }
+
 }
@@ -0,0 +1,143 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppCircuitState;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppGatewayState;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit breaker and bulkhead of one gateway, so a failing or slow gateway cannot take the threads and
+ * connections needed for the others. Every attempt {@link #acquire acquires} a slot, {@link #record records}
+ * its outcome once the gateway has answered and {@link #release releases} the slot when it is done. The
+ * circuit breaker state is kept in atomics, no lock is taken. While the circuit is not closed only the outcome
+ * of the current trial call counts, calls started before the circuit opened cannot close it.
+ */
+@Slf4j
+class TppGatewayGuard {
+    private final String gatewayUrl;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final int maxConcurrentCalls;
+    //null when the number of calls is not limited
+    private final Semaphore slots;
+    private final AtomicReference<TppCircuitState> state = new AtomicReference<>(TppCircuitState.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    //time the circuit opened or the last trial call started
+    private final AtomicLong openedAt = new AtomicLong();
+    //advanced when the circuit opens and when a trial call starts, identifies the calls an outcome belongs to
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicInteger activeCalls = new AtomicInteger();
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    TppGatewayGuard(String gatewayUrl, TppClientConnectionParams connectionParams) {
+        this.gatewayUrl = gatewayUrl;
+        failureThreshold = connectionParams.getCircuitBreakerFailureThreshold();
+        openNanos = TimeUnit.MILLISECONDS.toNanos(connectionParams.getCircuitBreakerOpenMillis());
+        maxConcurrentCalls = connectionParams.getMaxConcurrentCallsPerGateway();
+        slots = maxConcurrentCalls > 0 ? new Semaphore(maxConcurrentCalls) : null;
+    }
+
+    /**
+     * @return the generation of the circuit the call was let through in, to be passed to {@link #record}
+     */
+    long acquire(long waitMillis) throws TppClientException {
+        if (slots != null && !tryAcquireSlot(waitMillis)) {
+            rejectedCalls.increment();
+            throw new TppCallRejectedException(String.format("Too many calls in flight to gateway %s", gatewayUrl));
+        }
+        long permitted = callPermitted();
+        if (permitted < 0) {
+            if (slots != null) {
+                slots.release();
+            }
+            rejectedCalls.increment();
+            throw new TppCallRejectedException(String.format("Circuit breaker open for gateway %s", gatewayUrl));
+        }
+        activeCalls.incrementAndGet();
+        return permitted;
+    }
+
+    private boolean tryAcquireSlot(long waitMillis) throws TppClientException {
+        try {
+            return waitMillis > 0 ? slots.tryAcquire(waitMillis, TimeUnit.MILLISECONDS) : slots.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TppClientException(e);
+        }
+    }
+
+    /**
+     * @return the generation the call is permitted in, -1 if it is not permitted
+     */
+    private long callPermitted() {
+        if (failureThreshold <= 0 || state.get() == TppCircuitState.CLOSED) {
+            return generation.get();
+        }
+        // once the open time has passed a single caller wins the update and makes the trial call; a trial
+        // that never reports back is replaced by a new one after another open time
+        long opened = openedAt.get();
+        if (System.nanoTime() - opened >= openNanos && openedAt.compareAndSet(opened, System.nanoTime())) {
+            long trial = generation.incrementAndGet();
+            state.set(TppCircuitState.HALF_OPEN);
+            return trial;
+        }
+        return -1;
+    }
+
+    /**
+     * @param callGeneration generation returned by {@link #acquire} for the call
+     * @param failed true if the gateway could not be reached or answered with a server error
+     */
+    void record(long callGeneration, boolean failed) {
+        if (failureThreshold <= 0) {
+            return;
+        }
+        // while the circuit is open or half open only the current trial call decides
+        if (state.get() != TppCircuitState.CLOSED && callGeneration != generation.get()) {
+            return;
+        }
+
+        if (!failed) {
+            consecutiveFailures.set(0);
+            if (state.getAndSet(TppCircuitState.CLOSED) != TppCircuitState.CLOSED) {
+                log.info("Circuit breaker closed for gateway {}", gatewayUrl);
+            }
+            return;
+        }
+
+        int failures = consecutiveFailures.incrementAndGet();
+        if (state.get() == TppCircuitState.HALF_OPEN || failures >= failureThreshold) {
+            openedAt.set(System.nanoTime());
+            generation.incrementAndGet();
+            if (state.getAndSet(TppCircuitState.OPEN) != TppCircuitState.OPEN) {
+                log.warn("Circuit breaker opened for gateway {} after {} failed calls", gatewayUrl, failures);
+            }
+        }
+    }
+
+    void release() {
+        activeCalls.decrementAndGet();
+        if (slots != null) {
+            slots.release();
+        }
+    }
+
+    TppGatewayState getState() {
+        return TppGatewayState
+                .builder()
+                .gatewayUrl(gatewayUrl)
+                .circuitState(state.get())
+                .consecutiveFailures(consecutiveFailures.get())
+                .activeCalls(activeCalls.get())
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .rejectedCalls(rejectedCalls.sum())
+                .build();
+    }
+}
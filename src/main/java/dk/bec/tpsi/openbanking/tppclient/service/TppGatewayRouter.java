@@ -0,0 +1,292 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.audit.TppAuditJournal;
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpTransport;
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientListener;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.model.TppGatewayProfile;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHttpTransportType;
+import dk.bec.tpsi.openbanking.tppclient.model.TppStartupReport;
+import dk.bec.tpsi.openbanking.tppclient.security.Signer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Routes calls to many gateways, each described by a {@link TppGatewayProfile}, through one connection pool.
+ * Profiles using the same certificates and signer share their key material, and all profiles share one audit journal.
+ * Profiles can be added and removed at any time without affecting the others. Profiles sending their calls with the JDK transport have a client of
+ * their own instead of the pool.
+ */
+@Slf4j
+public class TppGatewayRouter implements Closeable {
+    private final TppClientConnectionParams connectionParams;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final Map<String, Profile> profiles = new ConcurrentHashMap<>();
+    private final Map<KeyMaterialKey, TppKeyMaterialHolder> keyMaterials = new HashMap<>();
+    //opened with the first profile, null when calls are not audited
+    private TppAuditJournal auditJournal;
+    private volatile TppClientListener listener = TppClientListener.NOOP;
+
+    public TppGatewayRouter() {
+        this(TppClientConnectionParams.builder().build());
+    }
+
+    public TppGatewayRouter(TppClientConnectionParams connectionParams) {
+        this.connectionParams = connectionParams;
+        RequestConfig requestConfig = TppHttpClients.createRequestConfig(connectionParams);
+        connectionManager = TppHttpClients.createConnectionManager(new TppRoutingSocketFactory(), connectionParams, () -> listener);
+        httpClient = TppHttpClients.createHttpClient(connectionManager, requestConfig, connectionParams, () -> listener);
+    }
+
+    /**
+     * Adds the profile, replacing a profile with the same id. With warmUp in the connection params the profile is
+     * warmed up first and not added if that fails.
+     */
+    public TppClientService addProfile(TppGatewayProfile profile) throws TppClientException {
+        return addProfile(profile, null);
+    }
+
+    /**
+     * Adds the profile, signing its calls with a seal key held elsewhere, e.g. by an HSM, see
+     * {@link #addProfile(TppGatewayProfile)}.
+     *
+     * @param signer null to sign with the key of the seal keystore
+     */
+    public synchronized TppClientService addProfile(TppGatewayProfile profile, Signer signer) throws TppClientException {
+        if (Objects.isNull(auditJournal)) {
+            auditJournal = TppClientServiceImpl.openAuditJournal(connectionParams);
+        }
+        KeyMaterialKey key = new KeyMaterialKey(profile.getCertParams(), signer);
+        TppKeyMaterialHolder keyMaterial = keyMaterials.get(key);
+        boolean loaded = Objects.isNull(keyMaterial);
+        if (loaded) {
+            keyMaterial = new TppKeyMaterialHolder(profile.getCertParams(), signer);
+            keyMaterials.put(key, keyMaterial);
+        }
+
+        if (Objects.nonNull(profile.getMaxConnPerRoute())) {
+            connectionManager.setMaxPerRoute(TppHttpClients.route(profile.getGatewayUrl()), profile.getMaxConnPerRoute());
+        }
+
+        boolean compressResponses = Objects.nonNull(profile.getCompressResponses())
+                ? profile.getCompressResponses()
+                : connectionParams.isCompressResponses();
+        TppHttpTransportType transportType = Objects.nonNull(profile.getTransport())
+                ? profile.getTransport()
+                : connectionParams.getTransport();
+        TppHttpTransport transport = transportType == TppHttpTransportType.JDK
+                ? TppJavaNetHttp.newTransport(connectionParams)
+                : new TppApacheHttpTransport(connectionParams, connectionManager, httpClient);
+        TppClientServiceImpl service = new TppClientServiceImpl(profile.getGatewayUrl(), keyMaterial, connectionParams,
+                compressResponses, transport, auditJournal);
+        service.setListener(listener);
+        if (connectionParams.isWarmUp()) {
+            try {
+                service.warmUp();
+            } catch (TppClientException e) {
+                discard(profile, service, loaded ? key : null, e);
+                throw e;
+            }
+        }
+        Profile previous = profiles.put(profile.getId(), new Profile(profile, key, service));
+        if (Objects.nonNull(previous)) {
+            release(previous);
+        }
+        log.debug("Added gateway profile {} for {}", profile.getId(), profile.getGatewayUrl());
+        return service;
+    }
+
+    public synchronized void removeProfile(String profileId) {
+        Profile removed = profiles.remove(profileId);
+        if (Objects.nonNull(removed)) {
+            release(removed);
+            log.debug("Removed gateway profile {}", profileId);
+        }
+    }
+
+    public Set<String> getProfileIds() {
+        return Collections.unmodifiableSet(profiles.keySet());
+    }
+
+    public TppClientService getService(String profileId) throws TppClientException {
+        Profile profile = profiles.get(profileId);
+        if (Objects.isNull(profile)) {
+            throw new TppClientException(String.format("Unknown gateway profile %s", profileId));
+        }
+        return profile.service;
+    }
+
+    public TppClientResponse callGateway(String profileId, TppClientRequest request) throws TppClientException {
+        return getService(profileId).callGateway(request);
+    }
+
+    public <T> T callGateway(String profileId, TppClientRequest request, TppClientResponseHandler<T> responseHandler) throws TppClientException {
+        return getService(profileId).callGateway(request, responseHandler);
+    }
+
+    public CompletableFuture<TppClientResponse> callGatewayAsync(String profileId, TppClientRequest request) {
+        try {
+            return getService(profileId).callGatewayAsync(request);
+        } catch (TppClientException e) {
+            CompletableFuture<TppClientResponse> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+
+    public Stream<TppClientResponse> callGatewayPaged(String profileId, TppClientRequest request) throws TppClientException {
+        return getService(profileId).callGatewayPaged(request);
+    }
+
+    /**
+     * Warms up the services of all profiles, see {@link TppClientService#warmUp()}.
+     *
+     * @return report by profile id
+     */
+    public Map<String, TppStartupReport> warmUp() throws TppClientException {
+        Map<String, TppStartupReport> reports = new HashMap<>();
+        for (Map.Entry<String, Profile> profile : profiles.entrySet()) {
+            reports.put(profile.getKey(), profile.getValue().service.warmUp());
+        }
+        return reports;
+    }
+
+    public void setListener(TppClientListener listener) {
+        this.listener = Objects.isNull(listener) ? TppClientListener.NOOP : listener;
+        profiles.values().forEach(profile -> profile.service.setListener(this.listener));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Profile profile : profiles.values()) {
+            profile.service.close();
+        }
+        profiles.clear();
+        for (TppKeyMaterialHolder keyMaterial : keyMaterials.values()) {
+            keyMaterial.close();
+        }
+        keyMaterials.clear();
+        try {
+            httpClient.close();
+        } finally {
+            if (Objects.nonNull(auditJournal)) {
+                auditJournal.close();
+                auditJournal = null;
+            }
+        }
+    }
+
+    /**
+     * Closes the service of a profile that could not be added, and the key material loaded for it.
+     */
+    private void discard(TppGatewayProfile profile, TppClientServiceImpl service, KeyMaterialKey loadedFor, TppClientException e) {
+        try {
+            service.close();
+        } catch (IOException closeException) {
+            e.addSuppressed(closeException);
+        }
+        resetMaxPerRoute(profile);
+        if (Objects.nonNull(loadedFor)) {
+            try {
+                keyMaterials.remove(loadedFor).close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+        }
+    }
+
+    private void release(Profile profile) {
+        try {
+            profile.service.close();
+        } catch (IOException e) {
+            log.error("Error closing gateway profile {}", profile.profile.getId(), e);
+        }
+        resetMaxPerRoute(profile.profile);
+
+        boolean inUse = profiles.values().stream().anyMatch(p -> profile.keyMaterial.equals(p.keyMaterial));
+        if (!inUse) {
+            try {
+                keyMaterials.remove(profile.keyMaterial).close();
+            } catch (IOException e) {
+                log.error("Error closing key material of gateway profile {}", profile.profile.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Gives the route of a profile that is no longer used the default max connections again, unless another
+     * profile for the route sets its own max.
+     */
+    private void resetMaxPerRoute(TppGatewayProfile removed) {
+        if (Objects.isNull(removed.getMaxConnPerRoute())) {
+            return;
+        }
+        HttpRoute route = TppHttpClients.route(removed.getGatewayUrl());
+        boolean limited = profiles.values().stream()
+                .anyMatch(p -> Objects.nonNull(p.profile.getMaxConnPerRoute()) && route.equals(TppHttpClients.route(p.profile.getGatewayUrl())));
+        if (!limited) {
+            connectionManager.setMaxPerRoute(route, connectionManager.getDefaultMaxPerRoute());
+        }
+    }
+
+    private static class Profile {
+        private final TppGatewayProfile profile;
+        private final KeyMaterialKey keyMaterial;
+        private final TppClientServiceImpl service;
+
+        private Profile(TppGatewayProfile profile, KeyMaterialKey keyMaterial, TppClientServiceImpl service) {
+            this.profile = profile;
+            this.keyMaterial = keyMaterial;
+            this.service = service;
+        }
+    }
+
+    /**
+     * Cert params and signer of shared key material. Signers have no equality of their own, so profiles only share
+     * key material when they use the same signer instance.
+     */
+    private static class KeyMaterialKey {
+        private final TppClientCertParams certParams;
+        private final Signer signer;
+
+        private KeyMaterialKey(TppClientCertParams certParams, Signer signer) {
+            this.certParams = certParams;
+            this.signer = signer;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof KeyMaterialKey)) {
+                return false;
+            }
+            KeyMaterialKey other = (KeyMaterialKey) o;
+            return certParams.equals(other.certParams) && signer == other.signer;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * certParams.hashCode() + System.identityHashCode(signer);
+        }
+    }
+}
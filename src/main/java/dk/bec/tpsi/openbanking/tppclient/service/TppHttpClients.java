@@ -0,0 +1,174 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientListener;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateInputStreamFactory;
+import org.apache.http.client.entity.GZIPInputStreamFactory;
+import org.apache.http.client.entity.InputStreamFactory;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Builds the pooled blocking clients used by {@link TppApacheHttpTransport} and {@link TppGatewayRouter}.
+ */
+@Slf4j
+final class TppHttpClients {
+    //context attribute, true if the call asks for a compressed response
+    static final String COMPRESS_RESPONSE = "tpp.compress-response";
+    //brotli is only offered if its decoder is on the class path
+    private static final String BROTLI_INPUT_STREAM = "org.brotli.dec.BrotliInputStream";
+    private static final InputStreamFactory BROTLI = brotli();
+    static final String ACCEPT_ENCODING = BROTLI == null ? "gzip,deflate" : "gzip,deflate,br";
+    private static final Registry<InputStreamFactory> DECODERS = decoders();
+    private static final HttpResponseInterceptor DECOMPRESS = new ResponseContentEncoding(DECODERS, true);
+
+    private TppHttpClients() {
+    }
+
+    static RequestConfig createRequestConfig(TppClientConnectionParams connectionParams) {
+        return RequestConfig
+                .custom()
+                .setConnectTimeout(connectionParams.getConnectTimeoutMillis())
+                .setSocketTimeout(connectionParams.getSocketTimeoutMillis())
+                .setConnectionRequestTimeout(connectionParams.getConnectionRequestTimeoutMillis())
+                .build();
+    }
+
+    static PoolingHttpClientConnectionManager createConnectionManager(LayeredConnectionSocketFactory sslSocketFactory,
+                                                                      TppClientConnectionParams connectionParams,
+                                                                      Supplier<TppClientListener> listener) {
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder
+                .<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory)
+                .build();
+
+        PoolingHttpClientConnectionManager connectionManager = new TppClientConnectionManager(socketFactoryRegistry,
+                connectionParams.getConnectionTimeToLiveMillis(), TimeUnit.MILLISECONDS, listener, connectionParams.isVirtualThreads());
+        connectionManager.setMaxTotal(connectionParams.getMaxConnTotal());
+        connectionManager.setDefaultMaxPerRoute(connectionParams.getMaxConnPerRoute());
+        connectionManager.setValidateAfterInactivity(connectionParams.getValidateAfterInactivityMillis());
+        return connectionManager;
+    }
+
+    /**
+     * Pool route of the gateway, the same the client resolves for a call to it.
+     */
+    static HttpRoute route(String gatewayUrl) {
+        URI uri = URI.create(gatewayUrl);
+        HttpHost host = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+        try {
+            host = new HttpHost(host.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(host), host.getSchemeName());
+        } catch (Exception e) {
+            throw new IllegalArgumentException(String.format("Unsupported gateway url %s", gatewayUrl), e);
+        }
+        return new HttpRoute(host, null, "https".equalsIgnoreCase(host.getSchemeName()));
+    }
+
+    /**
+     * Pooled connections are bound to the SSL context set as user token of the request context, see
+     * {@link TppRoutingSocketFactory}.
+     */
+    static CloseableHttpClient createHttpClient(PoolingHttpClientConnectionManager connectionManager, RequestConfig requestConfig,
+                                                TppClientConnectionParams connectionParams, Supplier<TppClientListener> listener) {
+        return HttpClientBuilder
+                .create()
+                .setConnectionManager(connectionManager)
+                .setRequestExecutor(new TppClientRequestExecutor(listener))
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(connectionParams.getMaxIdleTimeMillis(), TimeUnit.MILLISECONDS)
+                // compression is asked for per call, so services sharing the client can differ in it
+                .disableContentCompression()
+                .addInterceptorLast(acceptCompressed())
+                .addInterceptorLast(DECOMPRESS)
+                // the state comes from the user token, the TLS principal must not replace it, otherwise the
+                // pool would never hand out a kept-alive connection
+                .disableConnectionState()
+                .build();
+    }
+
+    /**
+     * Adds Accept-Encoding to calls whose context asks for a compressed response, see {@link #COMPRESS_RESPONSE}.
+     */
+    static HttpRequestInterceptor acceptCompressed() {
+        return (request, context) -> {
+            if (Boolean.TRUE.equals(context.getAttribute(COMPRESS_RESPONSE)) && !request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+                request.addHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+            }
+        };
+    }
+
+    /**
+     * Replaces the entity of a compressed response by one decompressing the body while it is read, and removes
+     * the headers describing the compressed body.
+     */
+    static void decompress(HttpResponse response, HttpContext context) throws HttpException, IOException {
+        DECOMPRESS.process(response, context);
+    }
+
+    /**
+     * @return decoder of the content encoding, null if the encoding is not supported
+     */
+    static InputStreamFactory decoder(String contentEncoding) {
+        return DECODERS.lookup(contentEncoding.trim().toLowerCase(Locale.ROOT));
+    }
+
+    private static Registry<InputStreamFactory> decoders() {
+        RegistryBuilder<InputStreamFactory> decoders = RegistryBuilder
+                .<InputStreamFactory>create()
+                .register("gzip", GZIPInputStreamFactory.getInstance())
+                .register("x-gzip", GZIPInputStreamFactory.getInstance())
+                .register("deflate", DeflateInputStreamFactory.getInstance());
+        if (BROTLI != null) {
+            decoders.register("br", BROTLI);
+        }
+        return decoders.build();
+    }
+
+    private static InputStreamFactory brotli() {
+        Constructor<? extends InputStream> constructor;
+        try {
+            constructor = Class.forName(BROTLI_INPUT_STREAM).asSubclass(InputStream.class).getConstructor(InputStream.class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+        log.debug("Brotli decoder found, accepting br compressed responses");
+        return in -> {
+            try {
+                return constructor.newInstance(in);
+            } catch (InvocationTargetException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new IOException(e);
+            }
+        };
+    }
+}
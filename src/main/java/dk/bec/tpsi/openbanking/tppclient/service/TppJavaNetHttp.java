@@ -0,0 +1,33 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpTransport;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * The java.net.http transport, compiled for Java 11 from src/main/java11 and looked up at run time so the client
+ * keeps running on Java 8. Builds made with an older JDK do not have it.
+ */
+final class TppJavaNetHttp {
+    private static final String TRANSPORT_CLASS = "dk.bec.tpsi.openbanking.tppclient.service.TppJdkHttpTransport";
+
+    private TppJavaNetHttp() {
+    }
+
+    static TppHttpTransport newTransport(TppClientConnectionParams connectionParams) throws TppClientException {
+        try {
+            return Class.forName(TRANSPORT_CLASS)
+                    .asSubclass(TppHttpTransport.class)
+                    .getDeclaredConstructor(TppClientConnectionParams.class)
+                    .newInstance(connectionParams);
+        } catch (ClassNotFoundException | UnsupportedClassVersionError e) {
+            throw new TppClientException(String.format("The JDK transport needs Java 11 or later, running on %s",
+                    System.getProperty("java.version")), e);
+        } catch (InvocationTargetException e) {
+            throw new TppClientException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new TppClientException(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppStartupPhase;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
+import dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderService;
+import dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceImpl;
+import dk.bec.tpsi.openbanking.tppclient.security.Signer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.ssl.SSLContextBuilder;
+
+import javax.net.ssl.SSLContext;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Seal and WAC key material of one TPP identity: the signing service and the mTLS context built from it.
+ */
+@Slf4j
+@Getter
+class TppKeyMaterial {
+    //provider of the JKS and, from Java 9 on, PKCS12 key stores of the JDK
+    private static final String JDK_KEY_STORE_PROVIDER = "SUN";
+
+    private final SecurityProviderService securityProviderService;
+    private final SSLContext sslContext;
+    //duration of the loading phases in nanoseconds
+    private final Map<TppStartupPhase, Long> loadNanos;
+
+    private TppKeyMaterial(SecurityProviderService securityProviderService, SSLContext sslContext, Map<TppStartupPhase, Long> loadNanos) {
+        this.securityProviderService = securityProviderService;
+        this.sslContext = sslContext;
+        this.loadNanos = loadNanos;
+    }
+
+    static TppKeyMaterial load(TppClientCertParams certParams, Signer signer) throws TppClientException {
+        try {
+            Map<TppStartupPhase, Long> loadNanos = new EnumMap<>(TppStartupPhase.class);
+            long start = System.nanoTime();
+            // the trust store comes from the JDK provider, it is loaded while the keystores are
+            String trustStorePath = certParams.getTrustStorePath();
+            CompletableFuture<KeyStore> trustStore = StringUtils.isNotEmpty(trustStorePath)
+                    ? CompletableFuture.supplyAsync(() -> trustStore(trustStorePath))
+                    : CompletableFuture.completedFuture(null);
+            SecurityProviderServiceImpl.registerProvider();
+            long registered = System.nanoTime();
+            loadNanos.put(TppStartupPhase.PROVIDERS, registered - start);
+
+            SecurityProviderService securityProviderService = new SecurityProviderServiceImpl(certParams, signer);
+            KeyStore trustMaterial;
+            try {
+                trustMaterial = trustStore.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            long loaded = System.nanoTime();
+            loadNanos.put(TppStartupPhase.KEYSTORES, loaded - registered);
+
+            SSLContextBuilder sslBuilder = new SSLContextBuilder();
+            if (Objects.nonNull(trustMaterial)) {
+                log.debug("Setting custom SSL builder trust store from path: {}", trustStorePath);
+                sslBuilder.loadTrustMaterial(trustMaterial, null);
+            }
+
+            if (Objects.nonNull(securityProviderService.getWacKey())) {
+                sslBuilder.loadKeyMaterial(securityProviderService.getWacKey(), certParams.getWacCertPass().toCharArray());
+            }
+            SSLContext sslContext = sslBuilder.build();
+            loadNanos.put(TppStartupPhase.SSL_CONTEXT, System.nanoTime() - loaded);
+
+            return new TppKeyMaterial(securityProviderService, sslContext, Collections.unmodifiableMap(loadNanos));
+        } catch (Exception e) {
+            log.error("Error creating tpp client service", e);
+            throw new TppClientException(e);
+        }
+    }
+
+    /**
+     * Trust store of the default type from the JDK provider. From Java 9 on the default type is PKCS12, which the
+     * Bouncy Castle provider registered ahead of it cannot load from a JKS file or without a password.
+     */
+    private static KeyStore trustStore(String trustStorePath) {
+        try (InputStream in = new FileInputStream(trustStorePath)) {
+            KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType(), JDK_KEY_STORE_PROVIDER);
+            trustStore.load(in, null);
+            return trustStore;
+        } catch (GeneralSecurityException | IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+}
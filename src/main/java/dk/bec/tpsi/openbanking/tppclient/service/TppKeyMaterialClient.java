@@ -0,0 +1,88 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client of a transport bound to the SSL context of one {@link TppKeyMaterial}, for clients that cannot pick the
+ * client certificate per call. Once the key material has been reloaded the client is retired: it takes no new
+ * calls and is closed as soon as the calls it is running have finished, so its connections do not keep
+ * presenting the previous certificate.
+ */
+@Slf4j
+final class TppKeyMaterialClient<C> {
+    private final SSLContext sslContext;
+    private final C client;
+    //closes the client and stops its threads
+    private final Closeable closer;
+    //calls running on the client
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean retired;
+
+    TppKeyMaterialClient(SSLContext sslContext, C client, Closeable closer) {
+        this.sslContext = sslContext;
+        this.client = client;
+        this.closer = closer;
+    }
+
+    SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    C getClient() {
+        return client;
+    }
+
+    /**
+     * Counts a call starting on the client, to be ended with {@link #release()}.
+     *
+     * @return false if the client has been retired, the call has to go to its successor
+     */
+    boolean acquire() {
+        calls.incrementAndGet();
+        if (retired) {
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    void release() {
+        if (calls.decrementAndGet() == 0 && retired) {
+            // the last call may end on a thread of the client itself, which cannot wait for the client to close
+            ForkJoinPool.commonPool().execute(this::close);
+        }
+    }
+
+    /**
+     * Takes no new calls and closes the client once the running ones have ended.
+     */
+    void retire() {
+        retired = true;
+        if (calls.get() == 0) {
+            ForkJoinPool.commonPool().execute(this::close);
+        }
+    }
+
+    /**
+     * Closes the client right away, aborting the calls it is running.
+     */
+    void close() {
+        retired = true;
+        if (closed.compareAndSet(false, true)) {
+            try {
+                closer.close();
+                log.debug("Closed transport client");
+            } catch (IOException | RuntimeException e) {
+                log.warn("Error closing client", e);
+            }
+        }
+    }
+}
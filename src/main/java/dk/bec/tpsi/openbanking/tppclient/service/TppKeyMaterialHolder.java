@@ -0,0 +1,87 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientCertParams;
+import dk.bec.tpsi.openbanking.tppclient.security.Signer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceImpl.FILE_KEYSTORE_PREFIX;
+import static dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceImpl.keystoreFile;
+
+/**
+ * Current {@link TppKeyMaterial} of one TPP identity. A reload swaps in a completely loaded new instance, so
+ * calls already running keep the instance they started with while new calls and new connections use the new
+ * one. Reading the current instance takes no lock.
+ */
+@Slf4j
+class TppKeyMaterialHolder implements Closeable {
+    private final TppClientCertParams certParams;
+    //null to sign with the key of the seal keystore
+    private final Signer signer;
+    private final TppKeyStoreWatcher watcher;
+    private volatile TppKeyMaterial current;
+
+    TppKeyMaterialHolder(TppClientCertParams certParams, Signer signer) throws TppClientException {
+        this.certParams = certParams;
+        this.signer = signer;
+        current = TppKeyMaterial.load(certParams, signer);
+        watcher = certParams.isWatchKeystores() ? startWatcher(certParams) : null;
+    }
+
+    private TppKeyStoreWatcher startWatcher(TppClientCertParams certParams) throws TppClientException {
+        List<Path> files = new ArrayList<>();
+        if (StringUtils.startsWith(certParams.getKeystorePath(), FILE_KEYSTORE_PREFIX)) {
+            files.add(keystoreFile(certParams.getKeystorePath(), certParams.getSealCertName()));
+            files.add(keystoreFile(certParams.getKeystorePath(), certParams.getWacCertName()));
+        }
+        if (StringUtils.isNotEmpty(certParams.getTrustStorePath())) {
+            files.add(Paths.get(certParams.getTrustStorePath()));
+        }
+        if (files.isEmpty()) {
+            log.warn("Keystore watching is enabled but no keystore is loaded from the file system");
+            return null;
+        }
+
+        try {
+            return new TppKeyStoreWatcher(files, this::reloadOnChange);
+        } catch (IOException e) {
+            log.error("Error watching keystores", e);
+            throw new TppClientException(e);
+        }
+    }
+
+    TppKeyMaterial get() {
+        return current;
+    }
+
+    /**
+     * Loads the key material again. The current key material stays in use if loading fails.
+     */
+    void reload() throws TppClientException {
+        current = TppKeyMaterial.load(certParams, signer);
+        log.info("Reloaded key material from {}", certParams.getKeystorePath());
+    }
+
+    private void reloadOnChange() {
+        try {
+            reload();
+        } catch (TppClientException e) {
+            log.error("Keystores changed but could not be loaded, keeping the current key material", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (Objects.nonNull(watcher)) {
+            watcher.close();
+        }
+    }
+}
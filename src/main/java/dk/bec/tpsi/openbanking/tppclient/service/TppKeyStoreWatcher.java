@@ -0,0 +1,85 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches the folders of keystore files and runs a callback once they have changed. Any change in a watched
+ * folder counts, so keystores replaced by renaming or by swapping a symbolic link (e.g. mounted Kubernetes
+ * secrets) are noticed as well. Changes arriving in quick succession lead to a single callback.
+ */
+@Slf4j
+class TppKeyStoreWatcher implements Closeable {
+    //quiet time after the last change before the callback runs, so files are not read half written
+    private static final long QUIET_PERIOD_MILLIS = 500;
+
+    private final WatchService watchService;
+    private final Runnable onChange;
+
+    TppKeyStoreWatcher(Collection<Path> files, Runnable onChange) throws IOException {
+        this.onChange = onChange;
+        Set<Path> folders = new LinkedHashSet<>();
+        for (Path file : files) {
+            folders.add(file.toAbsolutePath().getParent());
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        try {
+            for (Path folder : folders) {
+                folder.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                log.debug("Watching keystore folder {}", folder);
+            }
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        Thread thread = new Thread(this::watch, "tpp-keystore-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                reset(watchService.take());
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    reset(key);
+                }
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    log.error("Error handling keystore change", e);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            log.debug("Stopped watching keystores");
+        }
+    }
+
+    private static void reset(WatchKey key) {
+        key.pollEvents();
+        key.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
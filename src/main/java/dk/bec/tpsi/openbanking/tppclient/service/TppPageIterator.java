@@ -0,0 +1,135 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import dk.bec.tpsi.openbanking.tppclient.util.LinkUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceImpl.X_REQUEST_ID;
+
+/**
+ * Pages of a paginated resource, following the _links.next of every page. The next page is requested as soon
+ * as a page is handed out, so it is on its way while the caller works on the current one; no further page is
+ * requested before the caller asks for it, so at most two pages are held at a time.
+ */
+@Slf4j
+class TppPageIterator implements Iterator<TppClientResponse>, Closeable {
+    private static final String SCHEME_SEPARATOR = "://";
+
+    private final String gatewayUrl;
+    private final TppClientRequest request;
+    private final Function<TppClientRequest, CompletableFuture<TppClientResponse>> call;
+    //page requested but not yet handed out, null after the last page
+    private CompletableFuture<TppClientResponse> next;
+
+    TppPageIterator(String gatewayUrl, TppClientRequest request, Function<TppClientRequest, CompletableFuture<TppClientResponse>> call) {
+        this.gatewayUrl = StringUtils.removeEnd(gatewayUrl, "/");
+        this.request = request;
+        this.call = call;
+        next = call.apply(request);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    /**
+     * @throws UncheckedTppClientException if the page could not be fetched
+     */
+    @Override
+    public TppClientResponse next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+
+        CompletableFuture<TppClientResponse> current = next;
+        // a page that cannot be fetched ends the iteration
+        next = null;
+        TppClientResponse page = await(current);
+        // an error answer is the last page, it is handed out like callGateway hands out error answers
+        String link = page.getStatus() / 100 == 2 ? LinkUtils.nextLink(page.getBody()) : null;
+        if (link != null) {
+            try {
+                next = call.apply(pageRequest(link));
+            } catch (TppClientException e) {
+                next = new CompletableFuture<>();
+                next.completeExceptionally(e);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public void close() {
+        if (next != null) {
+            next.cancel(true);
+            next = null;
+        }
+    }
+
+    private static TppClientResponse await(CompletableFuture<TppClientResponse> page) {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            page.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new UncheckedTppClientException(new TppClientException(e));
+        } catch (ExecutionException e) {
+            throw new UncheckedTppClientException(e.getCause() instanceof TppClientException
+                    ? (TppClientException) e.getCause()
+                    : new TppClientException(e.getCause()));
+        }
+    }
+
+    /**
+     * Request of the linked page: the headers of the first request with a new x-request-id, the link carries the
+     * query of the page.
+     */
+    private TppClientRequest pageRequest(String link) throws TppClientException {
+        TppHeaders headers = request.getHeaders() == null ? new TppHeaders() : new TppHeaders(request.getHeaders());
+        headers.set(X_REQUEST_ID, UUID.randomUUID().toString());
+        return TppClientRequest
+                .builder()
+                .httpMethod(request.getHttpMethod())
+                .path(path(link))
+                .headers(headers)
+                .build();
+    }
+
+    /**
+     * @return the link as path relative to the gateway url
+     */
+    private String path(String link) throws TppClientException {
+        if (link.startsWith(gatewayUrl + '/')) {
+            return link.substring(gatewayUrl.length());
+        }
+
+        String base = StringUtils.defaultString(gatewayUrl);
+        int pathStart = base.indexOf('/', base.indexOf(SCHEME_SEPARATOR) + SCHEME_SEPARATOR.length());
+        String origin = pathStart < 0 ? base : base.substring(0, pathStart);
+        String basePath = pathStart < 0 ? "" : base.substring(pathStart);
+        String path = link;
+        if (link.contains(SCHEME_SEPARATOR)) {
+            // signed calls with the TPP certificates only go to the gateway itself
+            if (!link.startsWith(origin + '/')) {
+                throw new TppClientException(String.format("Next page link %s leads away from gateway %s", link, gatewayUrl));
+            }
+            path = link.substring(origin.length());
+        } else if (!link.startsWith("/")) {
+            path = '/' + link;
+        }
+        // links are relative to the host, the gateway url may include a base path
+        return !basePath.isEmpty() && path.startsWith(basePath + '/') ? path.substring(basePath.length()) : path;
+    }
+}
@@ -0,0 +1,96 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import dk.bec.tpsi.openbanking.tppclient.ratelimit.TppRateLimiter;
+import org.apache.commons.collections4.MapUtils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static dk.bec.tpsi.openbanking.tppclient.security.SecurityProviderServiceImpl.X_REQUEST_ID;
+
+/**
+ * Decides which calls are retried and how long to wait in between. Only idempotent requests are retried:
+ * safe methods, and if enabled requests carrying an x-request-id, which is sent unchanged with every attempt.
+ * Waits are exponential with full jitter, so clients failing together do not retry together.
+ */
+class TppRetryPolicy {
+    private static final Set<String> SAFE_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS"));
+    //gateway or proxy errors that say nothing was processed
+    private static final Set<Integer> RETRY_STATUSES = new HashSet<>(Arrays.asList(429, 502, 503, 504));
+
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final boolean retryWithSameRequestId;
+
+    TppRetryPolicy(TppClientConnectionParams connectionParams) {
+        maxAttempts = Math.max(connectionParams.getMaxAttempts(), 1);
+        backoffMillis = connectionParams.getRetryBackoffMillis();
+        maxBackoffMillis = connectionParams.getMaxRetryBackoffMillis();
+        retryWithSameRequestId = connectionParams.isRetryWithSameRequestId();
+    }
+
+    boolean isRetryable(TppClientRequest request) {
+        if (maxAttempts == 1) {
+            return false;
+        }
+        if (isSafe(request)) {
+            return true;
+        }
+        return retryWithSameRequestId && MapUtils.isNotEmpty(request.getHeaders()) && request.getHeaders().containsKey(X_REQUEST_ID);
+    }
+
+    static boolean isSafe(TppClientRequest request) {
+        return request.getHttpMethod() != null && SAFE_METHODS.contains(request.getHttpMethod().toUpperCase());
+    }
+
+    /**
+     * @return time to wait before retrying a call answered with the given status, -1 if it is not retried;
+     * a Retry-After of the gateway is waited for, unless it is longer than the max backoff
+     */
+    long retryDelayMillis(int attempt, int status, TppHeaders headers) {
+        if (!RETRY_STATUSES.contains(status) || !hasAttemptsLeft(attempt)) {
+            return -1;
+        }
+        long retryAfter = TimeUnit.NANOSECONDS.toMillis(TppRateLimiter.retryAfterNanos(headers));
+        if (retryAfter > maxBackoffMillis) {
+            return -1;
+        }
+        return Math.max(retryAfter, backoffMillis(attempt));
+    }
+
+    boolean hasAttemptsLeft(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    long backoffMillis(int attempt) {
+        long backoff = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(backoff + 1);
+    }
+
+    /**
+     * Runs the next attempt of an asynchronous call after the backoff, or a call held back by its quota.
+     */
+    static void schedule(Runnable attempt, long delay, TimeUnit unit) {
+        // the timer thread only hands the attempt over, signing runs on the common pool
+        Scheduler.INSTANCE.schedule(() -> ForkJoinPool.commonPool().execute(attempt), delay, unit);
+    }
+
+    private static class Scheduler {
+        // only started once an asynchronous call is retried
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tpp-client-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
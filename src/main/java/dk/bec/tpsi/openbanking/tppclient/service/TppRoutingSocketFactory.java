@@ -0,0 +1,48 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.ssl.DefaultHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * TLS socket factory picking the client certificate per request. The identity is the SSL context of the
+ * {@link TppKeyMaterial} set as user token of the request context; as connection state it also keeps
+ * connections of different identities, or of key material before and after a reload, apart in the pool.
+ */
+class TppRoutingSocketFactory implements LayeredConnectionSocketFactory {
+    private static final HostnameVerifier HOSTNAME_VERIFIER = new DefaultHostnameVerifier();
+
+    @Override
+    public Socket createSocket(HttpContext context) throws IOException {
+        return delegate(context).createSocket(context);
+    }
+
+    @Override
+    public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+                                InetSocketAddress localAddress, HttpContext context) throws IOException {
+        return delegate(context).connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+    }
+
+    @Override
+    public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+        return delegate(context).createLayeredSocket(socket, target, port, context);
+    }
+
+    private static LayeredConnectionSocketFactory delegate(HttpContext context) throws IOException {
+        SSLContext sslContext = HttpClientContext.adapt(context).getUserToken(SSLContext.class);
+        if (sslContext == null) {
+            throw new IOException("No key material bound to the request");
+        }
+        // the factory only holds the socket factory of the context, it is cheap compared to the handshake
+        return new SSLConnectionSocketFactory(sslContext, HOSTNAME_VERIFIER);
+    }
+}
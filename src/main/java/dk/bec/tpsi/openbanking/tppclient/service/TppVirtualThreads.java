@@ -0,0 +1,33 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads of Java 21, looked up at run time so the client keeps running on Java 8.
+ */
+final class TppVirtualThreads {
+    private static final String THREAD_NAME_PREFIX = "tpp-client-virtual-";
+
+    private TppVirtualThreads() {
+    }
+
+    /**
+     * @return executor starting a new virtual thread for every task
+     */
+    static ExecutorService newExecutor() throws TppClientException {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new TppClientException(String.format("Virtual threads need Java 21 or later, running on %s",
+                    System.getProperty("java.version")), e);
+        } catch (ReflectiveOperationException e) {
+            throw new TppClientException(e);
+        }
+    }
+}
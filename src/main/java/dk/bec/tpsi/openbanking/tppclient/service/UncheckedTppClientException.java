@@ -0,0 +1,15 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+/**
+ * Wraps a {@link TppClientException} where no checked exception can be thrown, e.g. while streaming pages.
+ */
+public class UncheckedTppClientException extends RuntimeException {
+    public UncheckedTppClientException(TppClientException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized TppClientException getCause() {
+        return (TppClientException) super.getCause();
+    }
+}
@@ -0,0 +1,167 @@
+package dk.bec.tpsi.openbanking.tppclient.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Finds hypermedia links in Berlin Group response bodies. The body is scanned once without building a tree, so
+ * a large page of transactions is not copied to find its next link.
+ */
+public class LinkUtils {
+    private static final String LINKS = "_links";
+    private static final String NEXT = "next";
+    private static final String HREF = "href";
+    //keys of no interest are all the same
+    private static final String OTHER = "";
+    private static final String[] KEYS = {LINKS, NEXT, HREF};
+
+    /**
+     * @return the _links.next of the body, as plain string or as object with a href, wherever the links are
+     * nested; null if the body has no next link
+     */
+    public static String nextLink(CharSequence json) {
+        if (json == null) {
+            return null;
+        }
+
+        // key each open object or array is the value of, and whether it is an object
+        Deque<String> containers = new ArrayDeque<>();
+        Deque<Boolean> objects = new ArrayDeque<>();
+        String key = OTHER;
+        boolean expectKey = false;
+        int i = 0;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                int end = endOfString(json, i + 1);
+                if (expectKey) {
+                    key = key(json, i + 1, end);
+                    expectKey = false;
+                } else if (isNextLink(containers, key)) {
+                    return unescape(json, i + 1, end);
+                }
+                i = end + 1;
+            } else if (c == '{' || c == '[') {
+                containers.push(key);
+                objects.push(c == '{');
+                key = OTHER;
+                expectKey = c == '{';
+                i++;
+            } else if (c == '}' || c == ']') {
+                if (containers.isEmpty()) {
+                    return null;
+                }
+                containers.pop();
+                objects.pop();
+                key = OTHER;
+                expectKey = false;
+                i++;
+            } else if (c == ',') {
+                expectKey = !objects.isEmpty() && objects.peek();
+                i++;
+            } else {
+                i++;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isNextLink(Deque<String> containers, String key) {
+        if (key == NEXT) {
+            return containers.peek() == LINKS;
+        }
+        if (key == HREF && containers.size() >= 2 && containers.peek() == NEXT) {
+            String next = containers.pop();
+            boolean inLinks = containers.peek() == LINKS;
+            containers.push(next);
+            return inLinks;
+        }
+        return false;
+    }
+
+    private static String key(CharSequence json, int start, int end) {
+        // keys are compared in place, only the constants of the keys looked for are kept
+        for (String wanted : KEYS) {
+            if (end - start == wanted.length() && regionEquals(json, start, wanted)) {
+                return wanted;
+            }
+        }
+        return OTHER;
+    }
+
+    private static boolean regionEquals(CharSequence json, int start, String wanted) {
+        for (int i = 0; i < wanted.length(); i++) {
+            if (json.charAt(start + i) != wanted.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int endOfString(CharSequence json, int start) {
+        int i = start;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return json.length();
+    }
+
+    private static String unescape(CharSequence json, int start, int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = json.charAt(i);
+            if (c != '\\' || i + 1 >= end) {
+                value.append(c);
+                continue;
+            }
+            char escaped = json.charAt(++i);
+            switch (escaped) {
+                case 'u':
+                    int code = i + 4 < end ? hex(json, i + 1) : -1;
+                    if (code >= 0) {
+                        value.append((char) code);
+                        i += 4;
+                    }
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                default:
+                    // \" \\ and \/
+                    value.append(escaped);
+            }
+        }
+        return value.toString();
+    }
+
+    private static int hex(CharSequence json, int start) {
+        int code = 0;
+        for (int i = start; i < start + 4; i++) {
+            int digit = Character.digit(json.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            code = code * 16 + digit;
+        }
+        return code;
+    }
+}
@@ -0,0 +1,306 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpRequest;
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpResponse;
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppHttpTransport;
+import dk.bec.tpsi.openbanking.tppclient.httpclient.TppRequestBuilder;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientPoolStats;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.entity.InputStreamFactory;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Transport over the java.net.http client of Java 11. It is compiled for Java 11 from its own source folder and
+ * created through {@link TppJavaNetHttp}, so the library keeps running on Java 8. The client negotiates HTTP/2 with
+ * gateways supporting it, concurrent calls to such a gateway then share one TLS connection. A client is bound to
+ * one SSL context, so a new client is built once the key material has been reloaded; calls still running finish
+ * on the previous one, which is shut down with its executor once the last of them has ended.
+ */
+@Slf4j
+class TppJdkHttpTransport implements TppHttpTransport {
+    //headers the JDK client sets itself and refuses from the caller
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList("connection", "content-length", "expect", "host", "upgrade"));
+    private static final String IDENTITY = "identity";
+
+    private final TppClientConnectionParams connectionParams;
+    private final Lock clientLock = new ReentrantLock();
+    private volatile TppKeyMaterialClient<HttpClient> client;
+
+    TppJdkHttpTransport(TppClientConnectionParams connectionParams) {
+        this.connectionParams = connectionParams;
+    }
+
+    @Override
+    public TppHttpResponse execute(TppHttpRequest request) throws IOException {
+        TppKeyMaterialClient<HttpClient> current = acquireClient(request.getSslContext());
+        HttpResponse<InputStream> response;
+        try {
+            response = current.getClient().send(buildRequest(request), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            current.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling the gateway");
+        } catch (IOException | RuntimeException e) {
+            current.release();
+            throw e;
+        }
+        InputStream body = response.body();
+        Closeable connection = connection(body, current);
+        try {
+            return toResponse(response, body, connection);
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the body of a blocking call and ends the call on its client, however often the response is closed.
+     */
+    private static Closeable connection(InputStream body, TppKeyMaterialClient<HttpClient> client) {
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            try {
+                body.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    client.release();
+                }
+            }
+        };
+    }
+
+    @Override
+    public CompletableFuture<TppHttpResponse> executeAsync(TppHttpRequest request) {
+        CompletableFuture<TppHttpResponse> result = new CompletableFuture<>();
+        TppKeyMaterialClient<HttpClient> current = acquireClient(request.getSslContext());
+        CompletableFuture<HttpResponse<byte[]>> exchange;
+        try {
+            exchange = current.getClient().sendAsync(buildRequest(request), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException | RuntimeException e) {
+            current.release();
+            result.completeExceptionally(e);
+            return result;
+        }
+        exchange.whenComplete((response, e) -> {
+            current.release();
+            if (e != null) {
+                result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return;
+            }
+            try {
+                result.complete(toResponse(response, new ByteArrayInputStream(response.body()), null));
+            } catch (IOException | RuntimeException bodyException) {
+                result.completeExceptionally(bodyException);
+            }
+        });
+        // cancelling the returned future aborts the running exchange
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * The JDK client only opens connections for a request, so only the client is built ahead of the first call.
+     */
+    @Override
+    public int preconnect(String gatewayUrl, SSLContext sslContext, int connections) {
+        TppKeyMaterialClient<HttpClient> current = client;
+        if (current == null || current.getSslContext() != sslContext) {
+            replaceClient(sslContext);
+        }
+        return 0;
+    }
+
+    private TppKeyMaterialClient<HttpClient> acquireClient(SSLContext sslContext) {
+        while (true) {
+            TppKeyMaterialClient<HttpClient> current = client;
+            if (current == null || current.getSslContext() != sslContext) {
+                current = replaceClient(sslContext);
+            }
+            if (current.acquire()) {
+                return current;
+            }
+        }
+    }
+
+    private TppKeyMaterialClient<HttpClient> replaceClient(SSLContext sslContext) {
+        // a lock rather than a monitor, a virtual thread waiting for it is not pinned to its carrier
+        clientLock.lock();
+        try {
+            TppKeyMaterialClient<HttpClient> previous = client;
+            if (previous != null && previous.getSslContext() == sslContext) {
+                return previous;
+            }
+            // an executor of its own, so the threads of a replaced client can be stopped before Java 21
+            ExecutorService executor = Executors.newCachedThreadPool(daemonThreads());
+            HttpClient.Builder builder = HttpClient.newBuilder().sslContext(sslContext).executor(executor);
+            if (connectionParams.getConnectTimeoutMillis() > 0) {
+                builder.connectTimeout(Duration.ofMillis(connectionParams.getConnectTimeoutMillis()));
+            }
+            HttpClient httpClient = builder.build();
+            client = new TppKeyMaterialClient<>(sslContext, httpClient, () -> {
+                shutdownNow(httpClient);
+                executor.shutdownNow();
+            });
+            log.debug("Created java.net.http client");
+            if (previous != null) {
+                previous.retire();
+            }
+            return client;
+        } finally {
+            clientLock.unlock();
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "tpp-http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Builds the request as the Apache transport would send it, so request parameters, form bodies and content
+     * types are the same on both transports.
+     */
+    private HttpRequest buildRequest(TppHttpRequest request) throws IOException {
+        HttpUriRequest httpRequest = TppRequestBuilder.create(request).build();
+        HttpEntity entity = httpRequest instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) httpRequest).getEntity() : null;
+        HttpRequest.Builder builder = HttpRequest.newBuilder(httpRequest.getURI())
+                .method(httpRequest.getMethod(), entity == null ? HttpRequest.BodyPublishers.noBody() : publisher(entity));
+        for (Header header : httpRequest.getAllHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        if (entity != null && entity.getContentType() != null && !httpRequest.containsHeader(HttpHeaders.CONTENT_TYPE)) {
+            builder.header(HttpHeaders.CONTENT_TYPE, entity.getContentType().getValue());
+        }
+        if (request.isCompressResponse() && !httpRequest.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            builder.header(HttpHeaders.ACCEPT_ENCODING, TppHttpClients.ACCEPT_ENCODING);
+        }
+        if (connectionParams.getSocketTimeoutMillis() > 0) {
+            // the JDK client has no read timeout, the time to the response headers comes closest
+            builder.timeout(Duration.ofMillis(connectionParams.getSocketTimeoutMillis()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Body publisher opening a new stream of the entity for every attempt of the client.
+     */
+    private static HttpRequest.BodyPublisher publisher(HttpEntity entity) {
+        Supplier<InputStream> content = () -> {
+            try {
+                return entity.getContent();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(content);
+        return entity.getContentLength() >= 0 ? HttpRequest.BodyPublishers.fromPublisher(publisher, entity.getContentLength()) : publisher;
+    }
+
+    private static TppHttpResponse toResponse(HttpResponse<?> response, InputStream body, Closeable connection) throws IOException {
+        Map<String, List<String>> map = response.headers().map();
+        TppHeaders headers = new TppHeaders(map.size());
+        map.forEach((name, values) -> values.forEach(value -> headers.add(name, value)));
+        return new TppHttpResponse(response.statusCode(), headers, decompress(headers, body), connection);
+    }
+
+    /**
+     * Decompresses the body like the Apache transport does: known encodings are decoded while the body is read
+     * and the headers describing the compressed body are removed, unknown encodings are passed on as they are.
+     */
+    private static InputStream decompress(TppHeaders headers, InputStream body) throws IOException {
+        String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (contentEncoding == null || IDENTITY.equalsIgnoreCase(contentEncoding.trim())) {
+            return body;
+        }
+        InputStreamFactory decoder = TppHttpClients.decoder(contentEncoding);
+        if (decoder == null) {
+            return body;
+        }
+        headers.remove(HttpHeaders.CONTENT_ENCODING);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        headers.remove(HttpHeaders.CONTENT_MD5);
+
+        // the decoders read the header of the compressed stream right away, an empty body has none
+        PushbackInputStream peek = new PushbackInputStream(body, 1);
+        int first = peek.read();
+        if (first == -1) {
+            return peek;
+        }
+        peek.unread(first);
+        return decoder.create(peek);
+    }
+
+    @Override
+    public TppClientPoolStats getPoolStats() {
+        // the JDK client does not expose its connections
+        return TppClientPoolStats.builder().build();
+    }
+
+    @Override
+    public void close() {
+        TppKeyMaterialClient<HttpClient> current = client;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * Aborts the calls of the client and stops its threads. HttpClient.shutdownNow() came with Java 21, clients
+     * of older versions stop their threads once they are no longer referenced.
+     */
+    private static void shutdownNow(HttpClient httpClient) {
+        try {
+            HttpClient.class.getMethod("shutdownNow").invoke(httpClient);
+        } catch (NoSuchMethodException e) {
+            // before Java 21
+        } catch (ReflectiveOperationException e) {
+            log.debug("Error shutting down java.net.http client", e);
+        }
+    }
+}
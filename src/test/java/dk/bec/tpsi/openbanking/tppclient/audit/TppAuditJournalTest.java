@@ -0,0 +1,219 @@
+package dk.bec.tpsi.openbanking.tppclient.audit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditOverflow;
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditRecord;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TppAuditJournalTest {
+    private static final long SEGMENT_BYTES = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void encodesAndDecodesRecords() {
+        TppAuditRecord record = record(0);
+
+        ByteBuffer payload = TppAuditCodec.encode(record, 7, ByteBuffer.allocate(4));
+        payload.flip();
+
+        assertEquals(record(0, 7), TppAuditCodec.decode(payload));
+        assertFalse(payload.hasRemaining());
+    }
+
+    @Test
+    void encodesMissingFieldsAsNull() {
+        TppAuditRecord record = TppAuditRecord.builder().method("GET").status(0).build();
+
+        ByteBuffer payload = TppAuditCodec.encode(record, 1, ByteBuffer.allocate(64));
+        payload.flip();
+        TppAuditRecord decoded = TppAuditCodec.decode(payload);
+
+        assertEquals("GET", decoded.getMethod());
+        assertNull(decoded.getUri());
+        assertNull(decoded.getRequestHeaders());
+        assertNull(decoded.getResponseHeaders());
+    }
+
+    @Test
+    void namesSegmentsInOrder() {
+        assertEquals(12, TppAuditCodec.segmentIndex(directory.resolve(TppAuditCodec.segmentName(12))));
+        assertTrue(TppAuditCodec.segmentName(9).compareTo(TppAuditCodec.segmentName(10)) < 0);
+    }
+
+    @Test
+    void readsBackTheAppendedRecordsInOrder() throws IOException {
+        // small segments, so the records span several of them
+        try (TppAuditJournal journal = new TppAuditJournal(directory, 16, segmentBytes(3), TppAuditOverflow.BLOCK)) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(journal.append(record(i)));
+            }
+        }
+
+        List<TppAuditRecord> records = readAll(directory);
+        assertEquals(10, records.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(record(i, i), records.get(i));
+        }
+        assertEquals(4, TppAuditJournalReader.segments(directory).size());
+    }
+
+    @Test
+    void continuesTheSequenceOfAnEarlierJournal() throws IOException {
+        try (TppAuditJournal journal = new TppAuditJournal(directory, 16, SEGMENT_BYTES, TppAuditOverflow.BLOCK)) {
+            journal.append(record(0));
+            journal.append(record(1));
+        }
+        try (TppAuditJournal journal = new TppAuditJournal(directory, 16, SEGMENT_BYTES, TppAuditOverflow.BLOCK)) {
+            journal.append(record(2));
+        }
+
+        List<TppAuditRecord> records = readAll(directory);
+        assertEquals(3, records.size());
+        assertEquals(2, records.get(2).getSequence());
+        assertEquals(2, TppAuditJournalReader.segments(directory).size());
+    }
+
+    @Test
+    void continuesTheSequenceOfALastSegmentWithoutRecords() throws IOException {
+        TppAuditSegment.create(directory.resolve(TppAuditCodec.segmentName(4)), SEGMENT_BYTES, 42).close();
+
+        try (TppAuditJournal journal = new TppAuditJournal(directory, 16, SEGMENT_BYTES, TppAuditOverflow.BLOCK)) {
+            journal.append(record(0));
+        }
+
+        List<TppAuditRecord> records = readAll(directory);
+        assertEquals(1, records.size());
+        assertEquals(42, records.get(0).getSequence());
+        assertEquals(5, TppAuditCodec.segmentIndex(TppAuditJournalReader.segments(directory).get(1)));
+    }
+
+    @Test
+    void continuesTheSequenceOfALastSegmentWithACorruptFirstFrame() throws IOException {
+        try (TppAuditJournal journal = new TppAuditJournal(directory, 16, segmentBytes(2), TppAuditOverflow.BLOCK)) {
+            for (int i = 0; i < 4; i++) {
+                journal.append(record(i));
+            }
+        }
+        List<Path> segments = TppAuditJournalReader.segments(directory);
+        corruptFrame(segments.get(segments.size() - 1), 0);
+
+        try (TppAuditJournal journal = new TppAuditJournal(directory, 16, SEGMENT_BYTES, TppAuditOverflow.BLOCK)) {
+            journal.append(record(4));
+        }
+
+        List<TppAuditRecord> records = readAll(directory);
+        assertEquals(3, records.size());
+        assertEquals(1, records.get(1).getSequence());
+        // the first sequence of the corrupt segment, not 0 again
+        assertEquals(2, records.get(2).getSequence());
+    }
+
+    @Test
+    void skipsTheRestOfASegmentAfterACorruptFrame() throws IOException {
+        try (TppAuditJournal journal = new TppAuditJournal(directory, 16, segmentBytes(3), TppAuditOverflow.BLOCK)) {
+            for (int i = 0; i < 6; i++) {
+                journal.append(record(i));
+            }
+        }
+        corruptFrame(TppAuditJournalReader.segments(directory).get(0), 1);
+
+        List<Long> sequences = new ArrayList<>();
+        try (TppAuditJournalReader reader = new TppAuditJournalReader(directory)) {
+            reader.forEachRemaining(record -> sequences.add(record.getSequence()));
+            assertEquals(1, reader.getCorruptFrames());
+        }
+        assertEquals(4, sequences.size());
+        assertEquals(0, (long) sequences.get(0));
+        assertEquals(3, (long) sequences.get(1));
+    }
+
+    @Test
+    void skipsTheRestOfASegmentAfterACutOffFrame() throws IOException {
+        try (TppAuditJournal journal = new TppAuditJournal(directory, 16, SEGMENT_BYTES, TppAuditOverflow.BLOCK)) {
+            journal.append(record(0));
+            journal.append(record(1));
+        }
+        Path segment = TppAuditJournalReader.segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(TppAuditCodec.SEGMENT_HEADER_SIZE + 2 * TppAuditCodec.FRAME_HEADER_SIZE + 2 * payloadLength() - 1);
+        }
+
+        try (TppAuditJournalReader reader = new TppAuditJournalReader(directory)) {
+            assertEquals(0, reader.next().getSequence());
+            assertFalse(reader.hasNext());
+            assertEquals(1, reader.getCorruptFrames());
+        }
+    }
+
+    private static TppAuditRecord record(int i) {
+        return record(i, 0);
+    }
+
+    private static TppAuditRecord record(int i, long sequence) {
+        return TppAuditRecord.builder()
+                .sequence(sequence)
+                .timestampMillis(1_700_000_000_000L + i)
+                .method("POST")
+                .uri("/v1/payments/" + i)
+                .requestHeaders(new TppHeaders().set("X-Request-ID", "request-" + i).set("Digest", "SHA-256=abc"))
+                .status(201)
+                .responseHeaders(new TppHeaders().add("Link", "a").add("Link", "b"))
+                .error("timeout " + i)
+                .build();
+    }
+
+    /**
+     * Size of the records of single digit index, which all encode to the same length.
+     */
+    private static int payloadLength() {
+        return TppAuditCodec.encode(record(1), 0, ByteBuffer.allocate(64)).position();
+    }
+
+    private static long segmentBytes(int records) {
+        return TppAuditCodec.SEGMENT_HEADER_SIZE + records * (TppAuditCodec.FRAME_HEADER_SIZE + (long) payloadLength());
+    }
+
+    /**
+     * Flips a byte in the payload of the frame at the given index of the segment.
+     */
+    private static void corruptFrame(Path segment, int frame) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            long position = TppAuditCodec.SEGMENT_HEADER_SIZE;
+            for (int i = 0; i < frame; i++) {
+                length.clear();
+                channel.read(length, position);
+                position += TppAuditCodec.FRAME_HEADER_SIZE + length.getInt(0);
+            }
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position + TppAuditCodec.FRAME_HEADER_SIZE);
+            value.put(0, (byte) (value.get(0) ^ 0xff));
+            value.rewind();
+            channel.write(value, position + TppAuditCodec.FRAME_HEADER_SIZE);
+        }
+    }
+
+    private static List<TppAuditRecord> readAll(Path directory) throws IOException {
+        List<TppAuditRecord> records = new ArrayList<>();
+        try (TppAuditJournalReader reader = new TppAuditJournalReader(directory)) {
+            reader.forEachRemaining(records::add);
+        }
+        return records;
+    }
+}
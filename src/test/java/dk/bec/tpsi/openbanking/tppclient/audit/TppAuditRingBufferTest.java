@@ -0,0 +1,110 @@
+package dk.bec.tpsi.openbanking.tppclient.audit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppAuditRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TppAuditRingBufferTest {
+
+    @Test
+    void refusesRecordsWhenFull() {
+        // rounded up to 4 slots
+        TppAuditRingBuffer buffer = new TppAuditRingBuffer(3);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(record(i)));
+        }
+
+        assertFalse(buffer.offer(record(4)));
+        assertEquals(0, buffer.poll().getSequence());
+        assertTrue(buffer.offer(record(4)));
+        assertFalse(buffer.offer(record(5)));
+    }
+
+    @Test
+    void answersNullWhenEmpty() {
+        TppAuditRingBuffer buffer = new TppAuditRingBuffer(2);
+        assertNull(buffer.poll());
+
+        TppAuditRecord record = record(0);
+        buffer.offer(record);
+        assertSame(record, buffer.poll());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void keepsTheOrderWhenWrappingAround() {
+        TppAuditRingBuffer buffer = new TppAuditRingBuffer(4);
+        long offered = 0;
+        long polled = 0;
+        for (int round = 0; round < 100; round++) {
+            // a varying number of records, so positions wrap at every slot
+            for (int i = 0; i < 1 + round % 3; i++) {
+                assertTrue(buffer.offer(record(offered++)));
+            }
+            while (offered - polled > 1) {
+                assertEquals(polled++, buffer.poll().getSequence());
+            }
+        }
+        TppAuditRecord record;
+        while ((record = buffer.poll()) != null) {
+            assertEquals(polled++, record.getSequence());
+        }
+        assertEquals(offered, polled);
+    }
+
+    @Test
+    void takesEveryRecordOfConcurrentProducersOnce() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 10_000;
+        TppAuditRingBuffer buffer = new TppAuditRingBuffer(64);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            for (int p = 0; p < producers; p++) {
+                long first = (long) p * perProducer;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (long i = first; i < first + perProducer; i++) {
+                        while (!buffer.offer(record(i))) {
+                            Thread.yield();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+
+            Set<Long> taken = new HashSet<>();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (taken.size() < producers * perProducer && System.nanoTime() < deadline) {
+                TppAuditRecord record = buffer.poll();
+                if (record != null) {
+                    assertTrue(taken.add(record.getSequence()));
+                }
+            }
+            assertEquals(producers * perProducer, taken.size());
+            assertNull(buffer.poll());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static TppAuditRecord record(long sequence) {
+        return TppAuditRecord.builder().sequence(sequence).build();
+    }
+}
@@ -0,0 +1,265 @@
+package dk.bec.tpsi.openbanking.tppclient.cache;
+
+import dk.bec.tpsi.openbanking.tppclient.metrics.TppClientListener;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientResponse;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TppResponseCacheTest {
+    private static final String GATEWAY = "https://gateway.example";
+    private static final long TTL_MILLIS = 60_000;
+
+    private final TppResponseCache cache = new TppResponseCache(100, TTL_MILLIS, Collections.singletonList("Consent-ID"));
+    private final CountingListener listener = new CountingListener();
+    private final Gateway gateway = new Gateway();
+
+    @Test
+    void cachesOnlyUnconditionalGets() {
+        assertNotNull(cache.key(GATEWAY, get("/v1/accounts").build()));
+        assertNull(cache.key(GATEWAY, TppClientRequest.builder().httpMethod("POST").path("/v1/payments").build()));
+        assertNull(cache.key(GATEWAY, get("/v1/accounts").addHeader("If-None-Match", "\"v1\"").build()));
+        assertNull(cache.key(GATEWAY, get("/v1/accounts").addHeader("Range", "bytes=0-10").build()));
+        assertNull(cache.key(GATEWAY, get("/v1/accounts").addHeader("Cache-Control", "no-store").build()));
+    }
+
+    @Test
+    void keysByPathParametersAndIdentityHeaders() {
+        Map<String, String[]> params = new LinkedHashMap<>();
+        params.put("dateFrom", new String[]{"2024-01-01"});
+        params.put("bookingStatus", new String[]{"booked"});
+        Map<String, String[]> reordered = new LinkedHashMap<>();
+        reordered.put("bookingStatus", new String[]{"booked"});
+        reordered.put("dateFrom", new String[]{"2024-01-01"});
+        TppResponseCache.Key key = cache.key(GATEWAY, get("/t").requestParams(params).addHeader("Consent-ID", "a").build());
+
+        assertEquals(key, cache.key(GATEWAY, get("/t").requestParams(reordered).addHeader("consent-id", "a").addHeader("X-Request-ID", "2").build()));
+        assertNotEquals(key, cache.key(GATEWAY, get("/t").requestParams(params).addHeader("Consent-ID", "b").build()));
+        assertNotEquals(key, cache.key(GATEWAY, get("/t").requestParams(params).build()));
+        assertNotEquals(key, cache.key("https://other.example", get("/t").requestParams(params).addHeader("Consent-ID", "a").build()));
+    }
+
+    @Test
+    void answersFromTheCacheUntilInvalidated() throws Exception {
+        TppClientRequest request = get("/v1/accounts/1").build();
+        TppResponseCache.Key key = cache.key(GATEWAY, request);
+        gateway.answer(ok("first", null));
+
+        assertEquals("first", cache.get(key, request, gateway, listener).get().getBody());
+        gateway.answer(ok("second", null));
+        assertEquals("first", cache.get(key, request, gateway, listener).get().getBody());
+        assertEquals(1, gateway.requests.size());
+        assertEquals(1, listener.misses.get());
+        assertEquals(1, listener.hits.get());
+
+        cache.invalidate(GATEWAY, "/v1/accounts");
+        assertEquals(0, cache.size());
+        assertEquals("second", cache.get(key, request, gateway, listener).get().getBody());
+    }
+
+    @Test
+    void invalidatesOnlyThePathAndThePathsBelow() throws Exception {
+        gateway.answer(ok("body", null));
+        for (String path : new String[]{"/v1/accounts", "/v1/accounts/1", "/v1/accounts-other"}) {
+            TppClientRequest request = get(path).build();
+            cache.get(cache.key(GATEWAY, request), request, gateway, listener).get();
+        }
+
+        cache.invalidate(GATEWAY, "/v1/accounts");
+
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void returnsCopies() throws Exception {
+        TppClientRequest request = get("/v1/accounts").build();
+        TppResponseCache.Key key = cache.key(GATEWAY, request);
+        gateway.answer(ok("body", null));
+
+        cache.get(key, request, gateway, listener).get().getHeaders().set("Content-Type", "changed");
+
+        assertEquals("application/json", cache.get(key, request, gateway, listener).get().getHeaders().getFirst("content-type"));
+    }
+
+    @Test
+    void sharesTheCallOfIdenticalRequests() throws Exception {
+        TppClientRequest request = get("/v1/accounts").build();
+        TppResponseCache.Key key = cache.key(GATEWAY, request);
+        CompletableFuture<TppClientResponse> response = new CompletableFuture<>();
+        gateway.answer(response);
+
+        CompletableFuture<TppClientResponse> first = cache.get(key, request, gateway, listener);
+        CompletableFuture<TppClientResponse> second = cache.get(key, request, gateway, listener);
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        response.complete(ok("shared", null).join());
+
+        assertEquals("shared", first.get().getBody());
+        assertEquals("shared", second.get().getBody());
+        assertEquals(1, gateway.requests.size());
+        assertEquals(1, listener.misses.get());
+        assertEquals(1, listener.hits.get());
+    }
+
+    @Test
+    void sharesTheFailureOfIdenticalRequestsWithoutCachingIt() throws Exception {
+        TppClientRequest request = get("/v1/accounts").build();
+        TppResponseCache.Key key = cache.key(GATEWAY, request);
+        CompletableFuture<TppClientResponse> response = new CompletableFuture<>();
+        gateway.answer(response);
+
+        CompletableFuture<TppClientResponse> first = cache.get(key, request, gateway, listener);
+        CompletableFuture<TppClientResponse> second = cache.get(key, request, gateway, listener);
+        response.completeExceptionally(new IllegalStateException("down"));
+
+        assertTrue(assertThrows(ExecutionException.class, first::get).getCause() instanceof IllegalStateException);
+        assertTrue(assertThrows(ExecutionException.class, second::get).getCause() instanceof IllegalStateException);
+        gateway.answer(ok("back", null));
+        assertEquals("back", cache.get(key, request, gateway, listener).get().getBody());
+    }
+
+    @Test
+    void doesNotCacheOtherStatuses() throws Exception {
+        TppClientRequest request = get("/v1/accounts").build();
+        TppResponseCache.Key key = cache.key(GATEWAY, request);
+        gateway.answer(CompletableFuture.completedFuture(TppClientResponse.builder().status(500).body("error").build()));
+
+        assertEquals(500, cache.get(key, request, gateway, listener).get().getStatus());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void revalidatesAnExpiredResponseWithItsEtag() throws Exception {
+        TppClientRequest request = get("/v1/accounts").build();
+        TppResponseCache.Key key = cache.key(GATEWAY, request);
+        gateway.answer(ok("body", "\"v1\"").thenApply(response -> {
+            response.getHeaders().set("Cache-Control", "max-age=0");
+            return response;
+        }));
+        cache.get(key, request, gateway, listener).get();
+
+        gateway.answer(CompletableFuture.completedFuture(TppClientResponse.builder().status(304).headers(new TppHeaders()).build()));
+        TppClientResponse revalidated = cache.get(key, request, gateway, listener).get();
+
+        assertEquals(200, revalidated.getStatus());
+        assertEquals("body", revalidated.getBody());
+        assertEquals(2, gateway.requests.size());
+        assertNull(gateway.requests.get(0).getHeaders().getFirst("if-none-match"));
+        assertEquals("\"v1\"", gateway.requests.get(1).getHeaders().getFirst("if-none-match"));
+        // the request of the caller is left as it is
+        assertNull(request.getHeaders().getFirst("if-none-match"));
+        assertEquals(2, listener.misses.get());
+
+        // fresh again for the time to live
+        assertEquals("body", cache.get(key, request, gateway, listener).get().getBody());
+        assertEquals(2, gateway.requests.size());
+    }
+
+    @Test
+    void replacesAnExpiredResponseThatChanged() throws Exception {
+        TppClientRequest request = get("/v1/accounts").build();
+        TppResponseCache.Key key = cache.key(GATEWAY, request);
+        gateway.answer(ok("old", "\"v1\"").thenApply(response -> {
+            response.getHeaders().set("Cache-Control", "no-cache");
+            return response;
+        }));
+        cache.get(key, request, gateway, listener).get();
+
+        gateway.answer(ok("new", "\"v2\""));
+
+        assertEquals("new", cache.get(key, request, gateway, listener).get().getBody());
+        assertEquals("new", cache.get(key, request, gateway, listener).get().getBody());
+        assertEquals(2, gateway.requests.size());
+    }
+
+    @Test
+    void revalidatesWhenTheRequestAsksForAFreshResponse() throws Exception {
+        TppClientRequest request = get("/v1/accounts").build();
+        TppResponseCache.Key key = cache.key(GATEWAY, request);
+        gateway.answer(ok("body", "\"v1\""));
+        cache.get(key, request, gateway, listener).get();
+
+        TppClientRequest noCache = get("/v1/accounts").addHeader("Cache-Control", "no-cache").build();
+        gateway.answer(CompletableFuture.completedFuture(TppClientResponse.builder().status(304).build()));
+
+        assertEquals("body", cache.get(key, noCache, gateway, listener).get().getBody());
+        assertEquals("\"v1\"", gateway.requests.get(1).getHeaders().getFirst("if-none-match"));
+    }
+
+    @Test
+    void doesNotKeepResponsesTheGatewayForbidsToStore() throws Exception {
+        TppClientRequest request = get("/v1/accounts").build();
+        TppResponseCache.Key key = cache.key(GATEWAY, request);
+        gateway.answer(ok("body", "\"v1\"").thenApply(response -> {
+            response.getHeaders().set("Cache-Control", "private, no-store");
+            return response;
+        }));
+
+        cache.get(key, request, gateway, listener).get();
+
+        assertEquals(0, cache.size());
+    }
+
+    private static TppClientRequest.TppClientRequestBuilder get(String path) {
+        return TppClientRequest.builder().httpMethod("GET").path(path);
+    }
+
+    private static CompletableFuture<TppClientResponse> ok(String body, String etag) {
+        TppHeaders headers = new TppHeaders().set("Content-Type", "application/json");
+        if (etag != null) {
+            headers.set("ETag", etag);
+        }
+        return CompletableFuture.completedFuture(TppClientResponse.builder().status(200).body(body).headers(headers).build());
+    }
+
+    /**
+     * Loader recording the requests sent to the gateway and answering them all alike.
+     */
+    private static class Gateway implements Function<TppClientRequest, CompletableFuture<TppClientResponse>> {
+        private final List<TppClientRequest> requests = new ArrayList<>();
+        private CompletableFuture<TppClientResponse> answer;
+
+        private void answer(CompletableFuture<TppClientResponse> answer) {
+            this.answer = answer;
+        }
+
+        @Override
+        public CompletableFuture<TppClientResponse> apply(TppClientRequest request) {
+            requests.add(request);
+            return answer;
+        }
+    }
+
+    private static class CountingListener implements TppClientListener {
+        private final AtomicInteger hits = new AtomicInteger();
+        private final AtomicInteger misses = new AtomicInteger();
+
+        @Override
+        public void onCacheHit() {
+            hits.incrementAndGet();
+        }
+
+        @Override
+        public void onCacheMiss() {
+            misses.incrementAndGet();
+        }
+    }
+}
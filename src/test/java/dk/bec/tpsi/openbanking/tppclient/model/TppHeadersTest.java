@@ -0,0 +1,127 @@
+package dk.bec.tpsi.openbanking.tppclient.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TppHeadersTest {
+
+    @Test
+    void looksUpNamesIgnoringCase() {
+        TppHeaders headers = new TppHeaders().set("X-Request-ID", "1").set("Custom-Header", "a");
+
+        assertEquals("1", headers.getFirst("x-request-id"));
+        assertEquals("1", headers.getFirst("X-REQUEST-ID"));
+        assertEquals("a", headers.getFirst("custom-header"));
+        assertTrue(headers.containsKey("CUSTOM-HEADER"));
+        assertEquals(Arrays.asList("x-request-id", "custom-header"), new ArrayList<>(headers.keySet()));
+    }
+
+    @Test
+    void normalisesWellKnownNamesToSharedConstants() {
+        assertSame(TppHeaders.normalise("digest"), TppHeaders.normalise("Digest"));
+        assertSame(TppHeaders.normalise("psu-id"), TppHeaders.normalise("PSU-ID"));
+        assertEquals("x-custom", TppHeaders.normalise("X-Custom"));
+    }
+
+    @Test
+    void setReplacesAndAddAppends() {
+        TppHeaders headers = new TppHeaders().set("Accept", "a").set("accept", "b");
+        assertEquals(Collections.singletonList("b"), headers.get("Accept"));
+
+        headers.add("ACCEPT", "c").add("Vary", "d");
+        assertEquals(Arrays.asList("b", "c"), headers.get("accept"));
+        assertEquals(Collections.singletonList("d"), headers.get("vary"));
+        assertEquals(2, headers.size());
+    }
+
+    @Test
+    void growsBeyondItsInitialCapacityInInsertionOrder() {
+        TppHeaders headers = new TppHeaders(1);
+        for (int i = 0; i < 20; i++) {
+            headers.set("h" + i, String.valueOf(i));
+        }
+
+        assertEquals(20, headers.size());
+        int i = 0;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            assertEquals("h" + i, header.getKey());
+            assertEquals(String.valueOf(i), header.getValue().get(0));
+            i++;
+        }
+    }
+
+    @Test
+    void removesKeepingTheOrderOfTheOthers() {
+        TppHeaders headers = new TppHeaders().set("a", "1").set("b", "2").set("c", "3").set("d", "4");
+
+        assertEquals(Collections.singletonList("2"), headers.remove("B"));
+        assertNull(headers.remove("missing"));
+        headers.removeIf(name -> name.equals("d"));
+        assertEquals(Arrays.asList("a", "c"), new ArrayList<>(headers.keySet()));
+
+        Iterator<Map.Entry<String, List<String>>> entries = headers.entrySet().iterator();
+        entries.next();
+        entries.remove();
+        assertEquals(Collections.singletonList("c"), new ArrayList<>(headers.keySet()));
+        assertThrows(IllegalStateException.class, entries::remove);
+    }
+
+    @Test
+    void entriesWriteThrough() {
+        TppHeaders headers = new TppHeaders().set("a", "1");
+
+        headers.entrySet().iterator().next().setValue(Collections.singletonList("2"));
+
+        assertEquals("2", headers.getFirst("a"));
+    }
+
+    @Test
+    void copiesAreIndependent() {
+        TppHeaders headers = new TppHeaders().set("a", "1");
+        TppHeaders copy = new TppHeaders(headers);
+
+        headers.set("a", "2").set("b", "3");
+
+        assertEquals("1", copy.getFirst("a"));
+        assertFalse(copy.containsKey("b"));
+    }
+
+    @Test
+    void ofCopiesOnlyOtherMaps() {
+        TppHeaders headers = new TppHeaders();
+        assertSame(headers, TppHeaders.of(headers));
+        assertNull(TppHeaders.of(null));
+
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        map.put("Content-Type", Collections.singletonList("application/json"));
+        assertEquals("application/json", TppHeaders.of(map).getFirst("content-type"));
+    }
+
+    @Test
+    void equalsOtherMapsWithTheSameHeaders() {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        map.put("a", Collections.singletonList("1"));
+
+        assertEquals(map, new TppHeaders().set("a", "1"));
+        assertEquals(map.hashCode(), new TppHeaders().set("a", "1").hashCode());
+    }
+
+    @Test
+    void rejectsNullValues() {
+        assertThrows(NullPointerException.class, () -> new TppHeaders().put("a", null));
+    }
+}
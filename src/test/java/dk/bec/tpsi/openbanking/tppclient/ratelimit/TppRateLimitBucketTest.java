@@ -0,0 +1,147 @@
+package dk.bec.tpsi.openbanking.tppclient.ratelimit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppRateLimit;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TppRateLimitBucketTest {
+    private static final long NOW = TimeUnit.SECONDS.toNanos(1000);
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FOREVER = TimeUnit.HOURS.toNanos(1);
+    //3 permits per 300 ms: a burst of 3, then one every 100 ms
+    private static final TppRateLimit LIMIT = TppRateLimit.of(3, 300, TimeUnit.MILLISECONDS);
+
+    @Test
+    void allowsTheBurstRightAway() {
+        TppRateLimitBucket bucket = new TppRateLimitBucket(LIMIT, NOW);
+
+        assertEquals(0, bucket.reserve(NOW, 0));
+        assertEquals(0, bucket.reserve(NOW, 0));
+        assertEquals(0, bucket.reserve(NOW, 0));
+        assertEquals(-1, bucket.reserve(NOW, 0));
+        assertEquals(-1, bucket.reserve(NOW, INTERVAL - 1));
+    }
+
+    @Test
+    void reservesPermitsOneIntervalApartAfterTheBurst() {
+        TppRateLimitBucket bucket = new TppRateLimitBucket(LIMIT, NOW);
+        for (int i = 0; i < 3; i++) {
+            bucket.reserve(NOW, 0);
+        }
+
+        assertEquals(INTERVAL, bucket.reserve(NOW, FOREVER));
+        assertEquals(2 * INTERVAL, bucket.reserve(NOW, FOREVER));
+        assertEquals(INTERVAL, bucket.reserve(NOW + 2 * INTERVAL, FOREVER));
+    }
+
+    @Test
+    void refusedReservationsTakeNoPermit() {
+        TppRateLimitBucket bucket = new TppRateLimitBucket(LIMIT, NOW);
+        for (int i = 0; i < 3; i++) {
+            bucket.reserve(NOW, 0);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(-1, bucket.reserve(NOW, 0));
+        }
+
+        assertEquals(0, bucket.reserve(NOW + INTERVAL, 0));
+        assertEquals(-1, bucket.reserve(NOW + INTERVAL, 0));
+    }
+
+    @Test
+    void keepsTheRateOverTime() {
+        TppRateLimitBucket bucket = new TppRateLimitBucket(LIMIT, NOW);
+        int granted = 0;
+        // a call every 10 ms for 10 seconds
+        for (long now = NOW; now < NOW + TimeUnit.SECONDS.toNanos(10); now += TimeUnit.MILLISECONDS.toNanos(10)) {
+            if (bucket.reserve(now, 0) == 0) {
+                granted++;
+            }
+        }
+
+        // the burst plus one every interval
+        assertEquals(3 + 99, granted);
+    }
+
+    @Test
+    void refillsWhileIdle() {
+        TppRateLimitBucket bucket = new TppRateLimitBucket(LIMIT, NOW);
+        for (int i = 0; i < 3; i++) {
+            bucket.reserve(NOW, 0);
+        }
+        assertFalse(bucket.isIdle(NOW));
+
+        long later = NOW + 3 * INTERVAL;
+        assertTrue(bucket.isIdle(later));
+        assertEquals(0, bucket.reserve(later, 0));
+        assertEquals(0, bucket.reserve(later, 0));
+        assertEquals(0, bucket.reserve(later, 0));
+        assertEquals(-1, bucket.reserve(later, 0));
+    }
+
+    @Test
+    void refundGivesThePermitBack() {
+        TppRateLimitBucket bucket = new TppRateLimitBucket(LIMIT, NOW);
+        for (int i = 0; i < 3; i++) {
+            bucket.reserve(NOW, 0);
+        }
+
+        bucket.refund();
+
+        assertEquals(0, bucket.reserve(NOW, 0));
+        assertEquals(-1, bucket.reserve(NOW, 0));
+    }
+
+    @Test
+    void holdsCallsBackWhilePaused() {
+        TppRateLimitBucket bucket = new TppRateLimitBucket(LIMIT, NOW);
+        long retryAfter = TimeUnit.SECONDS.toNanos(2);
+
+        bucket.pauseUntil(NOW + retryAfter);
+        // a shorter pause does not end the longer one
+        bucket.pauseUntil(NOW + INTERVAL);
+
+        assertFalse(bucket.isIdle(NOW));
+        assertEquals(-1, bucket.reserve(NOW, 0));
+        assertEquals(retryAfter, bucket.reserve(NOW, FOREVER));
+        assertEquals(0, bucket.reserve(NOW + retryAfter, 0));
+    }
+
+    @Test
+    void withoutLimitOnlyHonoursThePause() {
+        TppRateLimitBucket bucket = new TppRateLimitBucket(null, NOW);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, bucket.reserve(NOW, 0));
+        }
+        assertTrue(bucket.isIdle(NOW));
+
+        bucket.pauseUntil(NOW + INTERVAL);
+
+        assertEquals(-1, bucket.reserve(NOW, 0));
+        assertEquals(INTERVAL, bucket.reserve(NOW, FOREVER));
+        assertEquals(0, bucket.reserve(NOW + INTERVAL, 0));
+        assertEquals(0, new TppRateLimitBucket(TppRateLimit.of(0, 1, TimeUnit.SECONDS), NOW).reserve(NOW, 0));
+    }
+
+    @Test
+    void copesWithTheNanoClockOverflowing() {
+        long now = Long.MAX_VALUE - INTERVAL;
+        TppRateLimitBucket bucket = new TppRateLimitBucket(LIMIT, now);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.reserve(now, 0));
+        }
+
+        assertEquals(INTERVAL, bucket.reserve(now, FOREVER));
+        long overflowed = now + 3 * INTERVAL;
+        assertTrue(overflowed < 0);
+        // the permits of the burst are back but the one reserved ahead
+        assertEquals(0, bucket.reserve(overflowed, 0));
+        assertEquals(0, bucket.reserve(overflowed, 0));
+        assertEquals(-1, bucket.reserve(overflowed, 0));
+    }
+}
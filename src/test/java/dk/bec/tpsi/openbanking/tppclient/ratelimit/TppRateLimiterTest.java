@@ -0,0 +1,210 @@
+package dk.bec.tpsi.openbanking.tppclient.ratelimit;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientRequest;
+import dk.bec.tpsi.openbanking.tppclient.model.TppHeaders;
+import dk.bec.tpsi.openbanking.tppclient.model.TppRateLimit;
+import org.apache.http.client.utils.DateUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TppRateLimiterTest {
+    private static final String GATEWAY = "https://gateway.example";
+    private static final String OTHER_GATEWAY = "https://other.example";
+    private static final TppRateLimit TWO_PER_HOUR = TppRateLimit.of(2, 1, TimeUnit.HOURS);
+
+    @Test
+    void readsRetryAfterInSeconds() {
+        assertEquals(TimeUnit.SECONDS.toNanos(120), TppRateLimiter.retryAfterNanos(new TppHeaders().set("Retry-After", " 120 ")));
+    }
+
+    @Test
+    void readsRetryAfterAsHttpDate() {
+        String inAMinute = DateUtils.formatDate(new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1)));
+
+        long retryAfter = TppRateLimiter.retryAfterNanos(new TppHeaders().set("Retry-After", inAMinute));
+
+        // the date has whole seconds
+        assertTrue(retryAfter > TimeUnit.SECONDS.toNanos(55) && retryAfter <= TimeUnit.SECONDS.toNanos(60), String.valueOf(retryAfter));
+    }
+
+    @Test
+    void ignoresPastOrInvalidRetryAfter() {
+        String aMinuteAgo = DateUtils.formatDate(new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1)));
+
+        assertEquals(0, TppRateLimiter.retryAfterNanos(new TppHeaders().set("Retry-After", aMinuteAgo)));
+        assertEquals(0, TppRateLimiter.retryAfterNanos(new TppHeaders().set("Retry-After", "soon")));
+        assertEquals(0, TppRateLimiter.retryAfterNanos(new TppHeaders().set("Retry-After", "-5")));
+        assertEquals(0, TppRateLimiter.retryAfterNanos(new TppHeaders()));
+    }
+
+    @Test
+    void boundsOversizedRetryAfter() {
+        assertEquals(TimeUnit.DAYS.toNanos(1), TppRateLimiter.retryAfterNanos(new TppHeaders().set("Retry-After", "99999999999999999999")));
+        assertEquals(TimeUnit.DAYS.toNanos(1), TppRateLimiter.retryAfterNanos(new TppHeaders().set("Retry-After", String.valueOf(Long.MAX_VALUE))));
+    }
+
+    @Test
+    void oversizedRetryAfterPausesTheCallsForAtMostADay() {
+        TppRateLimiter limiter = new TppRateLimiter(null, null, null);
+
+        limiter.onResponse(GATEWAY, request(null, null), 503, new TppHeaders().set("Retry-After", "99999999999999999999"));
+
+        assertFalse(limiter.tryAcquire(GATEWAY, request(null, null)));
+        long wait = limiter.reserve(GATEWAY, request(null, null), TimeUnit.DAYS.toNanos(2));
+        assertTrue(wait > TimeUnit.HOURS.toNanos(23) && wait <= TimeUnit.DAYS.toNanos(1), String.valueOf(wait));
+    }
+
+    @Test
+    void limitsEveryGatewayOnItsOwn() {
+        TppRateLimiter limiter = new TppRateLimiter(TWO_PER_HOUR, null, null);
+
+        assertTrue(limiter.tryAcquire(GATEWAY, request(null, null)));
+        assertTrue(limiter.tryAcquire(GATEWAY, request("consent", "psu")));
+        assertFalse(limiter.tryAcquire(GATEWAY, request(null, null)));
+        assertTrue(limiter.tryAcquire(OTHER_GATEWAY, request(null, null)));
+    }
+
+    @Test
+    void limitsEveryConsentOnItsOwn() {
+        TppRateLimiter limiter = new TppRateLimiter(null, TWO_PER_HOUR, null);
+
+        assertTrue(limiter.tryAcquire(GATEWAY, request("a", null)));
+        assertTrue(limiter.tryAcquire(GATEWAY, request("a", null)));
+        assertFalse(limiter.tryAcquire(GATEWAY, request("a", null)));
+        assertTrue(limiter.tryAcquire(GATEWAY, request("b", null)));
+        assertTrue(limiter.tryAcquire(OTHER_GATEWAY, request("a", null)));
+        assertTrue(limiter.tryAcquire(GATEWAY, request(null, null)));
+    }
+
+    @Test
+    void givesBackTheGatewayPermitOfACallOverItsPsuQuota() {
+        TppRateLimiter limiter = new TppRateLimiter(TppRateLimit.of(3, 1, TimeUnit.HOURS), null, TppRateLimit.of(1, 1, TimeUnit.HOURS));
+
+        assertTrue(limiter.tryAcquire(GATEWAY, request(null, "psu")));
+        for (int i = 0; i < 5; i++) {
+            assertFalse(limiter.tryAcquire(GATEWAY, request(null, "psu")));
+        }
+
+        assertTrue(limiter.tryAcquire(GATEWAY, request(null, null)));
+        assertTrue(limiter.tryAcquire(GATEWAY, request(null, null)));
+        assertFalse(limiter.tryAcquire(GATEWAY, request(null, null)));
+    }
+
+    @Test
+    void waitsForThePermitOrTimesOut() throws InterruptedException {
+        TppRateLimiter limiter = new TppRateLimiter(TppRateLimit.of(1, 200, TimeUnit.MILLISECONDS), null, null);
+        assertTrue(limiter.acquire(GATEWAY, request(null, null), 0, TimeUnit.MILLISECONDS));
+
+        assertFalse(limiter.acquire(GATEWAY, request(null, null), 10, TimeUnit.MILLISECONDS));
+        long start = System.nanoTime();
+        assertTrue(limiter.acquire(GATEWAY, request(null, null), 1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    void tooManyRequestsPausesTheConsent() {
+        TppRateLimiter limiter = new TppRateLimiter(null, null, null);
+
+        limiter.onResponse(GATEWAY, request("a", "psu"), 429, new TppHeaders().set("Retry-After", "60"));
+
+        assertFalse(limiter.tryAcquire(GATEWAY, request("a", "psu")));
+        assertEquals(-1, limiter.reserve(GATEWAY, request("a", null), TimeUnit.SECONDS.toNanos(30)));
+        assertTrue(limiter.reserve(GATEWAY, request("a", null), TimeUnit.SECONDS.toNanos(61)) > TimeUnit.SECONDS.toNanos(50));
+        assertTrue(limiter.tryAcquire(GATEWAY, request("b", "psu")));
+        assertTrue(limiter.tryAcquire(GATEWAY, request(null, "psu")));
+        assertTrue(limiter.tryAcquire(OTHER_GATEWAY, request("a", "psu")));
+    }
+
+    @Test
+    void tooManyRequestsPausesThePsuOfCallsWithoutConsent() {
+        TppRateLimiter limiter = new TppRateLimiter(null, null, null);
+
+        limiter.onResponse(GATEWAY, request(null, "psu"), 429, new TppHeaders().set("Retry-After", "60"));
+
+        assertFalse(limiter.tryAcquire(GATEWAY, request(null, "psu")));
+        assertFalse(limiter.tryAcquire(GATEWAY, request("a", "psu")));
+        assertTrue(limiter.tryAcquire(GATEWAY, request(null, "other")));
+    }
+
+    @Test
+    void tooManyRequestsPausesTheGatewayOfCallsWithoutIds() {
+        TppRateLimiter limiter = new TppRateLimiter(null, null, null);
+
+        limiter.onResponse(GATEWAY, request(null, null), 429, new TppHeaders().set("Retry-After", "60"));
+
+        assertFalse(limiter.tryAcquire(GATEWAY, request("a", "psu")));
+        assertTrue(limiter.tryAcquire(OTHER_GATEWAY, request(null, null)));
+    }
+
+    @Test
+    void serviceUnavailablePausesTheGateway() {
+        TppRateLimiter limiter = new TppRateLimiter(null, null, null);
+
+        limiter.onResponse(GATEWAY, request("a", "psu"), 503, new TppHeaders().set("Retry-After", "60"));
+
+        assertFalse(limiter.tryAcquire(GATEWAY, request("b", "other")));
+        assertTrue(limiter.tryAcquire(OTHER_GATEWAY, request("a", "psu")));
+    }
+
+    @Test
+    void otherAnswersDoNotPause() {
+        TppRateLimiter limiter = new TppRateLimiter(null, null, null);
+
+        limiter.onResponse(GATEWAY, request("a", null), 500, new TppHeaders().set("Retry-After", "60"));
+        limiter.onResponse(GATEWAY, request("a", null), 429, new TppHeaders());
+        limiter.onResponse(GATEWAY, request("a", null), 429, null);
+
+        assertTrue(limiter.tryAcquire(GATEWAY, request("a", null)));
+    }
+
+    @Test
+    void exhaustedRateLimitPausesTheGatewayUntilTheReset() {
+        TppRateLimiter limiter = new TppRateLimiter(null, null, null);
+
+        limiter.onResponse(GATEWAY, request(null, null), 200, new TppHeaders().set("RateLimit-Remaining", "1").set("RateLimit-Reset", "30"));
+        assertTrue(limiter.tryAcquire(GATEWAY, request(null, null)));
+
+        limiter.onResponse(GATEWAY, request(null, null), 200, new TppHeaders().set("X-RateLimit-Remaining", "0").set("X-RateLimit-Reset", "30"));
+        assertFalse(limiter.tryAcquire(GATEWAY, request(null, null)));
+        long wait = limiter.reserve(GATEWAY, request(null, null), TimeUnit.MINUTES.toNanos(1));
+        assertTrue(wait > TimeUnit.SECONDS.toNanos(25) && wait <= TimeUnit.SECONDS.toNanos(30), String.valueOf(wait));
+    }
+
+    @Test
+    void readsTheResetAsEpochSeconds() {
+        TppRateLimiter limiter = new TppRateLimiter(null, null, null);
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 30;
+
+        limiter.onResponse(GATEWAY, request(null, null), 200, new TppHeaders().set("RateLimit-Remaining", "0").set("RateLimit-Reset", String.valueOf(reset)));
+
+        long wait = limiter.reserve(GATEWAY, request(null, null), TimeUnit.MINUTES.toNanos(1));
+        assertTrue(wait > TimeUnit.SECONDS.toNanos(25) && wait <= TimeUnit.SECONDS.toNanos(30), String.valueOf(wait));
+    }
+
+    @Test
+    void boundsAnOversizedReset() {
+        TppRateLimiter limiter = new TppRateLimiter(null, null, null);
+
+        limiter.onResponse(GATEWAY, request(null, null), 200, new TppHeaders().set("RateLimit-Remaining", "0").set("RateLimit-Reset", "99999999999999999999"));
+
+        long wait = limiter.reserve(GATEWAY, request(null, null), TimeUnit.DAYS.toNanos(2));
+        assertTrue(wait > TimeUnit.HOURS.toNanos(23) && wait <= TimeUnit.DAYS.toNanos(1), String.valueOf(wait));
+    }
+
+    private static TppClientRequest request(String consentId, String psuId) {
+        TppClientRequest.TppClientRequestBuilder request = TppClientRequest.builder().httpMethod("GET").path("/v1/accounts");
+        if (consentId != null) {
+            request.addHeader("Consent-ID", consentId);
+        }
+        if (psuId != null) {
+            request.addHeader("PSU-ID", psuId);
+        }
+        return request.build();
+    }
+}
@@ -0,0 +1,69 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import dk.bec.tpsi.openbanking.tppclient.model.TppCircuitState;
+import dk.bec.tpsi.openbanking.tppclient.model.TppClientConnectionParams;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TppGatewayGuardTest {
+    private static final long OPEN_MILLIS = 20;
+
+    private final TppGatewayGuard guard = new TppGatewayGuard("https://gateway.example", TppClientConnectionParams.builder()
+            .circuitBreakerFailureThreshold(1)
+            .circuitBreakerOpenMillis(OPEN_MILLIS)
+            .build());
+
+    @Test
+    void opensAfterTheFailureThreshold() throws Exception {
+        guard.record(guard.acquire(0), true);
+
+        assertEquals(TppCircuitState.OPEN, state());
+        assertThrows(TppCallRejectedException.class, () -> guard.acquire(0));
+    }
+
+    @Test
+    void aCallStartedBeforeTheCircuitOpenedDoesNotCloseIt() throws Exception {
+        long earlier = guard.acquire(0);
+        guard.record(guard.acquire(0), true);
+
+        guard.record(earlier, false);
+
+        assertEquals(TppCircuitState.OPEN, state());
+    }
+
+    @Test
+    void onlyTheTrialCallClosesAHalfOpenCircuit() throws Exception {
+        long earlier = guard.acquire(0);
+        guard.record(guard.acquire(0), true);
+        Thread.sleep(OPEN_MILLIS * 2);
+        long trial = guard.acquire(0);
+        assertEquals(TppCircuitState.HALF_OPEN, state());
+
+        guard.record(earlier, false);
+        assertEquals(TppCircuitState.HALF_OPEN, state());
+
+        guard.record(trial, false);
+        assertEquals(TppCircuitState.CLOSED, state());
+    }
+
+    @Test
+    void aReplacedTrialCallDoesNotDecide() throws Exception {
+        guard.record(guard.acquire(0), true);
+        Thread.sleep(OPEN_MILLIS * 2);
+        long stuck = guard.acquire(0);
+        Thread.sleep(OPEN_MILLIS * 2);
+        long trial = guard.acquire(0);
+
+        guard.record(stuck, true);
+        assertEquals(TppCircuitState.HALF_OPEN, state());
+
+        guard.record(trial, true);
+        assertEquals(TppCircuitState.OPEN, state());
+    }
+
+    private TppCircuitState state() {
+        return guard.getState().getCircuitState();
+    }
+}
@@ -0,0 +1,63 @@
+package dk.bec.tpsi.openbanking.tppclient.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TppKeyMaterialClientTest {
+    private final AtomicInteger closed = new AtomicInteger();
+    private final CountDownLatch closing = new CountDownLatch(1);
+    private final TppKeyMaterialClient<Object> client = new TppKeyMaterialClient<>(sslContext(), new Object(), () -> {
+        closed.incrementAndGet();
+        closing.countDown();
+    });
+
+    @Test
+    void closesARetiredClientWithoutCallsRightAway() throws InterruptedException {
+        client.retire();
+
+        assertTrue(closing.await(5, TimeUnit.SECONDS));
+        assertFalse(client.acquire());
+    }
+
+    @Test
+    void closesARetiredClientOnceItsLastCallHasEnded() throws InterruptedException {
+        assertTrue(client.acquire());
+        assertTrue(client.acquire());
+
+        client.retire();
+        assertFalse(client.acquire());
+        client.release();
+        assertFalse(closing.await(100, TimeUnit.MILLISECONDS));
+        client.release();
+
+        assertTrue(closing.await(5, TimeUnit.SECONDS));
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    void closesOnlyOnce() throws InterruptedException {
+        client.close();
+        client.retire();
+        client.close();
+
+        Thread.sleep(100);
+        assertEquals(1, closed.get());
+        assertFalse(client.acquire());
+    }
+
+    private static SSLContext sslContext() {
+        try {
+            return SSLContext.getDefault();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
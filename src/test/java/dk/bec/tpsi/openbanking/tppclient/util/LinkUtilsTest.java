@@ -0,0 +1,62 @@
+package dk.bec.tpsi.openbanking.tppclient.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LinkUtilsTest {
+
+    @Test
+    void findsNextLinkAsString() {
+        assertEquals("/v1/accounts?page=2", LinkUtils.nextLink("{\"_links\":{\"self\":\"/v1/accounts\",\"next\":\"/v1/accounts?page=2\"}}"));
+    }
+
+    @Test
+    void findsNextLinkAsObjectWithHref() {
+        assertEquals("/v1/accounts?page=2", LinkUtils.nextLink(
+                "{\"accounts\":[],\"_links\":{\"first\":{\"href\":\"/v1/accounts\"},\"next\":{\"href\":\"/v1/accounts?page=2\"}}}"));
+    }
+
+    @Test
+    void findsNestedLinks() {
+        String body = "{\"account\":{\"iban\":\"DK50\"},\"transactions\":{\"booked\":[{\"amount\":\"1\",\"_links\":{\"self\":\"/t/1\"}}],"
+                + "\"_links\":{\"next\":{\"href\":\"/v1/accounts/1/transactions?page=2\"}}}}";
+
+        assertEquals("/v1/accounts/1/transactions?page=2", LinkUtils.nextLink(body));
+    }
+
+    @Test
+    void ignoresNextOutsideLinks() {
+        assertNull(LinkUtils.nextLink("{\"next\":\"/a\",\"data\":{\"next\":{\"href\":\"/b\"}},\"_links\":{\"self\":\"/c\"}}"));
+        assertNull(LinkUtils.nextLink("{\"_links\":{\"next\":{\"self\":{\"href\":\"/d\"}}}}"));
+    }
+
+    @Test
+    void ignoresKeysInsideStringValues() {
+        assertNull(LinkUtils.nextLink("{\"remittance\":\"_links next href\",\"text\":\"{\\\"_links\\\":{\\\"next\\\":\\\"/x\\\"}}\"}"));
+    }
+
+    @Test
+    void unescapesTheLink() {
+        assertEquals("/v1/accounts?q=\"a\"&from=1/2æ",
+                LinkUtils.nextLink("{\"_links\":{\"next\":\"\\/v1\\/accounts?q=\\\"a\\\"&from=1\\/2\\u00e6\"}}"));
+    }
+
+    @Test
+    void skipsArraysAndValuesOfOtherKeys() {
+        String body = "{\"_links\":{\"other\":[\"next\",{\"next\":\"/wrong\"}],\"count\":3,\"next\":\"/right\"}}";
+
+        assertEquals("/right", LinkUtils.nextLink(body));
+    }
+
+    @Test
+    void answersNullForBodiesWithoutNextLink() {
+        assertNull(LinkUtils.nextLink(null));
+        assertNull(LinkUtils.nextLink(""));
+        assertNull(LinkUtils.nextLink("[]"));
+        assertNull(LinkUtils.nextLink("not json"));
+        assertNull(LinkUtils.nextLink("}"));
+        assertNull(LinkUtils.nextLink("{\"_links\":{\"next\":"));
+    }
+}